@@ -0,0 +1,719 @@
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Parallel, resumable artifact downloader.
+//
+// Every HTTP request (a whole file or one range chunk of a large file) is a job on a
+// fixed pool, so the pool size is the global connection limit. Data is hashed while
+// it streams in; partially downloaded files are kept as ".part" files and resumed
+// with range requests on the next attempt, guarded by If-Range with the validator
+// (ETag or Last-Modified) of the response that started them. Range chunks are written
+// in place into one preallocated ".part" file.
+class ArtifactDownloader implements Closeable {
+    // Files at least this large are split into range chunks when the server allows it.
+    static final long CHUNK_THRESHOLD = 8L * 1024 * 1024;
+    static final long CHUNK_SIZE = 4L * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int CONNECT_TIMEOUT = 15000;
+    private static final int READ_TIMEOUT = 30000;
+    // Per-stream throughput is only recorded for bodies of at least this size.
+    private static final long THROUGHPUT_MIN_BYTES = 256 * 1024;
+    // Bytes per second, 64 KB/s to 1 GB/s.
+    private static final double[] THROUGHPUT_BUCKETS = {65536, 262144, 1048576, 4194304, 16777216, 67108864,
+            268435456, 1073741824};
+
+    // A single file to download. The checksum and size are optional (null / -1); the
+    // target is null for fetchBytes().
+    static class Artifact {
+        final String url;
+        final File target;
+        final String sha1;
+        final long size;
+
+        Artifact(String url, File target, String sha1, long size) {
+            this.url = url;
+            this.target = target;
+            this.sha1 = sha1;
+            this.size = size;
+        }
+
+        @Override
+        public String toString() {
+            return target != null ? target.getName() : url;
+        }
+    }
+
+    // Receives the number of bytes transferred since the previous call.
+    interface Listener {
+        void transferred(Artifact artifact, long bytes);
+
+        // Called when a transfer of the artifact starts, so progress can count its size
+        // (if known) as work still to do. Files found complete on disk never start.
+        default void started(Artifact artifact) {
+        }
+    }
+
+    // Result of a finished download: the file and the SHA-1 computed while streaming.
+    static class Result {
+        final Artifact artifact;
+        final File file;
+        final String sha1;
+
+        Result(Artifact artifact, File file, String sha1) {
+            this.artifact = artifact;
+            this.file = file;
+            this.sha1 = sha1;
+        }
+    }
+
+    private final ExecutorService pool;
+    private final RateLimiter limiter;
+
+    // maxConnections bounds concurrent HTTP requests; bytesPerSecond <= 0 means unlimited.
+    ArtifactDownloader(int maxConnections, long bytesPerSecond) {
+        AtomicInteger count = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(maxConnections, r -> {
+            Thread t = new Thread(r, "downloader-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.limiter = new RateLimiter(bytesPerSecond);
+    }
+
+    // Change the global bandwidth limit at runtime.
+    void setBandwidthLimit(long bytesPerSecond) {
+        limiter.setRate(bytesPerSecond);
+    }
+
+    // Start downloading one artifact. An already present file with the expected
+    // size and checksum completes immediately. Cancelling the returned future aborts
+    // every connection that belongs to this download.
+    CompletableFuture<Result> download(Artifact artifact, Listener listener) {
+        Listener l = listener != null ? listener : (a, n) -> { };
+        Jobs jobs = new Jobs();
+        CompletableFuture<Result> result;
+        File target = artifact.target;
+        if (target.isFile() && artifact.sha1 != null && (artifact.size < 0 || target.length() == artifact.size)) {
+            result = supply(jobs, () -> {
+                String actual = sha1(target);
+                return actual.equalsIgnoreCase(artifact.sha1) ? new Result(artifact, target, actual) : null;
+            }).thenCompose(existing -> existing != null ? CompletableFuture.completedFuture(existing)
+                    : start(jobs, artifact, l));
+        } else {
+            result = start(jobs, artifact, l);
+        }
+        result.whenComplete((r, t) -> {
+            if (result.isCancelled()) {
+                jobs.cancel();
+            }
+        });
+        return result;
+    }
+
+    private CompletableFuture<Result> start(Jobs jobs, Artifact artifact, Listener listener) {
+        listener.started(artifact);
+        if (artifact.size >= CHUNK_THRESHOLD) {
+            return supply(jobs, () -> rangeValidator(artifact))
+                    .thenCompose(validator -> validator != null ? downloadChunked(jobs, artifact, validator, listener)
+                            : downloadWhole(jobs, artifact, listener));
+        }
+        return downloadWhole(jobs, artifact, listener);
+    }
+
+    // Download a small file into memory, verified like download(). For objects that do
+    // not get a file of their own, such as packed assets.
+    CompletableFuture<byte[]> fetchBytes(String url, String sha1, long size, Listener listener) {
+        Listener l = listener != null ? listener : (a, n) -> { };
+        Artifact artifact = new Artifact(url, null, sha1, size);
+        Jobs jobs = new Jobs();
+        l.started(artifact);
+        CompletableFuture<byte[]> result = supply(jobs, () -> {
+            IOException last = null;
+            for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+                try {
+                    return fetchBytes(artifact, l);
+                } catch (IOException e) {
+                    if (!retryable(e) || Thread.currentThread().isInterrupted()) {
+                        throw e;
+                    }
+                    last = e;
+                }
+            }
+            throw last;
+        });
+        result.whenComplete((r, t) -> {
+            if (result.isCancelled()) {
+                jobs.cancel();
+            }
+        });
+        return result;
+    }
+
+    // Download many artifacts concurrently and wait for all of them.
+    List<Result> downloadAll(Collection<Artifact> artifacts, Listener listener) throws IOException {
+        List<CompletableFuture<Result>> futures = new ArrayList<>();
+        for (Artifact artifact : artifacts) {
+            futures.add(download(artifact, listener));
+        }
+        List<Result> results = new ArrayList<>();
+        IOException failure = null;
+        for (CompletableFuture<Result> future : futures) {
+            try {
+                results.add(await(future));
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    // Wait for a download, unwrapping the failure cause.
+    static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Download interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    // ----- single stream -----
+
+    private CompletableFuture<Result> downloadWhole(Jobs jobs, Artifact artifact, Listener listener) {
+        return supply(jobs, () -> {
+            File part = partFile(artifact.target);
+            IOException last = null;
+            for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+                try {
+                    return fetchWhole(artifact, part, listener);
+                } catch (IOException e) {
+                    if (!retryable(e) || Thread.currentThread().isInterrupted()) {
+                        throw e;
+                    }
+                    last = e;
+                }
+            }
+            throw last;
+        });
+    }
+
+    private Result fetchWhole(Artifact artifact, File part, Listener listener) throws IOException {
+        ensureParent(artifact.target);
+        MessageDigest digest = newDigest();
+        long offset = part.isFile() ? part.length() : 0;
+        if (artifact.size >= 0 && offset > artifact.size) {
+            offset = 0;
+        }
+        File validatorFile = validatorFile(artifact.target);
+        HttpURLConnection conn = open(artifact.url);
+        try {
+            if (offset > 0) {
+                conn.setRequestProperty("Range", "bytes=" + offset + "-");
+                if (validatorFile.isFile()) {
+                    // A file that changed since the part was started comes back whole (200).
+                    conn.setRequestProperty("If-Range", new String(java.nio.file.Files.readAllBytes(
+                            validatorFile.toPath()), java.nio.charset.StandardCharsets.UTF_8));
+                }
+            }
+            int code = conn.getResponseCode();
+            if (code == 416 && artifact.size >= 0 && offset == artifact.size) {
+                // The part file is already complete.
+                updateDigest(digest, part, offset);
+                return finish(artifact, part, digest);
+            }
+            if (code == 416 && offset > 0) {
+                // The part cannot be resumed (unknown size, or the file changed): start over.
+                return restart(artifact, part, conn, listener);
+            }
+            checkResponse(conn, code);
+            boolean append = offset > 0 && code == HttpURLConnection.HTTP_PARTIAL;
+            if (append && rangeStart(conn) != offset) {
+                return restart(artifact, part, conn, listener);
+            }
+            if (append) {
+                // Resume: hash the bytes we already have, then continue the stream.
+                updateDigest(digest, part, offset);
+            } else {
+                String validator = validator(conn);
+                if (validator != null) {
+                    java.nio.file.Files.write(validatorFile.toPath(),
+                            validator.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+                } else {
+                    validatorFile.delete();
+                }
+            }
+            try (InputStream in = conn.getInputStream();
+                 OutputStream out = new FileOutputStream(part, append)) {
+                copy(in, out, digest, artifact, listener);
+            }
+            Result result = finish(artifact, part, digest);
+            validatorFile.delete();
+            return result;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    // Drop the part file and download from the start.
+    private Result restart(Artifact artifact, File part, HttpURLConnection conn, Listener listener)
+            throws IOException {
+        conn.disconnect();
+        if (!part.delete()) {
+            throw new IOException("Cannot delete " + part);
+        }
+        validatorFile(artifact.target).delete();
+        return fetchWhole(artifact, part, listener);
+    }
+
+    private byte[] fetchBytes(Artifact artifact, Listener listener) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(artifact.size > 0 ? (int) artifact.size : BUFFER_SIZE);
+        HttpURLConnection conn = open(artifact.url);
+        try {
+            checkResponse(conn, conn.getResponseCode());
+            try (InputStream in = conn.getInputStream()) {
+                copy(in, out, digest, artifact, listener);
+            }
+        } finally {
+            conn.disconnect();
+        }
+        if (artifact.size >= 0 && out.size() != artifact.size) {
+            throw new ChecksumException("Size mismatch for " + artifact.url + ": expected "
+                    + artifact.size + " bytes, got " + out.size());
+        }
+        String actual = hex(digest.digest());
+        if (artifact.sha1 != null && !artifact.sha1.equalsIgnoreCase(actual)) {
+            throw new ChecksumException("SHA-1 mismatch for " + artifact.url + ": expected "
+                    + artifact.sha1 + ", got " + actual);
+        }
+        return out.toByteArray();
+    }
+
+    // ----- range chunks -----
+
+    // The validator to send with range requests if the server serves ranges of this
+    // file: its ETag or Last-Modified, or "" if it has neither. Null without ranges.
+    private String rangeValidator(Artifact artifact) throws IOException {
+        HttpURLConnection conn = open(artifact.url);
+        try {
+            conn.setRequestMethod("HEAD");
+            int code = conn.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK || !"bytes".equalsIgnoreCase(conn.getHeaderField("Accept-Ranges"))
+                    || conn.getContentLengthLong() != artifact.size) {
+                return null;
+            }
+            String validator = validator(conn);
+            return validator != null ? validator : "";
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    // Fetch the chunks into their ranges of one preallocated part file, then hash it once.
+    private CompletableFuture<Result> downloadChunked(Jobs jobs, Artifact artifact, String validator,
+                                                      Listener listener) {
+        File part = partFile(artifact.target);
+        return supply(jobs, () -> {
+            ensureParent(part);
+            RandomAccessFile file = new RandomAccessFile(part, "rw");
+            try {
+                file.setLength(artifact.size);
+            } catch (IOException e) {
+                file.close();
+                throw e;
+            }
+            return file;
+        }).thenCompose(file -> {
+            int chunks = (int) ((artifact.size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            List<CompletableFuture<Void>> parts = new ArrayList<>();
+            for (int i = 0; i < chunks; i++) {
+                long start = i * CHUNK_SIZE;
+                long end = Math.min(artifact.size, start + CHUNK_SIZE) - 1;
+                parts.add(supply(jobs, () -> {
+                    fetchChunk(artifact, file.getChannel(), start, end, validator, listener);
+                    return null;
+                }));
+            }
+            return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).whenComplete((v, t) -> {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    System.err.println("Could not close " + part + ": " + e.getMessage());
+                }
+            });
+        }).thenCompose(v -> supply(jobs, () -> {
+            MessageDigest digest = newDigest();
+            updateDigest(digest, part, artifact.size);
+            return finish(artifact, part, digest);
+        }));
+    }
+
+    private void fetchChunk(Artifact artifact, FileChannel channel, long start, long end, String validator,
+                            Listener listener) throws IOException {
+        long length = end - start + 1;
+        long have = 0;
+        IOException last = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            HttpURLConnection conn = open(artifact.url);
+            try {
+                conn.setRequestProperty("Range", "bytes=" + (start + have) + "-" + end);
+                if (!validator.isEmpty()) {
+                    conn.setRequestProperty("If-Range", validator);
+                }
+                int code = conn.getResponseCode();
+                if (code >= 400) {
+                    checkResponse(conn, code);
+                }
+                if (code != HttpURLConnection.HTTP_PARTIAL || rangeStart(conn) != start + have) {
+                    throw new IOException("Server did not send the requested range of " + artifact.url
+                            + " (HTTP " + code + "); the file may have changed");
+                }
+                RangeOutput out = new RangeOutput(channel, start + have, end + 1);
+                try (InputStream in = conn.getInputStream()) {
+                    copy(in, out, null, artifact, listener);
+                } finally {
+                    have = out.position - start;
+                }
+                if (have == length) {
+                    return;
+                }
+                last = new IOException("Short read for bytes " + start + "-" + end + " of " + artifact.url);
+            } catch (IOException e) {
+                if (!retryable(e) || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                last = e;
+            } finally {
+                conn.disconnect();
+            }
+        }
+        throw last;
+    }
+
+    // Writes a response body into its range of a shared file.
+    private static final class RangeOutput extends OutputStream {
+        private final FileChannel channel;
+        private final long end;
+        long position;
+
+        RangeOutput(FileChannel channel, long position, long end) {
+            this.channel = channel;
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (position + len > end) {
+                throw new IOException("Server sent more than the requested range");
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    // ----- helpers -----
+
+    private void copy(InputStream in, OutputStream out, MessageDigest digest, Artifact artifact, Listener listener)
+            throws IOException {
+        String host = host(artifact.url);
+        long start = System.nanoTime();
+        long total = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        try (Metrics.Span span = Metrics.span("launcher_download_stream_seconds", "host", host)) {
+            span.detail(artifact.url);
+            while ((n = in.read(buffer)) != -1) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Download cancelled: " + artifact.url);
+                }
+                limiter.acquire(n);
+                if (digest != null) {
+                    digest.update(buffer, 0, n);
+                }
+                out.write(buffer, 0, n);
+                listener.transferred(artifact, n);
+                total += n;
+            }
+            span.bytes(total);
+        } finally {
+            Metrics.counter("launcher_download_bytes_total", "host", host).add(total);
+        }
+        // Small files measure latency, not throughput.
+        if (total >= THROUGHPUT_MIN_BYTES) {
+            Metrics.histogram("launcher_download_throughput_bytes_per_second", THROUGHPUT_BUCKETS, "host", host)
+                    .observe(total * 1e9 / Math.max(1, System.nanoTime() - start));
+        }
+    }
+
+    private Result finish(Artifact artifact, File part, MessageDigest digest) throws IOException {
+        if (artifact.size >= 0 && part.length() != artifact.size) {
+            part.delete();
+            throw new ChecksumException("Size mismatch for " + artifact.url + ": expected "
+                    + artifact.size + " bytes, got " + part.length());
+        }
+        String actual = hex(digest.digest());
+        if (artifact.sha1 != null && !artifact.sha1.equalsIgnoreCase(actual)) {
+            part.delete();
+            throw new ChecksumException("SHA-1 mismatch for " + artifact.url + ": expected "
+                    + artifact.sha1 + ", got " + actual);
+        }
+        File target = artifact.target;
+        if (target.exists() && !target.delete()) {
+            throw new IOException("Cannot replace " + target);
+        }
+        if (!part.renameTo(target)) {
+            throw new IOException("Cannot move " + part + " to " + target);
+        }
+        return new Result(artifact, target, actual);
+    }
+
+    private static HttpURLConnection open(String url) throws IOException {
+        URLConnection conn = new URL(url).openConnection();
+        if (!(conn instanceof HttpURLConnection)) {
+            throw new IOException("Not an HTTP URL: " + url);
+        }
+        conn.setConnectTimeout(CONNECT_TIMEOUT);
+        conn.setReadTimeout(READ_TIMEOUT);
+        conn.setRequestProperty("User-Agent", "FullMinecraftLauncher");
+        Metrics.counter("launcher_http_requests_total", "host", host(url)).increment();
+        return (HttpURLConnection) conn;
+    }
+
+    private static String host(String url) {
+        try {
+            String host = new URL(url).getHost();
+            return host.isEmpty() ? "local" : host;
+        } catch (MalformedURLException e) {
+            return "unknown";
+        }
+    }
+
+    private static void checkResponse(HttpURLConnection conn, int code) throws IOException {
+        if (code != HttpURLConnection.HTTP_OK && code != HttpURLConnection.HTTP_PARTIAL) {
+            throw new HttpStatusException(code, "HTTP " + code + " for " + conn.getURL());
+        }
+    }
+
+    // Another attempt cannot fix a bad checksum or a request the server refused as such;
+    // only timeouts and rate limits among the 4xx responses are worth repeating.
+    static boolean retryable(IOException e) {
+        if (e instanceof ChecksumException) {
+            return false;
+        }
+        if (e instanceof HttpStatusException) {
+            int code = ((HttpStatusException) e).code;
+            return code < 400 || code >= 500 || code == 408 || code == 429;
+        }
+        return true;
+    }
+
+    private static void updateDigest(MessageDigest digest, File file, long length) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            long remaining = length;
+            int n;
+            while (remaining > 0 && (n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                digest.update(buffer, 0, n);
+                remaining -= n;
+            }
+        }
+    }
+
+    private static void ensureParent(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+    }
+
+    static File partFile(File target) {
+        return new File(target.getPath() + ".part");
+    }
+
+    // Holds the validator of the response a part file was started from.
+    static File validatorFile(File target) {
+        return new File(target.getPath() + ".part.validator");
+    }
+
+    // A strong ETag, or Last-Modified; weak ETags cannot be used with If-Range.
+    private static String validator(HttpURLConnection conn) {
+        String etag = conn.getHeaderField("ETag");
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return conn.getHeaderField("Last-Modified");
+    }
+
+    // First byte of a 206 response according to its Content-Range, or -1.
+    private static long rangeStart(HttpURLConnection conn) {
+        String range = conn.getHeaderField("Content-Range");
+        if (range == null || !range.startsWith("bytes ")) {
+            return -1;
+        }
+        int dash = range.indexOf('-');
+        try {
+            return dash > 6 ? Long.parseLong(range.substring(6, dash).trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static String sha1(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        updateDigest(digest, file, file.length());
+        return hex(digest.digest());
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private <T> CompletableFuture<T> supply(Jobs jobs, IOCallable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        jobs.add(pool.submit(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }));
+        return future;
+    }
+
+    // The pool jobs started on behalf of one download, so they can be cancelled together.
+    private static class Jobs {
+        private final List<Future<?>> running = new ArrayList<>();
+        private boolean cancelled;
+
+        synchronized void add(Future<?> job) {
+            if (cancelled) {
+                job.cancel(true);
+            } else {
+                running.removeIf(Future::isDone);
+                running.add(job);
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            for (Future<?> job : running) {
+                job.cancel(true);
+            }
+            running.clear();
+        }
+    }
+
+    private interface IOCallable<T> {
+        T call() throws IOException;
+    }
+
+    // Thrown when a completed download does not match its expected size or hash.
+    static class ChecksumException extends IOException {
+        ChecksumException(String message) {
+            super(message);
+        }
+    }
+
+    // Thrown when the server answers with an unexpected status code.
+    static class HttpStatusException extends IOException {
+        final int code;
+
+        HttpStatusException(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+
+    // Token bucket shared by all connections.
+    static class RateLimiter {
+        private long rate;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        RateLimiter(long bytesPerSecond) {
+            this.rate = bytesPerSecond;
+        }
+
+        synchronized void setRate(long bytesPerSecond) {
+            this.rate = bytesPerSecond;
+            this.tokens = 0;
+        }
+
+        void acquire(int bytes) throws InterruptedIOException {
+            long sleepNanos;
+            synchronized (this) {
+                if (rate <= 0) {
+                    return;
+                }
+                long now = System.nanoTime();
+                tokens = Math.min(rate, tokens + (now - lastRefill) * rate / 1e9);
+                lastRefill = now;
+                tokens -= bytes;
+                sleepNanos = tokens < 0 ? (long) (-tokens * 1e9 / rate) : 0;
+            }
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Download cancelled");
+                }
+            }
+        }
+    }
+}
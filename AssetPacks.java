@@ -0,0 +1,551 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Packed store for game assets, as an alternative to one file per object.
+//
+// Objects are appended to a few large pack files (pack-<n>.pack, each a sequence of
+// <sha1, length, data> records) and found through a sorted index of fixed-size entries
+// (index.idx) that is read into memory and binary-searched. New objects are only visible
+// to other processes after commit(), which syncs the pack once and replaces the index
+// atomically, so an install costs a handful of fsyncs instead of thousands of file
+// creations. Reads return slices of the mapped packs without copying; packs are only
+// ever appended to, so they can stay mapped while the index is replaced.
+//
+// The launcher and the command line can share the directory. Appends and commits hold a
+// lock on the lock file: appends go after whatever the packs hold, including records
+// another process has not committed yet, and commit() merges with the index on disk
+// rather than the one this process last read.
+//
+// The game still expects assets/objects/<xx>/<sha1>; export() writes that loose layout
+// for the objects a version needs. A missing or damaged index is rebuilt from the packs.
+class AssetPacks {
+    private static final int INDEX_MAGIC = 0x41504958; // "APIX"
+    private static final int INDEX_FORMAT = 1;
+    // sha1, pack number, data offset, data length
+    private static final int ENTRY_SIZE = 20 + 4 + 8 + 4;
+    // sha1, data length
+    private static final int RECORD_HEADER = 20 + 4;
+    static final long MAX_PACK_SIZE = 256L * 1024 * 1024;
+
+    // The committed state: index entries and mapped packs.
+    private static final class Snapshot {
+        final ByteBuffer entries;
+        final int count;
+        final long[] lengths;
+        final MappedByteBuffer[] packs;
+
+        Snapshot(ByteBuffer entries, int count, long[] lengths, MappedByteBuffer[] packs) {
+            this.entries = entries;
+            this.count = count;
+            this.lengths = lengths;
+            this.packs = packs;
+        }
+    }
+
+    private final File dir;
+    private final File indexFile;
+    private final File lockFile;
+    private volatile Snapshot snapshot;
+    // Appended but not yet committed: sha1 -> {pack, offset, length}.
+    private final Map<String, long[]> pending = new ConcurrentHashMap<>();
+    // Length of every pack including pending records.
+    private long[] packLengths;
+    private FileChannel appendChannel;
+    private int appendPack = -1;
+    private FileChannel lockChannel;
+
+    AssetPacks(File dir) {
+        this.dir = dir;
+        this.indexFile = new File(dir, "index.idx");
+        this.lockFile = new File(dir, "lock");
+    }
+
+    boolean contains(String sha1) throws IOException {
+        return pending.containsKey(key(sha1)) || find(snapshot(), hashBytes(sha1)) >= 0;
+    }
+
+    // The object's bytes, or null if it is not in the packs. Committed objects are a
+    // read-only view of the mapped pack.
+    ByteBuffer read(String sha1) throws IOException {
+        Snapshot current = snapshot();
+        int slot = find(current, hashBytes(sha1));
+        if (slot >= 0) {
+            int base = slot * ENTRY_SIZE;
+            int pack = current.entries.getInt(base + 20);
+            long offset = current.entries.getLong(base + 24);
+            int length = current.entries.getInt(base + 32);
+            ByteBuffer view = current.packs[pack].duplicate();
+            view.position((int) offset).limit((int) offset + length);
+            return view.slice();
+        }
+        long[] location = pending.get(key(sha1));
+        if (location == null) {
+            return null;
+        }
+        ByteBuffer data = ByteBuffer.allocate((int) location[2]);
+        try (FileChannel channel = FileChannel.open(packFile((int) location[0]).toPath(), StandardOpenOption.READ)) {
+            while (data.hasRemaining()) {
+                if (channel.read(data, location[1] + data.position()) < 0) {
+                    throw new EOFException("Truncated pack");
+                }
+            }
+        }
+        data.flip();
+        return data.asReadOnlyBuffer();
+    }
+
+    // Append an object whose hash the caller has verified. Visible to this process at
+    // once and to others after commit().
+    synchronized void add(String sha1, byte[] data) throws IOException {
+        if (contains(sha1)) {
+            return;
+        }
+        long record = RECORD_HEADER + (long) data.length;
+        FileLock lock = lock();
+        try {
+            openAppendPack(record);
+            long offset = packLengths[appendPack];
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+            header.put(hashBytes(sha1)).putInt(data.length).flip();
+            writeFully(appendChannel, header, offset);
+            writeFully(appendChannel, ByteBuffer.wrap(data), offset + RECORD_HEADER);
+            packLengths[appendPack] = offset + record;
+            pending.put(key(sha1), new long[]{appendPack, offset + RECORD_HEADER, data.length});
+        } finally {
+            lock.release();
+        }
+    }
+
+    // Make every added object durable and visible through the index.
+    synchronized void commit() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        FileLock lock = lock();
+        try {
+            appendChannel.force(false);
+            // Another process may have committed since this one last read the index.
+            Snapshot current = load();
+            List<Map.Entry<String, long[]>> added = new ArrayList<>(pending.entrySet());
+            added.sort(Map.Entry.comparingByKey());
+            // Merge the sorted committed entries with the sorted new ones; an object both
+            // processes added keeps its committed entry.
+            ByteBuffer merged = ByteBuffer.allocate((current.count + added.size()) * ENTRY_SIZE);
+            int i = 0;
+            int j = 0;
+            while (i < current.count || j < added.size()) {
+                int order = j >= added.size() ? -1 : i >= current.count ? 1
+                        : compare(current.entries, i * ENTRY_SIZE, hashBytes(added.get(j).getKey()));
+                if (order <= 0) {
+                    ByteBuffer entry = current.entries.duplicate();
+                    entry.position(i * ENTRY_SIZE).limit((i + 1) * ENTRY_SIZE);
+                    merged.put(entry);
+                    i++;
+                    if (order == 0) {
+                        j++;
+                    }
+                } else {
+                    long[] location = added.get(j).getValue();
+                    merged.put(hashBytes(added.get(j).getKey())).putInt((int) location[0]).putLong(location[1])
+                            .putInt((int) location[2]);
+                    j++;
+                }
+            }
+            merged.flip();
+            long[] lengths = Arrays.copyOf(packLengths, Math.max(packLengths.length, current.lengths.length));
+            for (int k = 0; k < current.lengths.length; k++) {
+                lengths[k] = Math.max(lengths[k], current.lengths[k]);
+            }
+            writeIndex(lengths, merged);
+            snapshot = map();
+            packLengths = lengths;
+            pending.clear();
+        } finally {
+            lock.release();
+        }
+    }
+
+    // Drop objects from the index, so that they are added again; used for objects
+    // verify() found damaged. Their records stay in the packs.
+    synchronized void remove(Collection<String> hashes) throws IOException {
+        FileLock lock = lock();
+        try {
+            Snapshot current = load();
+            ByteBuffer kept = ByteBuffer.allocate(current.count * ENTRY_SIZE);
+            byte[] hash = new byte[20];
+            for (int i = 0; i < current.count; i++) {
+                ByteBuffer entry = current.entries.duplicate();
+                entry.position(i * ENTRY_SIZE).limit((i + 1) * ENTRY_SIZE);
+                entry.duplicate().get(hash);
+                if (!hashes.contains(ArtifactDownloader.hex(hash))) {
+                    kept.put(entry);
+                }
+            }
+            kept.flip();
+            writeIndex(current.lengths, kept);
+            snapshot = map();
+            for (String sha1 : hashes) {
+                pending.remove(key(sha1));
+            }
+        } finally {
+            lock.release();
+        }
+    }
+
+    // Write the objects as assets/objects/<xx>/<sha1> under objectsDir, skipping files
+    // that are already there with the right size. Returns the hashes of the files written.
+    List<String> export(Collection<String> hashes, File objectsDir) throws IOException {
+        List<String> written = new ArrayList<>();
+        for (String sha1 : hashes) {
+            String hash = key(sha1);
+            ByteBuffer data = read(hash);
+            if (data == null) {
+                throw new FileNotFoundException("Asset " + hash + " is not in the packs");
+            }
+            File target = new File(new File(objectsDir, hash.substring(0, 2)), hash);
+            if (target.length() == data.remaining() && target.isFile()) {
+                continue;
+            }
+            File parent = target.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Cannot create directory " + parent);
+            }
+            try (FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (data.hasRemaining()) {
+                    out.write(data);
+                }
+            }
+            written.add(hash);
+        }
+        return written;
+    }
+
+    // Hash every committed object, in pack order so each pack is read front to back.
+    // Returns the hashes whose indexed data no longer matches.
+    Set<String> verify() throws IOException {
+        Snapshot current = snapshot();
+        Integer[] order = new Integer[current.count];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingInt(i -> current.entries.getInt(i * ENTRY_SIZE + 20))
+                .thenComparingLong(i -> current.entries.getLong(i * ENTRY_SIZE + 24)));
+        Set<String> bad = new TreeSet<>();
+        MessageDigest digest = ArtifactDownloader.newDigest();
+        byte[] hash = new byte[20];
+        for (int slot : order) {
+            int base = slot * ENTRY_SIZE;
+            ByteBuffer entry = current.entries.duplicate();
+            entry.position(base);
+            entry.get(hash);
+            int pack = current.entries.getInt(base + 20);
+            long offset = current.entries.getLong(base + 24);
+            int length = current.entries.getInt(base + 32);
+            ByteBuffer data = current.packs[pack].duplicate();
+            data.position((int) offset).limit((int) offset + length);
+            digest.update(data);
+            if (!Arrays.equals(digest.digest(), hash)) {
+                bad.add(ArtifactDownloader.hex(hash));
+            }
+        }
+        return bad;
+    }
+
+    int size() throws IOException {
+        return snapshot().count + pending.size();
+    }
+
+    // ----- index -----
+
+    private Snapshot snapshot() throws IOException {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    FileLock lock = lock();
+                    try {
+                        snapshot = load();
+                    } finally {
+                        lock.release();
+                    }
+                    packLengths = snapshot.lengths.clone();
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    // Read the index and map the packs, rebuilding the index from the packs if it is
+    // missing or does not describe them. Called with the lock held.
+    private Snapshot load() throws IOException {
+        if (indexFile.isFile()) {
+            try {
+                return map();
+            } catch (IOException e) {
+                System.err.println("Rebuilding asset pack index: " + e.getMessage());
+            }
+        }
+        rebuild();
+        return map();
+    }
+
+    private Snapshot map() throws IOException {
+        // The index is read rather than mapped: Windows cannot replace a mapped file.
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexFile.toPath()));
+        if (index.remaining() < 12 || index.getInt() != INDEX_MAGIC || index.getInt() != INDEX_FORMAT) {
+            throw new IOException("Not an asset pack index");
+        }
+        int packCount = index.getInt();
+        if (packCount < 0 || index.remaining() < packCount * 8L + 4) {
+            throw new IOException("Truncated asset pack index");
+        }
+        long[] lengths = new long[packCount];
+        MappedByteBuffer[] packs = new MappedByteBuffer[packCount];
+        for (int i = 0; i < packCount; i++) {
+            lengths[i] = index.getLong();
+            try (FileChannel pack = FileChannel.open(packFile(i).toPath(), StandardOpenOption.READ)) {
+                if (pack.size() < lengths[i]) {
+                    throw new IOException(packFile(i).getName() + " is shorter than indexed");
+                }
+                packs[i] = pack.map(FileChannel.MapMode.READ_ONLY, 0, lengths[i]);
+            }
+        }
+        int count = index.getInt();
+        if (count < 0 || index.remaining() != (long) count * ENTRY_SIZE) {
+            throw new IOException("Truncated asset pack index");
+        }
+        return new Snapshot(index.slice(), count, lengths, packs);
+    }
+
+    // Index the records of each pack up to the first incomplete or damaged one.
+    private void rebuild() throws IOException {
+        MessageDigest digest = ArtifactDownloader.newDigest();
+        List<long[]> lengths = new ArrayList<>();
+        TreeMap<String, long[]> entries = new TreeMap<>();
+        for (int i = 0; packFile(i).isFile(); i++) {
+            long position = 0;
+            try (FileChannel pack = FileChannel.open(packFile(i).toPath(), StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+                byte[] hash = new byte[20];
+                while (true) {
+                    header.clear();
+                    while (header.hasRemaining() && pack.read(header, position + header.position()) > 0) {
+                        // keep reading
+                    }
+                    if (header.hasRemaining()) {
+                        break;
+                    }
+                    header.flip();
+                    header.get(hash);
+                    long length = header.getInt();
+                    if (length < 0 || position + RECORD_HEADER + length > pack.size()) {
+                        break;
+                    }
+                    ByteBuffer data = ByteBuffer.allocate((int) length);
+                    while (data.hasRemaining() && pack.read(data, position + RECORD_HEADER + data.position()) > 0) {
+                        // keep reading
+                    }
+                    data.flip();
+                    digest.update(data);
+                    if (!Arrays.equals(digest.digest(), hash)) {
+                        break;
+                    }
+                    entries.putIfAbsent(ArtifactDownloader.hex(hash), new long[]{i, position + RECORD_HEADER, length});
+                    position += RECORD_HEADER + length;
+                }
+            }
+            lengths.add(new long[]{position});
+        }
+        ByteBuffer merged = ByteBuffer.allocate(entries.size() * ENTRY_SIZE);
+        for (Map.Entry<String, long[]> entry : entries.entrySet()) {
+            long[] location = entry.getValue();
+            merged.put(hashBytes(entry.getKey())).putInt((int) location[0]).putLong(location[1]).putInt((int) location[2]);
+        }
+        merged.flip();
+        long[] packSizes = new long[lengths.size()];
+        for (int i = 0; i < packSizes.length; i++) {
+            packSizes[i] = lengths.get(i)[0];
+        }
+        writeIndex(packSizes, merged);
+    }
+
+    private void writeIndex(long[] lengths, ByteBuffer entries) throws IOException {
+        mkdirs();
+        ByteBuffer header = ByteBuffer.allocate(12 + lengths.length * 8 + 4);
+        header.putInt(INDEX_MAGIC).putInt(INDEX_FORMAT).putInt(lengths.length);
+        for (long length : lengths) {
+            header.putLong(length);
+        }
+        header.putInt(entries.remaining() / ENTRY_SIZE).flip();
+        File tmp = new File(dir, "index.tmp");
+        try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            while (entries.hasRemaining()) {
+                out.write(entries);
+            }
+            out.force(true);
+        }
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Binary search for a hash; the entry number or -1.
+    private static int find(Snapshot current, byte[] hash) {
+        int low = 0;
+        int high = current.count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int order = compare(current.entries, mid * ENTRY_SIZE, hash);
+            if (order < 0) {
+                low = mid + 1;
+            } else if (order > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // Unsigned comparison of the hash of the entry at base with hash.
+    private static int compare(ByteBuffer entries, int base, byte[] hash) {
+        for (int k = 0; k < 20; k++) {
+            int order = (entries.get(base + k) & 0xFF) - (hash[k] & 0xFF);
+            if (order != 0) {
+                return order;
+            }
+        }
+        return 0;
+    }
+
+    // ----- packs -----
+
+    // Point the append channel and packLengths[appendPack] at the end of the last pack,
+    // or at a new pack when the last one cannot take another record. Called with the
+    // lock held.
+    private void openAppendPack(long record) throws IOException {
+        int pack = Math.max(packLengths.length - 1, 0);
+        // Another process may have started newer packs.
+        while (packFile(pack + 1).isFile()) {
+            pack++;
+        }
+        if (pack >= packLengths.length) {
+            packLengths = Arrays.copyOf(packLengths, pack + 1);
+        }
+        switchAppendPack(pack);
+        long size = appendChannel.size();
+        if (size != packLengths[pack]) {
+            // Records past our end were appended by another process; they are complete
+            // unless it crashed while writing, so only a torn last record is dropped.
+            if (size < packLengths[pack]) {
+                throw new IOException(packFile(pack).getName() + " is shorter than written");
+            }
+            long end = recordsEnd(appendChannel, packLengths[pack], size);
+            if (end < size) {
+                appendChannel.truncate(end);
+            }
+            packLengths[pack] = end;
+        }
+        if (packLengths[pack] > 0 && packLengths[pack] + record > MAX_PACK_SIZE) {
+            pack++;
+            packLengths = Arrays.copyOf(packLengths, pack + 1);
+            switchAppendPack(pack);
+        }
+    }
+
+    private void switchAppendPack(int pack) throws IOException {
+        if (pack == appendPack) {
+            return;
+        }
+        if (appendChannel != null) {
+            appendChannel.force(false);
+            appendChannel.close();
+        }
+        appendChannel = FileChannel.open(packFile(pack).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.READ);
+        appendPack = pack;
+    }
+
+    // End of the records between position and size, up to the first incomplete or
+    // damaged one (the same rule rebuild() uses).
+    private static long recordsEnd(FileChannel pack, long position, long size) throws IOException {
+        MessageDigest digest = ArtifactDownloader.newDigest();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        byte[] hash = new byte[20];
+        while (position + RECORD_HEADER <= size) {
+            header.clear();
+            while (header.hasRemaining() && pack.read(header, position + header.position()) > 0) {
+                // keep reading
+            }
+            header.flip();
+            header.get(hash);
+            int length = header.getInt();
+            if (length < 0 || position + RECORD_HEADER + length > size) {
+                break;
+            }
+            ByteBuffer data = ByteBuffer.allocate(length);
+            while (data.hasRemaining() && pack.read(data, position + RECORD_HEADER + data.position()) > 0) {
+                // keep reading
+            }
+            data.flip();
+            digest.update(data);
+            if (!Arrays.equals(digest.digest(), hash)) {
+                break;
+            }
+            position += RECORD_HEADER + length;
+        }
+        return position;
+    }
+
+    // Exclusive lock on the directory, shared with other launcher processes.
+    private FileLock lock() throws IOException {
+        if (lockChannel == null) {
+            mkdirs();
+            lockChannel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        return lockChannel.lock();
+    }
+
+    private File packFile(int pack) {
+        return new File(dir, "pack-" + pack + ".pack");
+    }
+
+    private void mkdirs() throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+
+    private static String key(String sha1) {
+        return sha1.toLowerCase(Locale.ROOT);
+    }
+
+    private static byte[] hashBytes(String sha1) {
+        if (sha1.length() != 40) {
+            throw new IllegalArgumentException("Not a SHA-1: " + sha1);
+        }
+        byte[] bytes = new byte[20];
+        for (int i = 0; i < 20; i++) {
+            bytes[i] = (byte) Character.digit(sha1.charAt(i * 2), 16);
+            bytes[i] = (byte) (bytes[i] << 4 | Character.digit(sha1.charAt(i * 2 + 1), 16));
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,95 @@
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Class data sharing archives for launched games.
+//
+// The first launch of a classpath records the classes it loads into a dynamic AppCDS
+// archive when the game exits; later launches map that archive instead of parsing and
+// verifying the same classes again. Archives are named after the profile and a hash of
+// runtime, classpath (with each jar's size and mtime) and mod set, so any change to
+// those starts a new archive and the profile's old ones are deleted.
+//
+// Dynamic archives need Java 13. From Java 19 the JVM creates, validates and refreshes
+// the archive itself (-XX:+AutoCreateSharedArchive); on 13-18 we switch between
+// ArchiveClassesAtExit and SharedArchiveFile. Older runtimes get no options.
+class CdsArchives {
+    private final File dir;
+
+    CdsArchives(File dir) {
+        this.dir = dir;
+    }
+
+    // JVM options for launching profileId with the given runtime and classpath.
+    List<String> options(String profileId, JavaRuntimes.Runtime runtime, String classpath,
+                         List<ModIndex.ModFile> mods) {
+        if (runtime == null || runtime.major < 13) {
+            return Collections.emptyList();
+        }
+        String prefix = profileId + "-";
+        File archive = new File(dir, prefix + key(runtime, classpath, mods) + ".jsa");
+        removeStale(prefix, archive);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            return Collections.emptyList();
+        }
+        List<String> options = new ArrayList<>();
+        if (runtime.major >= 19) {
+            options.add("-XX:+AutoCreateSharedArchive");
+            options.add("-XX:SharedArchiveFile=" + archive.getPath());
+        } else if (archive.length() > 0) {
+            options.add("-XX:SharedArchiveFile=" + archive.getPath());
+        } else {
+            options.add("-XX:ArchiveClassesAtExit=" + archive.getPath());
+        }
+        return options;
+    }
+
+    // True if options() would record a new archive rather than use one.
+    boolean isRecording(List<String> options) {
+        for (String option : options) {
+            if (option.startsWith("-XX:ArchiveClassesAtExit=")) {
+                return true;
+            }
+            if (option.startsWith("-XX:SharedArchiveFile=")
+                    && new File(option.substring("-XX:SharedArchiveFile=".length())).length() == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void removeStale(String prefix, File current) {
+        File[] archives = dir.listFiles((d, name) -> name.startsWith(prefix) && name.endsWith(".jsa"));
+        if (archives == null) {
+            return;
+        }
+        for (File archive : archives) {
+            // Profile ids can prefix each other ("1.20-fabric" vs "1.20-fabric-x"); only
+            // touch names that are exactly prefix + hash.
+            String hash = archive.getName().substring(prefix.length(), archive.getName().length() - 4);
+            if (!archive.equals(current) && hash.length() == 40 && hash.indexOf('-') < 0 && !archive.delete()) {
+                System.err.println("Could not delete stale CDS archive " + archive);
+            }
+        }
+    }
+
+    private static String key(JavaRuntimes.Runtime runtime, String classpath, List<ModIndex.ModFile> mods) {
+        MessageDigest digest = ArtifactDownloader.newDigest();
+        StringBuilder sb = new StringBuilder();
+        sb.append(runtime.binary.getPath()).append('\n').append(runtime.version).append('\n').append(classpath);
+        // A repair or reinstall can put a different jar at the same path; the JVM then
+        // rejects the archive, so its size and mtime are part of the key.
+        for (String entry : classpath.split(File.pathSeparator)) {
+            File jar = new File(entry);
+            sb.append('\n').append(jar.length()).append(' ').append(jar.lastModified());
+        }
+        for (ModIndex.ModFile mod : mods) {
+            sb.append('\n').append(mod.fileName).append(' ').append(mod.size).append(' ').append(mod.lastModified);
+        }
+        digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+        return ArtifactDownloader.hex(digest.digest());
+    }
+}
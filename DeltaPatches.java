@@ -0,0 +1,396 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// Delta updates: rebuild a new jar from one already in the object store plus a patch,
+// instead of downloading the whole jar.
+//
+// Patches are zip-entry diffs. A game or library jar changes only some of its entries
+// between versions, so a patch is a list of "copy these compressed bytes from the base
+// jar" and "write these literal bytes" operations, with the literal part deflated. It is
+// applied as a stream: the target is written front to back and hashed as it goes, and a
+// result that does not match the expected size and SHA-1 is thrown away so the caller can
+// fall back to a full download.
+//
+// Patches are looked up at <source>/<base sha1>/<target sha1>.patch, where the source is
+// an HTTP(S) URL or a local directory. Generate them with
+//   java DeltaPatches <base jar> <target jar> <source dir>
+class DeltaPatches {
+    private static final int MAGIC = 0x4C445046; // "LDPF"
+    private static final int FORMAT = 1;
+    private static final int OP_END = 0;
+    private static final int OP_COPY = 1;
+    private static final int OP_DATA = 2;
+    private static final int MAX_DATA_OP = 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int LOC_SIGNATURE = 0x04034b50;
+
+    private final String source;
+
+    // source may be null or empty to disable delta updates.
+    DeltaPatches(String source) {
+        this.source = source != null && !source.trim().isEmpty() ? source.trim().replaceAll("/+$", "") : null;
+    }
+
+    boolean isEnabled() {
+        return source != null;
+    }
+
+    // Rebuild the object sha1 from the stored object baseSha1 and a patch from the
+    // source, and add it to the store. Returns the patch size in bytes. Throws
+    // FileNotFoundException if there is no such patch, and ChecksumException if the
+    // patched file is not the expected one; nothing is added to the store then.
+    long fetch(ObjectStore store, ArtifactDownloader downloader, String baseSha1, String sha1, long size,
+               ArtifactDownloader.Listener listener) throws IOException {
+        if (!isEnabled() || baseSha1 == null || sha1 == null || !store.contains(baseSha1)) {
+            throw new FileNotFoundException("No delta base for " + sha1);
+        }
+        String name = baseSha1.toLowerCase(Locale.ROOT) + "/" + sha1.toLowerCase(Locale.ROOT) + ".patch";
+        File patch;
+        boolean downloaded = false;
+        if (source.startsWith("http://") || source.startsWith("https://")) {
+            File tmp = File.createTempFile("delta", ".patch");
+            ArtifactDownloader.Artifact artifact = new ArtifactDownloader.Artifact(source + "/" + name, tmp, null, -1);
+            try {
+                patch = ArtifactDownloader.await(downloader.download(artifact, listener)).file;
+            } catch (IOException e) {
+                tmp.delete();
+                ArtifactDownloader.partFile(tmp).delete();
+                ArtifactDownloader.validatorFile(tmp).delete();
+                int code = e instanceof ArtifactDownloader.HttpStatusException
+                        ? ((ArtifactDownloader.HttpStatusException) e).code : 0;
+                if (code == 404 || code == 410) {
+                    throw new FileNotFoundException(source + "/" + name);
+                }
+                throw e;
+            }
+            downloaded = true;
+        } else {
+            patch = new File(source, name);
+            if (!patch.isFile()) {
+                throw new FileNotFoundException(patch.getPath());
+            }
+        }
+        File out = store.newIncomingFile();
+        try {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(patch), BUFFER_SIZE)) {
+                apply(store.objectFile(baseSha1), in, out, sha1, size);
+            }
+            store.addVerified(out, sha1);
+            return patch.length();
+        } finally {
+            out.delete();
+            if (downloaded) {
+                patch.delete();
+            }
+        }
+    }
+
+    // Apply a patch read from in to base, writing out. The result must have the given
+    // SHA-1 and, unless size is negative, size.
+    static void apply(File base, InputStream in, File out, String sha1, long size) throws IOException {
+        DataInputStream header = new DataInputStream(in);
+        if (header.readInt() != MAGIC || header.readInt() != FORMAT) {
+            throw new IOException("Not a delta patch");
+        }
+        byte[] baseHash = new byte[20];
+        byte[] targetHash = new byte[20];
+        header.readFully(baseHash);
+        header.readFully(targetHash);
+        long targetSize = header.readLong();
+        if (!ArtifactDownloader.hex(targetHash).equalsIgnoreCase(sha1) || (size >= 0 && size != targetSize)) {
+            throw new ArtifactDownloader.ChecksumException("Patch is for a different file than " + sha1);
+        }
+        File parent = out.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        MessageDigest digest = ArtifactDownloader.newDigest();
+        long written = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (DataInputStream ops = new DataInputStream(new BufferedInputStream(new InflaterInputStream(in), BUFFER_SIZE));
+             FileChannel baseChannel = FileChannel.open(base.toPath(), StandardOpenOption.READ);
+             OutputStream target = new BufferedOutputStream(new FileOutputStream(out), BUFFER_SIZE)) {
+            int op;
+            while ((op = ops.readUnsignedByte()) != OP_END) {
+                if (op == OP_COPY) {
+                    long offset = ops.readLong();
+                    long length = ops.readLong();
+                    if (offset < 0 || length < 0 || offset + length > baseChannel.size()) {
+                        throw new IOException("Patch does not fit base " + base.getName());
+                    }
+                    ByteBuffer view = ByteBuffer.wrap(buffer);
+                    while (length > 0) {
+                        view.clear().limit((int) Math.min(buffer.length, length));
+                        int n = baseChannel.read(view, offset);
+                        if (n <= 0) {
+                            throw new EOFException("Truncated base " + base.getName());
+                        }
+                        digest.update(buffer, 0, n);
+                        target.write(buffer, 0, n);
+                        offset += n;
+                        length -= n;
+                        written += n;
+                    }
+                } else if (op == OP_DATA) {
+                    int length = ops.readInt();
+                    while (length > 0) {
+                        int n = ops.read(buffer, 0, Math.min(buffer.length, length));
+                        if (n < 0) {
+                            throw new EOFException("Truncated patch");
+                        }
+                        digest.update(buffer, 0, n);
+                        target.write(buffer, 0, n);
+                        length -= n;
+                        written += n;
+                    }
+                } else {
+                    throw new IOException("Corrupt patch (operation " + op + ")");
+                }
+                if (written > targetSize) {
+                    break;
+                }
+            }
+        }
+        String actual = ArtifactDownloader.hex(digest.digest());
+        if (written != targetSize || !actual.equalsIgnoreCase(sha1)) {
+            out.delete();
+            throw new ArtifactDownloader.ChecksumException("Patched file does not match " + sha1 + ": got "
+                    + actual + ", " + written + " bytes");
+        }
+    }
+
+    // Write a patch that turns base into target. Entries whose compressed bytes are
+    // unchanged are copied from base; everything else is stored deflated. Files that
+    // are not zips become a single literal block.
+    static void create(File base, File target, File patch) throws IOException {
+        try (FileChannel baseChannel = FileChannel.open(base.toPath(), StandardOpenOption.READ);
+             FileChannel targetChannel = FileChannel.open(target.toPath(), StandardOpenOption.READ);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(patch), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.write(hexBytes(ArtifactDownloader.sha1(base)));
+            out.write(hexBytes(ArtifactDownloader.sha1(target)));
+            out.writeLong(targetChannel.size());
+            DeflaterOutputStream deflater = new DeflaterOutputStream(out, new java.util.zip.Deflater(9), BUFFER_SIZE);
+            Writer writer = new Writer(new DataOutputStream(deflater), targetChannel);
+            Map<String, Entry> baseEntries = new HashMap<>();
+            List<Entry> targetEntries = new ArrayList<>();
+            try {
+                for (Entry entry : entries(baseChannel)) {
+                    baseEntries.put(entry.name, entry);
+                }
+                targetEntries = entries(targetChannel);
+            } catch (IOException e) {
+                // Not a zip (or not one we can read): no entries to share.
+                baseEntries.clear();
+                targetEntries.clear();
+            }
+            targetEntries.sort(Comparator.comparingLong(e -> e.localOffset));
+            long position = 0;
+            for (Entry entry : targetEntries) {
+                Entry old = baseEntries.get(entry.name);
+                if (old == null || old.crc != entry.crc || old.compressedSize != entry.compressedSize
+                        || old.method != entry.method || entry.localOffset < position) {
+                    continue;
+                }
+                long dataOffset = dataOffset(targetChannel, entry);
+                long baseDataOffset = dataOffset(baseChannel, old);
+                if (!sameBytes(baseChannel, baseDataOffset, targetChannel, dataOffset, entry.compressedSize)) {
+                    continue;
+                }
+                writer.data(position, dataOffset);
+                writer.copy(baseDataOffset, entry.compressedSize);
+                position = dataOffset + entry.compressedSize;
+            }
+            writer.data(position, targetChannel.size());
+            writer.end();
+            deflater.finish();
+        }
+    }
+
+    // Emits operations, merging copies of adjacent base ranges.
+    private static final class Writer {
+        private final DataOutputStream out;
+        private final FileChannel target;
+        private long copyOffset = -1;
+        private long copyLength;
+
+        Writer(DataOutputStream out, FileChannel target) {
+            this.out = out;
+            this.target = target;
+        }
+
+        void copy(long offset, long length) throws IOException {
+            if (copyOffset >= 0 && copyOffset + copyLength == offset) {
+                copyLength += length;
+                return;
+            }
+            flushCopy();
+            copyOffset = offset;
+            copyLength = length;
+        }
+
+        // The target bytes [from, to) as literal data.
+        void data(long from, long to) throws IOException {
+            if (from >= to) {
+                return;
+            }
+            flushCopy();
+            byte[] buffer = new byte[(int) Math.min(MAX_DATA_OP, to - from)];
+            for (long position = from; position < to; ) {
+                int length = (int) Math.min(buffer.length, to - position);
+                ByteBuffer view = ByteBuffer.wrap(buffer, 0, length);
+                while (view.hasRemaining()) {
+                    if (target.read(view, position + view.position()) < 0) {
+                        throw new EOFException("Truncated target");
+                    }
+                }
+                out.writeByte(OP_DATA);
+                out.writeInt(length);
+                out.write(buffer, 0, length);
+                position += length;
+            }
+        }
+
+        void end() throws IOException {
+            flushCopy();
+            out.writeByte(OP_END);
+            out.flush();
+        }
+
+        private void flushCopy() throws IOException {
+            if (copyOffset >= 0) {
+                out.writeByte(OP_COPY);
+                out.writeLong(copyOffset);
+                out.writeLong(copyLength);
+                copyOffset = -1;
+            }
+        }
+    }
+
+    // ----- zip structure -----
+
+    private static final class Entry {
+        final String name;
+        final long localOffset;
+        final long compressedSize;
+        final long crc;
+        final int method;
+
+        Entry(String name, long localOffset, long compressedSize, long crc, int method) {
+            this.name = name;
+            this.localOffset = localOffset;
+            this.compressedSize = compressedSize;
+            this.crc = crc;
+            this.method = method;
+        }
+    }
+
+    private static List<Entry> entries(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        int tailSize = (int) Math.min(fileSize, 22 + 65535);
+        ByteBuffer tail = read(channel, fileSize - tailSize, tailSize);
+        int eocd = -1;
+        for (int i = tailSize - 22; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new IOException("Not a zip file");
+        }
+        long cenSize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long cenOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (cenSize == 0xFFFFFFFFL || cenOffset == 0xFFFFFFFFL || cenOffset + cenSize > fileSize) {
+            throw new IOException("Unsupported zip layout (zip64)");
+        }
+        ByteBuffer cen = read(channel, cenOffset, (int) cenSize);
+        List<Entry> entries = new ArrayList<>();
+        int pos = 0;
+        while (pos + 46 <= cen.limit() && cen.getInt(pos) == CEN_SIGNATURE) {
+            int method = cen.getShort(pos + 10) & 0xFFFF;
+            long crc = cen.getInt(pos + 16) & 0xFFFFFFFFL;
+            long compressed = cen.getInt(pos + 20) & 0xFFFFFFFFL;
+            int nameLength = cen.getShort(pos + 28) & 0xFFFF;
+            int extraLength = cen.getShort(pos + 30) & 0xFFFF;
+            int commentLength = cen.getShort(pos + 32) & 0xFFFF;
+            long localOffset = cen.getInt(pos + 42) & 0xFFFFFFFFL;
+            byte[] nameBytes = new byte[nameLength];
+            cen.position(pos + 46);
+            cen.get(nameBytes);
+            entries.add(new Entry(new String(nameBytes, StandardCharsets.UTF_8), localOffset, compressed, crc, method));
+            pos += 46 + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private static long dataOffset(FileChannel channel, Entry entry) throws IOException {
+        ByteBuffer local = read(channel, entry.localOffset, 30);
+        if (local.getInt(0) != LOC_SIGNATURE) {
+            throw new IOException("Bad local header for " + entry.name);
+        }
+        return entry.localOffset + 30 + (local.getShort(26) & 0xFFFF) + (local.getShort(28) & 0xFFFF);
+    }
+
+    private static boolean sameBytes(FileChannel a, long aOffset, FileChannel b, long bOffset, long length)
+            throws IOException {
+        if (aOffset + length > a.size() || bOffset + length > b.size()) {
+            return false;
+        }
+        for (long done = 0; done < length; ) {
+            int n = (int) Math.min(BUFFER_SIZE, length - done);
+            if (!read(a, aOffset + done, n).equals(read(b, bOffset + done, n))) {
+                return false;
+            }
+            done += n;
+        }
+        return true;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated zip file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static byte[] hexBytes(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    // Publish a patch from base to target under a patch source directory.
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: java DeltaPatches <base jar> <target jar> <patch directory>");
+            System.exit(2);
+        }
+        File base = new File(args[0]);
+        File target = new File(args[1]);
+        File patch = new File(new File(args[2], ArtifactDownloader.sha1(base)), ArtifactDownloader.sha1(target) + ".patch");
+        if (!patch.getParentFile().isDirectory() && !patch.getParentFile().mkdirs()) {
+            throw new IOException("Cannot create " + patch.getParentFile());
+        }
+        create(base, target, patch);
+        System.out.printf("%s: %d bytes (%.1f%% of %d)%n", patch, patch.length(),
+                100.0 * patch.length() / Math.max(1, target.length()), target.length());
+    }
+}
@@ -0,0 +1,193 @@
+import javax.swing.AbstractButton;
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Finds blocking work on the Swing event thread.
+//
+// The watchdog replaces the system event queue and stamps the time whenever an event
+// starts or finishes dispatching, including events dispatched by the nested loops of
+// modal dialogs, which keep the window responsive. A daemon thread checks that stamp a
+// few times per threshold; once the event thread has gone longer than the threshold
+// without progress, the event is reported as a stall and the thread's stack is sampled
+// until it moves on. Each stall goes to edt-stalls.log (rolled to edt-stalls.1.log)
+// with the event, its duration and its most frequent stacks, to stderr as one line and
+// to Metrics as launcher_edt_stall_seconds.
+class EdtWatchdog extends EventQueue {
+    private static final long MAX_REPORT_BYTES = 1024 * 1024;
+    private static final int MAX_SAMPLES = 200;
+    private static final int MAX_FRAMES = 30;
+    private static final int STACKS_SHOWN = 3;
+
+    // A stall in progress. end is set by the event thread when it makes progress.
+    private static final class Stall {
+        final long start;
+        final String event;
+        final List<List<StackTraceElement>> samples = new ArrayList<>();
+        volatile long end;
+
+        Stall(long start, String event) {
+            this.start = start;
+            this.event = event;
+        }
+    }
+
+    private final long thresholdNanos;
+    private final File report;
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "edt-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+    // Written by the event thread only.
+    private volatile Thread eventThread;
+    private volatile AWTEvent current;
+    private volatile int depth;
+    private volatile long progress = System.nanoTime();
+    private volatile Stall stall;
+
+    private EdtWatchdog(long thresholdMillis, File report) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.report = report;
+    }
+
+    // Put a watchdog in front of the system event queue. Events that keep the event
+    // thread busy for at least thresholdMillis are reported into report.
+    static void install(long thresholdMillis, File report) {
+        EdtWatchdog watchdog = new EdtWatchdog(thresholdMillis, report);
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(watchdog);
+        long period = Math.max(10, thresholdMillis / 4);
+        watchdog.sampler.scheduleAtFixedRate(watchdog::check, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        AWTEvent outer = current;
+        eventThread = Thread.currentThread();
+        progressed();
+        current = event;
+        depth++;
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            depth--;
+            current = outer;
+            progressed();
+        }
+    }
+
+    private void progressed() {
+        long now = System.nanoTime();
+        Stall active = stall;
+        if (active != null && active.end == 0) {
+            active.end = now;
+        }
+        progress = now;
+    }
+
+    // ----- sampling thread -----
+
+    private void check() {
+        Stall active = stall;
+        if (active == null) {
+            long since = progress;
+            AWTEvent event = current;
+            Thread thread = eventThread;
+            if (depth == 0 || event == null || thread == null || System.nanoTime() - since < thresholdNanos) {
+                return;
+            }
+            active = new Stall(since, describe(event));
+            stall = active;
+            if (progress != since) {
+                // The event finished while the stall was being set up.
+                active.end = progress;
+                return;
+            }
+            sample(active, thread);
+            return;
+        }
+        if (active.end == 0) {
+            sample(active, eventThread);
+            return;
+        }
+        stall = null;
+        reportStall(active);
+    }
+
+    private static void sample(Stall active, Thread thread) {
+        if (active.samples.size() >= MAX_SAMPLES || thread == null) {
+            return;
+        }
+        StackTraceElement[] frames = thread.getStackTrace();
+        // Only the frames of the event handler itself, above the dispatch loop.
+        List<StackTraceElement> handler = new ArrayList<>();
+        for (StackTraceElement frame : frames) {
+            if (frame.getClassName().equals(EdtWatchdog.class.getName()) || handler.size() == MAX_FRAMES) {
+                break;
+            }
+            handler.add(frame);
+        }
+        active.samples.add(handler);
+    }
+
+    private void reportStall(Stall active) {
+        long nanos = active.end - active.start;
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        Metrics.record("launcher_edt_stall_seconds", nanos);
+        Metrics.counter("launcher_edt_stalls_total").increment();
+        System.err.println("UI stall of " + millis + " ms in " + active.event);
+
+        Map<List<StackTraceElement>, Integer> counts = new HashMap<>();
+        for (List<StackTraceElement> sample : active.samples) {
+            counts.merge(sample, 1, Integer::sum);
+        }
+        List<Map.Entry<List<StackTraceElement>, Integer>> stacks = new ArrayList<>(counts.entrySet());
+        stacks.sort((a, b) -> b.getValue() - a.getValue());
+        StringBuilder sb = new StringBuilder();
+        sb.append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.ROOT).format(new Date()))
+                .append(" UI stall ").append(millis).append(" ms (").append(active.samples.size())
+                .append(" samples) in ").append(active.event).append('\n');
+        for (int i = 0; i < Math.min(STACKS_SHOWN, stacks.size()); i++) {
+            sb.append("  ").append(stacks.get(i).getValue()).append('/').append(active.samples.size())
+                    .append(" samples:\n");
+            for (StackTraceElement frame : stacks.get(i).getKey()) {
+                sb.append("    at ").append(frame).append('\n');
+            }
+        }
+        sb.append('\n');
+        try {
+            if (report.length() > MAX_REPORT_BYTES) {
+                String name = report.getName();
+                int dot = name.lastIndexOf('.');
+                File rolled = new File(report.getParentFile(), dot < 0 ? name + ".1"
+                        : name.substring(0, dot) + ".1" + name.substring(dot));
+                java.nio.file.Files.move(report.toPath(), rolled.toPath(),
+                        java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(report, true), StandardCharsets.UTF_8)) {
+                out.write(sb.toString());
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write " + report + ": " + e.getMessage());
+        }
+    }
+
+    // The event, and for buttons their text, which is what a user would have clicked.
+    private static String describe(AWTEvent event) {
+        String params = event.paramString();
+        if (params.length() > 160) {
+            params = params.substring(0, 160) + "...";
+        }
+        Object source = event.getSource();
+        String target = source instanceof AbstractButton ? "button \"" + ((AbstractButton) source).getText() + "\""
+                : source != null ? source.getClass().getName() : "?";
+        return event.getClass().getSimpleName() + "[" + params + "] on " + target;
+    }
+}
@@ -0,0 +1,91 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Everything needed to start one game: the command line, the memory plan it must be
+// admitted with, and notes for the user. Shared by the window and the headless mode;
+// the caller decides what to do when the plan is not admitted.
+class GameLaunch {
+    final String version;
+    final String modLoader;
+    final JavaRuntimes.Runtime runtime;
+    final JvmTuner.Plan plan;
+    final List<String> command;
+    final List<String> notes;
+
+    private GameLaunch(String version, String modLoader, JavaRuntimes.Runtime runtime, JvmTuner.Plan plan,
+                       List<String> command, List<String> notes) {
+        this.version = version;
+        this.modLoader = modLoader;
+        this.runtime = runtime;
+        this.plan = plan;
+        this.command = command;
+        this.notes = notes;
+    }
+
+    // Prepare natives and assets and build the command line for an installed profile,
+    // run in the instance's game directory within its budget. javaPath may be empty to
+    // pick an installed runtime; mods are the instance's mod files. A memory budget on
+    // the instance takes precedence over memoryMb.
+    static GameLaunch prepare(LoaderInstaller installer, JavaRuntimes runtimes, JvmTuner tuner, CdsArchives cds,
+                              Instances instances, Instances.Instance instance, String version, String modLoader,
+                              int memoryMb, String javaPath, String username, List<ModIndex.ModFile> mods,
+                              File assetsDir) throws IOException {
+        try (Metrics.Span span = Metrics.span("launcher_launch_prepare_seconds")) {
+            span.detail(instance.name + " " + LoaderInstaller.profileId(version, modLoader));
+            File versionDir = installer.profileDir(version, modLoader);
+            List<String> notes = new ArrayList<>();
+            List<String> command = new ArrayList<>();
+            LaunchProfile profile = installer.loadProfile(version, modLoader);
+            File nativesDir = installer.prepareNatives(version, modLoader);
+            installer.prepareAssets(version, modLoader);
+            JavaRuntimes.Runtime runtime = runtimes.select(profile.javaMajorVersion(), javaPath);
+            int javaMajor = runtime != null ? runtime.major : profile.javaMajorVersion();
+            if (instance.budget.memoryMb > 0) {
+                memoryMb = instance.budget.memoryMb;
+            }
+            JvmTuner.Plan plan = tuner.plan(memoryMb, javaMajor);
+            if (plan.heapMb < memoryMb) {
+                notes.add("Heap limited to " + plan.heapMb + " MB by available memory");
+            }
+            if (runtime != null) {
+                if (runtime.major < profile.javaMajorVersion()) {
+                    notes.add("Warning: Minecraft " + version + " needs Java " + profile.javaMajorVersion()
+                            + " but " + runtime.version + " was chosen");
+                }
+                notes.add("Using " + runtime);
+                command.add(runtime.binary.getPath());
+            } else {
+                notes.add("No Java " + profile.javaMajorVersion() + " found; trying java from PATH");
+                command.add("java");
+            }
+            command.addAll(plan.jvmArgs);
+            // Instances keep their own archives, as their mod sets usually differ.
+            List<String> archive = cds.options(instance.cacheId(LoaderInstaller.profileId(version, modLoader)),
+                    runtime, profile.classpath(versionDir), mods);
+            if (cds.isRecording(archive)) {
+                notes.add("Recording a class data archive; later launches of this setup start faster.");
+            }
+            command.addAll(archive);
+            command.addAll(profile.commandLine(instance.gameDir, versionDir, assetsDir, nativesDir,
+                    offlineAuth(username)));
+            command = instances.confine(command, instance.budget, plan.reservedMb, notes);
+            return new GameLaunch(version, modLoader, runtime, plan, command, notes);
+        }
+    }
+
+    // Arguments for an offline session of the given player.
+    static Map<String, String> offlineAuth(String username) {
+        Map<String, String> auth = new HashMap<>();
+        auth.put("auth_player_name", username);
+        auth.put("auth_uuid", UUID.nameUUIDFromBytes(("OfflinePlayer:" + username)
+                .getBytes(StandardCharsets.UTF_8)).toString().replace("-", ""));
+        auth.put("auth_access_token", "0");
+        return auth;
+    }
+}
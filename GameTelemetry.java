@@ -0,0 +1,367 @@
+import java.io.*;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+// Samples the JVMs of running games: heap, GC pauses, threads, CPU and loaded classes.
+//
+// The launcher attaches to each game with the Attach API and starts its local management
+// agent, which only listens for connections from the same user on this machine; no port
+// or option has to be added to the game's command line. One daemon thread samples every
+// game at a fixed, low rate. The last samples stay in memory for the telemetry tab and
+// every sample is appended to telemetry/<instance>.csv, which rolls over to
+// <instance>.1.csv when it grows too large, so heap sizes can be chosen from what games
+// actually used.
+class GameTelemetry {
+    static final long INTERVAL_MILLIS = 2000;
+    // Ten minutes of samples in memory.
+    private static final int CAPACITY = 300;
+    private static final long MAX_HISTORY_BYTES = 4L * 1024 * 1024;
+    // A game that cannot be attached to yet is tried again this many intervals later.
+    private static final int ATTACH_RETRY_INTERVALS = 3;
+    private static final int ATTACH_ATTEMPTS = 20;
+    private static final String CSV_HEADER = "time,heapUsedMb,heapCommittedMb,heapMaxMb,gcPauseMillis,gcCount,"
+            + "threads,cpuPercent,classesLoaded";
+
+    static class Sample {
+        final long time;
+        final long heapUsedMb;
+        final long heapCommittedMb;
+        final long heapMaxMb;
+        // Stop-the-world GC time and collections since the previous sample.
+        final long gcPauseMillis;
+        final long gcCount;
+        final int threads;
+        // Of the whole machine: 100 is every core busy.
+        final double cpuPercent;
+        final long classesLoaded;
+
+        Sample(long time, long heapUsedMb, long heapCommittedMb, long heapMaxMb, long gcPauseMillis, long gcCount,
+               int threads, double cpuPercent, long classesLoaded) {
+            this.time = time;
+            this.heapUsedMb = heapUsedMb;
+            this.heapCommittedMb = heapCommittedMb;
+            this.heapMaxMb = heapMaxMb;
+            this.gcPauseMillis = gcPauseMillis;
+            this.gcCount = gcCount;
+            this.threads = threads;
+            this.cpuPercent = cpuPercent;
+            this.classesLoaded = classesLoaded;
+        }
+
+        String toCsv() {
+            return time + "," + heapUsedMb + "," + heapCommittedMb + "," + heapMaxMb + "," + gcPauseMillis + ","
+                    + gcCount + "," + threads + "," + String.format(Locale.ROOT, "%.1f", cpuPercent) + ","
+                    + classesLoaded;
+        }
+    }
+
+    // One watched game. Its connection is used by the sampling thread only.
+    class Session {
+        final String instance;
+        final String name;
+        final Process process;
+        private final ArrayDeque<Sample> samples = new ArrayDeque<>();
+        private volatile String status = "Connecting...";
+        private long peakHeapUsedMb;
+        private long totalGcPauseMillis;
+        private int attachAttempts;
+        private int skipIntervals;
+        private JMXConnector connector;
+        private MemoryMXBean memory;
+        private ThreadMXBean threads;
+        private ClassLoadingMXBean classes;
+        private List<GarbageCollectorMXBean> pauses;
+        private MBeanServerConnection connection;
+        private long lastGcMillis = -1;
+        private long lastGcCount;
+        private long lastCpuNanos = -1;
+        private long lastSampleNanos;
+        private int cpus = 1;
+
+        Session(String instance, String name, Process process) {
+            this.instance = instance;
+            this.name = name;
+            this.process = process;
+        }
+
+        synchronized List<Sample> samples() {
+            return new ArrayList<>(samples);
+        }
+
+        String status() {
+            return status;
+        }
+
+        synchronized long peakHeapUsedMb() {
+            return peakHeapUsedMb;
+        }
+
+        // One line for the log when the game has exited.
+        synchronized String summary() {
+            Sample last = samples.peekLast();
+            if (last == null) {
+                return name + ": no telemetry";
+            }
+            return name + ": peak heap use " + peakHeapUsedMb + " MB of " + last.heapMaxMb + " MB, "
+                    + totalGcPauseMillis + " ms in GC pauses";
+        }
+
+        private void sample() {
+            if (connection == null && !connect()) {
+                return;
+            }
+            try {
+                long now = System.nanoTime();
+                MemoryUsage heap = memory.getHeapMemoryUsage();
+                long gcMillis = 0;
+                long gcCount = 0;
+                for (GarbageCollectorMXBean gc : pauses) {
+                    gcMillis += Math.max(0, gc.getCollectionTime());
+                    gcCount += Math.max(0, gc.getCollectionCount());
+                }
+                long cpuNanos = ((Number) connection.getAttribute(
+                        new ObjectName(ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME), "ProcessCpuTime")).longValue();
+                double cpu = lastCpuNanos < 0 ? 0
+                        : 100.0 * (cpuNanos - lastCpuNanos) / Math.max(1, now - lastSampleNanos) / cpus;
+                Sample sample = new Sample(System.currentTimeMillis(), heap.getUsed() >> 20, heap.getCommitted() >> 20,
+                        heap.getMax() >> 20, lastGcMillis < 0 ? 0 : gcMillis - lastGcMillis,
+                        lastGcMillis < 0 ? 0 : gcCount - lastGcCount, threads.getThreadCount(),
+                        Math.max(0, Math.min(100, cpu)), classes.getLoadedClassCount());
+                lastGcMillis = gcMillis;
+                lastGcCount = gcCount;
+                lastCpuNanos = cpuNanos;
+                lastSampleNanos = now;
+                synchronized (this) {
+                    if (samples.size() == CAPACITY) {
+                        samples.removeFirst();
+                    }
+                    samples.addLast(sample);
+                    peakHeapUsedMb = Math.max(peakHeapUsedMb, sample.heapUsedMb);
+                    totalGcPauseMillis += sample.gcPauseMillis;
+                }
+                status = "Sampling every " + INTERVAL_MILLIS / 1000 + " s";
+                append(instance, sample);
+            } catch (Exception e) {
+                // The game is exiting or the connection broke; reconnect if it is still running.
+                disconnect();
+                status = "Connection lost: " + e.getMessage();
+            }
+        }
+
+        private boolean connect() {
+            if (skipIntervals > 0) {
+                skipIntervals--;
+                return false;
+            }
+            if (attachAttempts >= ATTACH_ATTEMPTS) {
+                return false;
+            }
+            attachAttempts++;
+            try {
+                String address = null;
+                for (long pid : candidatePids()) {
+                    address = managementAddress(pid);
+                    if (address != null) {
+                        break;
+                    }
+                }
+                if (address == null) {
+                    throw new IOException("the game's JVM is not ready");
+                }
+                connector = JMXConnectorFactory.connect(new JMXServiceURL(address));
+                connection = connector.getMBeanServerConnection();
+                memory = ManagementFactory.newPlatformMXBeanProxy(connection,
+                        ManagementFactory.MEMORY_MXBEAN_NAME, MemoryMXBean.class);
+                threads = ManagementFactory.newPlatformMXBeanProxy(connection,
+                        ManagementFactory.THREAD_MXBEAN_NAME, ThreadMXBean.class);
+                classes = ManagementFactory.newPlatformMXBeanProxy(connection,
+                        ManagementFactory.CLASS_LOADING_MXBEAN_NAME, ClassLoadingMXBean.class);
+                cpus = ((Number) connection.getAttribute(new ObjectName(ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME),
+                        "AvailableProcessors")).intValue();
+                pauses = new ArrayList<>();
+                for (ObjectName gc : connection.queryNames(
+                        new ObjectName(ManagementFactory.GARBAGE_COLLECTOR_MXBEAN_DOMAIN_TYPE + ",*"), null)) {
+                    // ZGC and newer G1 also report concurrent cycles, which do not stop the game.
+                    String collector = gc.getKeyProperty("name");
+                    if (!collector.contains("Cycles") && !collector.contains("Concurrent")) {
+                        pauses.add(ManagementFactory.newPlatformMXBeanProxy(connection, gc.getCanonicalName(),
+                                GarbageCollectorMXBean.class));
+                    }
+                }
+                attachAttempts = 0;
+                return true;
+            } catch (Exception | LinkageError e) {
+                disconnect();
+                skipIntervals = ATTACH_RETRY_INTERVALS;
+                status = attachAttempts >= ATTACH_ATTEMPTS ? "Cannot attach: " + e.getMessage()
+                        : "Waiting for the game (" + e.getMessage() + ")";
+                return false;
+            }
+        }
+
+        // The game itself, or the JVM below wrappers such as systemd-run.
+        private List<Long> candidatePids() {
+            List<Long> pids = new ArrayList<>();
+            pids.add(process.pid());
+            process.descendants().filter(p -> p.info().command().map(c -> c.endsWith("java") || c.endsWith("java.exe"))
+                    .orElse(false)).forEach(p -> pids.add(p.pid()));
+            return pids;
+        }
+
+        private void disconnect() {
+            if (connector != null) {
+                try {
+                    connector.close();
+                } catch (IOException e) {
+                    // already gone
+                }
+            }
+            connector = null;
+            connection = null;
+            lastGcMillis = -1;
+            lastCpuNanos = -1;
+        }
+    }
+
+    private final File historyDir;
+    private final List<Session> sessions = new CopyOnWriteArrayList<>();
+    private final Map<String, Writer> histories = new HashMap<>();
+    private ScheduledExecutorService sampler;
+
+    GameTelemetry(File historyDir) {
+        this.historyDir = historyDir;
+    }
+
+    // Start sampling a game that was just launched. Returns null if it has already
+    // exited: its stop() may have run first, and nothing would remove the session then.
+    synchronized Session watch(String instance, String name, Process process) {
+        if (!process.isAlive()) {
+            return null;
+        }
+        Session session = new Session(instance, name, process);
+        sessions.add(session);
+        if (sampler == null) {
+            sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "telemetry");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            });
+            sampler.scheduleWithFixedDelay(this::sampleAll, INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return session;
+    }
+
+    // Stop sampling a game; returns its session, or null if it was not watched.
+    synchronized Session stop(Process process) {
+        for (Session session : sessions) {
+            if (session.process == process) {
+                sessions.remove(session);
+                // Connections are only touched by the sampling thread.
+                sampler.execute(() -> {
+                    session.disconnect();
+                    closeHistoryIfUnused(session.instance);
+                });
+                return session;
+            }
+        }
+        return null;
+    }
+
+    // Games being watched, oldest first.
+    List<Session> sessions() {
+        return new ArrayList<>(sessions);
+    }
+
+    private void sampleAll() {
+        for (Session session : sessions) {
+            if (session.process.isAlive()) {
+                session.sample();
+            }
+        }
+    }
+
+    // ----- attach -----
+
+    // JMX address of the local management agent of a JVM, starting the agent if needed,
+    // or null if there is no JVM with that pid.
+    private static String managementAddress(long pid) throws IOException {
+        com.sun.tools.attach.VirtualMachine vm;
+        try {
+            vm = com.sun.tools.attach.VirtualMachine.attach(String.valueOf(pid));
+        } catch (com.sun.tools.attach.AttachNotSupportedException e) {
+            return null;
+        }
+        try {
+            return vm.startLocalManagementAgent();
+        } finally {
+            vm.detach();
+        }
+    }
+
+    // ----- history -----
+
+    private void append(String instance, Sample sample) {
+        try {
+            synchronized (histories) {
+                File file = new File(historyDir, instance + ".csv");
+                Writer out = histories.get(instance);
+                if (out != null && file.length() > MAX_HISTORY_BYTES) {
+                    out.close();
+                    histories.remove(instance);
+                    out = null;
+                    java.nio.file.Files.move(file.toPath(), new File(historyDir, instance + ".1.csv").toPath(),
+                            java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                }
+                if (out == null) {
+                    if (!historyDir.isDirectory() && !historyDir.mkdirs()) {
+                        return;
+                    }
+                    boolean fresh = file.length() == 0;
+                    out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true),
+                            StandardCharsets.UTF_8));
+                    if (fresh) {
+                        out.write(CSV_HEADER);
+                        out.write('\n');
+                    }
+                    histories.put(instance, out);
+                }
+                out.write(sample.toCsv());
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException e) {
+            // History is best effort; the live view keeps working.
+        }
+    }
+
+    private void closeHistoryIfUnused(String instance) {
+        for (Session session : sessions) {
+            if (session.instance.equals(instance)) {
+                return;
+            }
+        }
+        synchronized (histories) {
+            Writer out = histories.remove(instance);
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // nothing left to write
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Game instances: named game directories, each with its own saves, options and mods, and
+// the resources one running copy of the game may use.
+//
+// An instance lives in instances/<name>/ with its settings in instance.json; the
+// "default" instance is the launcher directory itself, as before instances existed.
+// Budgets are applied when the game starts: the heap through the JVM plan, and on Linux
+// CPU affinity (taskset), scheduling and IO priority (nice, ionice) and cgroup limits
+// (systemd-run scopes) by wrapping the command with whichever of those tools exist.
+// Other systems get the heap cap only.
+class Instances {
+    static final String DEFAULT = "default";
+    private static final String SETTINGS = "instance.json";
+    private static final boolean LINUX = System.getProperty("os.name", "").toLowerCase(Locale.ROOT).contains("linux");
+
+    // What one running instance may use. Zero or negative values and a null CPU list
+    // mean "no limit".
+    static class Budget {
+        final int memoryMb;
+        // CPU list for affinity, as taskset takes it: "0-3", "4,6".
+        final String cpus;
+        // cgroup CPU quota in percent of one core.
+        final int cpuQuota;
+        // Kill the game instead of letting it grow past its memory reservation.
+        final boolean hardMemoryLimit;
+        // 1-19: lower scheduling priority.
+        final int nice;
+        // 0-7 in the best-effort IO class, 7 lowest.
+        final int ioPriority;
+
+        Budget(int memoryMb, String cpus, int cpuQuota, boolean hardMemoryLimit, int nice, int ioPriority) {
+            this.memoryMb = memoryMb;
+            this.cpus = cpus != null && !cpus.trim().isEmpty() ? cpus.trim() : null;
+            this.cpuQuota = cpuQuota;
+            this.hardMemoryLimit = hardMemoryLimit;
+            this.nice = nice;
+            this.ioPriority = ioPriority;
+        }
+
+        static final Budget NONE = new Budget(0, null, 0, false, 0, -1);
+
+        // Number of CPUs in the affinity list, or 0 if there is none.
+        int cpuCount() {
+            if (cpus == null) {
+                return 0;
+            }
+            int count = 0;
+            for (String part : cpus.split(",")) {
+                String[] range = part.trim().split("-");
+                try {
+                    count += range.length == 2 ? Integer.parseInt(range[1].trim()) - Integer.parseInt(range[0].trim()) + 1 : 1;
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+            return count;
+        }
+    }
+
+    static class Instance {
+        final String name;
+        final File gameDir;
+        final Budget budget;
+
+        Instance(String name, File gameDir, Budget budget) {
+            this.name = name;
+            this.gameDir = gameDir;
+            this.budget = budget;
+        }
+
+        // Name under which per-instance caches such as CDS archives are kept for a profile.
+        String cacheId(String profileId) {
+            return DEFAULT.equals(name) ? profileId : name + "." + profileId;
+        }
+    }
+
+    private final File root;
+    private final File defaultGameDir;
+    private final Map<String, ModIndex> modIndexes = new HashMap<>();
+    private final Map<String, Boolean> tools = new ConcurrentHashMap<>();
+
+    Instances(File root, File defaultGameDir) {
+        this.root = root;
+        this.defaultGameDir = defaultGameDir;
+    }
+
+    static boolean isValidName(String name) {
+        return name != null && name.matches("[A-Za-z0-9._-]+");
+    }
+
+    File gameDir(String name) {
+        return DEFAULT.equals(name) ? defaultGameDir : new File(root, name);
+    }
+
+    // The default instance first, then the others by name.
+    List<String> names() {
+        List<String> names = new ArrayList<>();
+        File[] dirs = root.listFiles(f -> f.isDirectory() && isValidName(f.getName()));
+        if (dirs != null) {
+            for (File dir : dirs) {
+                names.add(dir.getName());
+            }
+        }
+        Collections.sort(names);
+        names.remove(DEFAULT);
+        names.add(0, DEFAULT);
+        return names;
+    }
+
+    // An instance and its budget; one that has no settings yet has no limits.
+    Instance load(String name) throws IOException {
+        if (!isValidName(name)) {
+            throw new IllegalArgumentException("Invalid instance name: " + name);
+        }
+        File settings = new File(gameDir(name), SETTINGS);
+        Budget budget = Budget.NONE;
+        if (settings.isFile()) {
+            Object json = Json.parse(settings);
+            budget = new Budget((int) Json.number(json, "memoryMb", 0), Json.string(json, "cpus"),
+                    (int) Json.number(json, "cpuQuota", 0), Json.bool(json, "hardMemoryLimit", false),
+                    (int) Json.number(json, "nice", 0), (int) Json.number(json, "ioPriority", -1));
+        }
+        return new Instance(name, gameDir(name), budget);
+    }
+
+    // Create the instance's directory and store its budget.
+    Instance save(String name, Budget budget) throws IOException {
+        File dir = gameDir(name);
+        if (!isValidName(name) || !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create instance " + name);
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("memoryMb", budget.memoryMb);
+        json.put("cpus", budget.cpus);
+        json.put("cpuQuota", budget.cpuQuota);
+        json.put("hardMemoryLimit", budget.hardMemoryLimit);
+        json.put("nice", budget.nice);
+        json.put("ioPriority", budget.ioPriority);
+        Json.write(new File(dir, SETTINGS), json);
+        return new Instance(name, dir, budget);
+    }
+
+    // The instance's mods/ folder, indexed.
+    synchronized ModIndex mods(String name) {
+        return modIndexes.computeIfAbsent(name, n -> new ModIndex(new File(gameDir(n), "mods"),
+                new File(gameDir(n), "mods.idx")));
+    }
+
+    // The command with the budget applied: JVM options right after the java binary and
+    // OS wrappers in front of it. notes receives what could not be applied.
+    List<String> confine(List<String> command, Budget budget, long reservedMb, List<String> notes) {
+        List<String> java = new ArrayList<>(command);
+        int cpus = budget.cpuCount();
+        if (cpus > 0) {
+            // Size GC and compiler threads to the CPUs the game may actually use.
+            java.add(1, "-XX:ActiveProcessorCount=" + cpus);
+        }
+        if (!LINUX) {
+            if (budget.cpus != null || budget.cpuQuota > 0 || budget.nice > 0 || budget.ioPriority >= 0) {
+                notes.add("CPU and IO limits are only applied on Linux");
+            }
+            return java;
+        }
+        List<String> wrapped = new ArrayList<>();
+        if (budget.cpuQuota > 0 || budget.hardMemoryLimit) {
+            // User scopes need a user session manager, which is not there over plain ssh or in containers.
+            if (hasTool("systemd-run") && System.getenv("XDG_RUNTIME_DIR") != null) {
+                wrapped.addAll(Arrays.asList("systemd-run", "--user", "--scope", "--quiet", "--collect"));
+                if (budget.cpuQuota > 0) {
+                    wrapped.add("-p");
+                    wrapped.add("CPUQuota=" + budget.cpuQuota + "%");
+                }
+                if (budget.hardMemoryLimit) {
+                    wrapped.add("-p");
+                    wrapped.add("MemoryMax=" + reservedMb + "M");
+                }
+                wrapped.add("--");
+            } else {
+                notes.add("No systemd user session; CPU quota and memory limit not applied");
+            }
+        }
+        if (budget.cpus != null) {
+            if (hasTool("taskset")) {
+                wrapped.addAll(Arrays.asList("taskset", "-c", budget.cpus));
+            } else {
+                notes.add("taskset not found; CPU affinity not applied");
+            }
+        }
+        if (budget.nice > 0) {
+            if (hasTool("nice")) {
+                wrapped.addAll(Arrays.asList("nice", "-n", String.valueOf(Math.min(19, budget.nice))));
+            } else {
+                notes.add("nice not found; priority not lowered");
+            }
+        }
+        if (budget.ioPriority >= 0) {
+            if (hasTool("ionice")) {
+                wrapped.addAll(Arrays.asList("ionice", "-c", "2", "-n", String.valueOf(Math.min(7, budget.ioPriority))));
+            } else {
+                notes.add("ionice not found; IO priority not changed");
+            }
+        }
+        wrapped.addAll(java);
+        return wrapped;
+    }
+
+    private boolean hasTool(String tool) {
+        return tools.computeIfAbsent(tool, t -> {
+            String path = System.getenv("PATH");
+            if (path != null) {
+                for (String dir : path.split(File.pathSeparator)) {
+                    if (new File(dir, t).canExecute()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        });
+    }
+
+    // Spaces out cold starts so several games do not load classes, JIT-compile and read
+    // assets at the same moment. At most maxStarting games are starting at once, with at
+    // least gapMillis between two starts. A game stops counting as starting when it
+    // exits, when its CPU use falls to about one core after minWarmupMillis, or after
+    // maxWarmupMillis.
+    static class StartScheduler {
+        private static final long POLL_MILLIS = 500;
+        private static final long MIN_WARMUP_MILLIS = 5000;
+
+        interface Start {
+            Process start() throws IOException;
+        }
+
+        private final int maxStarting;
+        private final long gapMillis;
+        private final long maxWarmupMillis;
+        private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "start-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+        private int starting;
+        private long lastStart;
+
+        StartScheduler(int maxStarting, long gapMillis, long maxWarmupMillis) {
+            this.maxStarting = Math.max(1, maxStarting);
+            this.gapMillis = gapMillis;
+            this.maxWarmupMillis = maxWarmupMillis;
+        }
+
+        // One concurrent cold start per four cores, two seconds apart, at most a minute each.
+        StartScheduler() {
+            this(Runtime.getRuntime().availableProcessors() / 4, 2000, 60000);
+        }
+
+        // Run start when it is this game's turn. Completes with the started process.
+        CompletableFuture<Process> submit(Start start) {
+            CompletableFuture<Process> result = new CompletableFuture<>();
+            synchronized (this) {
+                queue.add(() -> {
+                    try {
+                        Process process = start.start();
+                        result.complete(process);
+                        watch(process, System.currentTimeMillis(), -1);
+                    } catch (Throwable t) {
+                        result.completeExceptionally(t);
+                        finished();
+                    }
+                });
+            }
+            timer.execute(this::dispatch);
+            return result;
+        }
+
+        synchronized int waiting() {
+            return queue.size();
+        }
+
+        private void dispatch() {
+            Runnable next;
+            synchronized (this) {
+                if (queue.isEmpty() || starting >= maxStarting) {
+                    return;
+                }
+                long wait = lastStart + gapMillis - System.currentTimeMillis();
+                if (wait > 0) {
+                    timer.schedule(this::dispatch, wait, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                next = queue.poll();
+                starting++;
+                lastStart = System.currentTimeMillis();
+            }
+            next.run();
+            dispatch();
+        }
+
+        // Poll the process until it no longer counts as starting.
+        private void watch(Process process, long startedAt, long lastCpuNanos) {
+            long elapsed = System.currentTimeMillis() - startedAt;
+            long cpuNanos = process.info().totalCpuDuration().map(java.time.Duration::toNanos).orElse(-1L);
+            boolean settled = elapsed >= MIN_WARMUP_MILLIS && lastCpuNanos >= 0 && cpuNanos >= 0
+                    && cpuNanos - lastCpuNanos < TimeUnit.MILLISECONDS.toNanos(POLL_MILLIS) * 3 / 2;
+            if (!process.isAlive() || elapsed >= maxWarmupMillis || settled) {
+                finished();
+                return;
+            }
+            timer.schedule(() -> watch(process, startedAt, cpuNanos), POLL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        private void finished() {
+            synchronized (this) {
+                starting--;
+            }
+            timer.execute(this::dispatch);
+        }
+    }
+}
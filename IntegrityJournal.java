@@ -0,0 +1,272 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Remembers which installed files were verified, so checking an install before launch
+// only hashes what changed.
+//
+// For every verified file the journal keeps its size, mtime, file key (the inode on
+// Unix) and hash. A file whose metadata still matches its entry and whose expected hash
+// is unchanged is trusted without reading it; anything else is hashed, in parallel on
+// all cores, through a reused direct buffer per thread. Corruption that leaves the metadata alone is
+// caught by re-hashing the entries verified longest ago, a bounded number of bytes per
+// check, so every file is read again within a few launches without any one launch
+// paying for a full pass.
+class IntegrityJournal {
+    private static final int MAGIC = 0x494A524E; // "IJRN"
+    private static final int FORMAT = 1;
+    // Files are read rather than mapped: a mapping outlives the channel until it is
+    // garbage collected, and Windows cannot delete a mapped file, so discard() right
+    // after verify() would fail.
+    private static final int READ_BUFFER = 1024 * 1024;
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER));
+    // Trusted entries older than this are due for re-hashing.
+    private static final long RECHECK_AGE_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+    private static final class Entry {
+        final long size;
+        final long mtime;
+        final String fileKey;
+        final String sha1;
+        final long verifiedAt;
+
+        Entry(long size, long mtime, String fileKey, String sha1, long verifiedAt) {
+            this.size = size;
+            this.mtime = mtime;
+            this.fileKey = fileKey;
+            this.sha1 = sha1;
+            this.verifiedAt = verifiedAt;
+        }
+
+        boolean matches(BasicFileAttributes attrs) {
+            return attrs.size() == size && attrs.lastModifiedTime().toMillis() == mtime
+                    && fileKey.equals(String.valueOf(attrs.fileKey()));
+        }
+    }
+
+    // Outcome of verify(): how much was read, and the relative paths that are missing
+    // or do not match their hash.
+    static class Report {
+        final int checked;
+        final int hashed;
+        final long hashedBytes;
+        final List<String> bad;
+
+        Report(int checked, int hashed, long hashedBytes, List<String> bad) {
+            this.checked = checked;
+            this.hashed = hashed;
+            this.hashedBytes = hashedBytes;
+            this.bad = bad;
+        }
+
+        @Override
+        public String toString() {
+            return checked + " files checked, " + hashed + " hashed (" + hashedBytes / (1024 * 1024) + " MB), "
+                    + bad.size() + " bad";
+        }
+    }
+
+    private final File file;
+    // Absolute path -> entry.
+    private Map<String, Entry> entries;
+
+    IntegrityJournal(File file) {
+        this.file = file;
+    }
+
+    // Check the files under root against their expected hashes (relative path -> sha1).
+    // Up to recheckBytes of trusted but long-unverified files are hashed again; pass
+    // Long.MAX_VALUE to hash everything.
+    synchronized Report verify(File root, Map<String, String> expected, long recheckBytes) throws IOException {
+        try (Metrics.Span span = Metrics.span("launcher_verify_seconds",
+                "mode", recheckBytes == Long.MAX_VALUE ? "full" : "incremental")) {
+            Report report = check(root, expected, recheckBytes);
+            span.detail(report.toString()).bytes(report.hashedBytes);
+            Metrics.counter("launcher_verify_files_total").add(report.checked);
+            Metrics.counter("launcher_verify_hashed_bytes_total").add(report.hashedBytes);
+            Metrics.counter("launcher_verify_bad_files_total").add(report.bad.size());
+            return report;
+        }
+    }
+
+    private Report check(File root, Map<String, String> expected, long recheckBytes) throws IOException {
+        load();
+        long now = System.currentTimeMillis();
+        List<String> bad = new ArrayList<>();
+        List<String> toHash = new ArrayList<>();
+        List<String> due = new ArrayList<>();
+        Map<String, BasicFileAttributes> attributes = new HashMap<>();
+        for (Map.Entry<String, String> wanted : expected.entrySet()) {
+            Path path = new File(root, wanted.getKey()).toPath();
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (IOException e) {
+                bad.add(wanted.getKey());
+                entries.remove(path.toString());
+                continue;
+            }
+            attributes.put(wanted.getKey(), attrs);
+            Entry entry = entries.get(path.toString());
+            if (entry == null || !entry.matches(attrs) || !entry.sha1.equalsIgnoreCase(wanted.getValue())) {
+                toHash.add(wanted.getKey());
+            } else if (recheckBytes == Long.MAX_VALUE || now - entry.verifiedAt > RECHECK_AGE_MILLIS) {
+                due.add(wanted.getKey());
+            }
+        }
+        // Oldest verifications first, as far as the budget goes.
+        due.sort(Comparator.comparingLong(p -> entries.get(new File(root, p).toPath().toString()).verifiedAt));
+        long budget = recheckBytes;
+        for (String path : due) {
+            long size = attributes.get(path).size();
+            if (budget != Long.MAX_VALUE && size > budget) {
+                break;
+            }
+            toHash.add(path);
+            if (budget != Long.MAX_VALUE) {
+                budget -= size;
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(toHash.size(),
+                Runtime.getRuntime().availableProcessors())), r -> {
+            Thread t = new Thread(r, "verify");
+            t.setDaemon(true);
+            return t;
+        });
+        long hashedBytes = 0;
+        try {
+            List<Future<String>> hashes = new ArrayList<>();
+            for (String path : toHash) {
+                File target = new File(root, path);
+                hashes.add(pool.submit(() -> hash(target)));
+            }
+            for (int i = 0; i < toHash.size(); i++) {
+                String path = toHash.get(i);
+                String key = new File(root, path).toPath().toString();
+                BasicFileAttributes attrs = attributes.get(path);
+                String actual;
+                try {
+                    actual = hashes.get(i).get();
+                } catch (ExecutionException e) {
+                    actual = null;
+                }
+                hashedBytes += attrs.size();
+                if (actual != null && actual.equalsIgnoreCase(expected.get(path))) {
+                    entries.put(key, new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(),
+                            String.valueOf(attrs.fileKey()), actual, now));
+                } else {
+                    entries.remove(key);
+                    bad.add(path);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Verification interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+        save();
+        Collections.sort(bad);
+        return new Report(expected.size(), toHash.size(), hashedBytes, bad);
+    }
+
+    // Record files that were just written from verified downloads, so the first check
+    // does not hash them. They count as verified when they were last modified, which
+    // puts old objects first in line for re-hashing.
+    synchronized void record(File root, Map<String, String> hashes) throws IOException {
+        load();
+        for (Map.Entry<String, String> item : hashes.entrySet()) {
+            Path path = new File(root, item.getKey()).toPath();
+            Entry existing = entries.get(path.toString());
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                if (existing == null || !existing.matches(attrs) || !existing.sha1.equalsIgnoreCase(item.getValue())) {
+                    entries.put(path.toString(), new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(),
+                            String.valueOf(attrs.fileKey()), item.getValue().toLowerCase(Locale.ROOT),
+                            attrs.lastModifiedTime().toMillis()));
+                }
+            } catch (IOException e) {
+                entries.remove(path.toString());
+            }
+        }
+        save();
+    }
+
+    // SHA-1 of a file.
+    static String hash(File target) throws IOException {
+        MessageDigest digest = ArtifactDownloader.newDigest();
+        ByteBuffer buffer = BUFFERS.get();
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return ArtifactDownloader.hex(digest.digest());
+    }
+
+    // ----- journal file -----
+
+    private void load() {
+        if (entries != null) {
+            return;
+        }
+        entries = new HashMap<>();
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                return;
+            }
+            int count = in.readInt();
+            byte[] hash = new byte[20];
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long mtime = in.readLong();
+                String fileKey = in.readUTF();
+                in.readFully(hash);
+                long verifiedAt = in.readLong();
+                entries.put(path, new Entry(size, mtime, fileKey, ArtifactDownloader.hex(hash), verifiedAt));
+            }
+        } catch (IOException e) {
+            // A damaged journal only means files are hashed again.
+            entries.clear();
+        }
+    }
+
+    private void save() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        File tmp = new File(parent, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> item : entries.entrySet()) {
+                Entry entry = item.getValue();
+                out.writeUTF(item.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.mtime);
+                out.writeUTF(entry.fileKey);
+                for (int i = 0; i < 40; i += 2) {
+                    out.writeByte(Integer.parseInt(entry.sha1.substring(i, i + 2), 16));
+                }
+                out.writeLong(entry.verifiedAt);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
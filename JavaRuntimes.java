@@ -0,0 +1,318 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Finds installed Java runtimes and picks one for a game version.
+//
+// Candidates come from JAVA_HOME, PATH, the launcher's own runtime, SDKMAN and the usual
+// install roots, and are probed in parallel. A probe reads the runtime's "release" file
+// when there is one and only forks "java -XshowSettings:properties -version" otherwise.
+// Results are cached on disk keyed by the binary's path and mtime, so a runtime is
+// probed again only after it has been updated.
+class JavaRuntimes {
+    private static final long PROBE_TIMEOUT_SECONDS = 10;
+
+    static class Runtime {
+        final File binary;
+        final String version;
+        final int major;
+        final String vendor;
+        final String arch;
+
+        Runtime(File binary, String version, String vendor, String arch) {
+            this.binary = binary;
+            this.version = version;
+            this.major = majorOf(version);
+            this.vendor = vendor;
+            this.arch = arch;
+        }
+
+        @Override
+        public String toString() {
+            return "Java " + version + " (" + (vendor != null ? vendor + ", " : "") + arch + ") at " + binary;
+        }
+    }
+
+    private final File cacheFile;
+    private final Map<String, Object> cache = new HashMap<>();
+    private CompletableFuture<List<Runtime>> discovery;
+
+    JavaRuntimes(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    // Start discovery in the background; later calls return the same result.
+    synchronized CompletableFuture<List<Runtime>> discover() {
+        if (discovery == null) {
+            discovery = CompletableFuture.supplyAsync(this::scan, r -> {
+                Thread t = new Thread(r, "java-discovery");
+                t.setDaemon(true);
+                t.start();
+            });
+        }
+        return discovery;
+    }
+
+    // Best runtime for a game that needs the given Java major version: the same major
+    // if installed, otherwise the closest newer one. A custom path (a java binary or a
+    // Java home) always wins. Returns null if nothing usable was found. Waits for
+    // discovery and may run the custom binary, so keep it off the event thread.
+    Runtime select(int major, String customPath) {
+        List<Runtime> installed = discover().join();
+        if (customPath != null && !customPath.trim().isEmpty()) {
+            File binary = binaryOf(new File(customPath.trim()));
+            Runtime custom = binary != null ? probe(binary) : null;
+            if (custom != null) {
+                saveCache();
+                return custom;
+            }
+        }
+        Runtime best = null;
+        for (Runtime runtime : installed) {
+            if (runtime.major == major) {
+                return runtime;
+            }
+            if (runtime.major > major && (best == null || runtime.major < best.major)) {
+                best = runtime;
+            }
+        }
+        return best;
+    }
+
+    private List<Runtime> scan() {
+        Set<File> binaries = new LinkedHashSet<>();
+        for (File home : candidateHomes()) {
+            File binary = binaryOf(home);
+            if (binary != null) {
+                try {
+                    binaries.add(binary.getCanonicalFile());
+                } catch (IOException e) {
+                    binaries.add(binary);
+                }
+            }
+        }
+        loadCache();
+        ExecutorService pool = daemonPool(Math.max(1, Math.min(binaries.size(), 8)));
+        try {
+            List<Future<Runtime>> probes = new ArrayList<>();
+            for (File binary : binaries) {
+                probes.add(pool.submit(() -> probe(binary)));
+            }
+            List<Runtime> runtimes = new ArrayList<>();
+            for (Future<Runtime> probe : probes) {
+                try {
+                    Runtime runtime = probe.get();
+                    if (runtime != null) {
+                        runtimes.add(runtime);
+                    }
+                } catch (ExecutionException e) {
+                    System.err.println("Java probe failed: " + e.getCause());
+                }
+            }
+            runtimes.sort(Comparator.comparingInt((Runtime r) -> r.major).thenComparing(r -> r.binary.getPath()));
+            saveCache();
+            return runtimes;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.emptyList();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static List<File> candidateHomes() {
+        List<File> homes = new ArrayList<>();
+        String javaHome = System.getenv("JAVA_HOME");
+        if (javaHome != null) {
+            homes.add(new File(javaHome));
+        }
+        homes.add(new File(System.getProperty("java.home")));
+        String path = System.getenv("PATH");
+        if (path != null) {
+            for (String dir : path.split(File.pathSeparator)) {
+                if (!dir.isEmpty() && binaryOf(new File(dir).getParentFile()) != null) {
+                    homes.add(new File(dir).getParentFile());
+                }
+            }
+        }
+        String home = System.getProperty("user.home");
+        List<File> roots = new ArrayList<>(Arrays.asList(
+                new File("/usr/lib/jvm"), new File("/usr/java"), new File("/usr/local/java"), new File("/opt/java"),
+                new File("/opt"), new File(home, ".sdkman/candidates/java"), new File(home, ".jdks"),
+                new File("/Library/Java/JavaVirtualMachines")));
+        for (String env : new String[]{"ProgramFiles", "ProgramFiles(x86)"}) {
+            String programFiles = System.getenv(env);
+            if (programFiles != null) {
+                for (String vendorDir : new String[]{"Java", "Eclipse Adoptium", "Microsoft", "Zulu", "Amazon Corretto"}) {
+                    roots.add(new File(programFiles, vendorDir));
+                }
+            }
+        }
+        for (File root : roots) {
+            File[] children = root.listFiles(File::isDirectory);
+            if (children != null) {
+                homes.addAll(Arrays.asList(children));
+            }
+        }
+        return homes;
+    }
+
+    // The java executable under a home directory, or the file itself if it is one.
+    private static File binaryOf(File home) {
+        if (home == null) {
+            return null;
+        }
+        if (home.isFile()) {
+            return home.canExecute() ? home : null;
+        }
+        for (String relative : new String[]{"bin/java", "bin/java.exe", "Contents/Home/bin/java"}) {
+            File binary = new File(home, relative);
+            if (binary.isFile() && binary.canExecute()) {
+                return binary;
+            }
+        }
+        return null;
+    }
+
+    private Runtime probe(File binary) {
+        String key = binary.getPath();
+        long mtime = binary.lastModified();
+        synchronized (cache) {
+            Object cached = cache.get(key);
+            if (cached != null && Json.number(cached, "mtime", -1) == mtime) {
+                String version = Json.string(cached, "version");
+                return version != null ? new Runtime(binary, version, Json.string(cached, "vendor"),
+                        Json.string(cached, "arch")) : null;
+            }
+        }
+        Map<String, String> props = readRelease(binary);
+        if (props.get("JAVA_VERSION") == null) {
+            props = fork(binary);
+        }
+        String version = props.get("JAVA_VERSION");
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("mtime", mtime);
+        entry.put("version", version);
+        entry.put("vendor", props.get("IMPLEMENTOR"));
+        entry.put("arch", props.get("OS_ARCH"));
+        synchronized (cache) {
+            cache.put(key, entry);
+        }
+        return version != null ? new Runtime(binary, version, props.get("IMPLEMENTOR"), props.get("OS_ARCH")) : null;
+    }
+
+    // <home>/release: KEY="value" lines written by every JDK build since 9 and most 8s.
+    private static Map<String, String> readRelease(File binary) {
+        Map<String, String> props = new HashMap<>();
+        File release = new File(binary.getParentFile().getParentFile(), "release");
+        if (!release.isFile()) {
+            return props;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(release),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int eq = line.indexOf('=');
+                if (eq > 0) {
+                    props.put(line.substring(0, eq).trim(), line.substring(eq + 1).trim().replace("\"", ""));
+                }
+            }
+        } catch (IOException e) {
+            props.clear();
+        }
+        return props;
+    }
+
+    private static Map<String, String> fork(File binary) {
+        Map<String, String> props = new HashMap<>();
+        try {
+            Process process = new ProcessBuilder(binary.getPath(), "-XshowSettings:properties", "-version")
+                    .redirectErrorStream(true).start();
+            // Reading blocks until the output ends, so a binary that hangs is killed from
+            // a timer; its output then ends early and the probe fails.
+            CompletableFuture<Void> timeout = CompletableFuture.runAsync(() -> {
+                process.descendants().forEach(ProcessHandle::destroyForcibly);
+                process.destroyForcibly();
+            }, CompletableFuture.delayedExecutor(PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                    StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.startsWith("java.version = ")) {
+                        props.put("JAVA_VERSION", line.substring("java.version = ".length()));
+                    } else if (line.startsWith("java.vendor = ")) {
+                        props.put("IMPLEMENTOR", line.substring("java.vendor = ".length()));
+                    } else if (line.startsWith("os.arch = ")) {
+                        props.put("OS_ARCH", line.substring("os.arch = ".length()));
+                    }
+                }
+            } finally {
+                timeout.cancel(false);
+            }
+            if (!process.waitFor(PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+            if (timeout.isDone() && !timeout.isCancelled()) {
+                System.err.println("Timed out probing " + binary);
+                props.clear();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not run " + binary + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return props;
+    }
+
+    // "1.8.0_392" -> 8, "17.0.8" -> 17, "21" -> 21
+    static int majorOf(String version) {
+        if (version == null) {
+            return -1;
+        }
+        String[] parts = version.split("[._+-]");
+        try {
+            int first = Integer.parseInt(parts[0]);
+            return first == 1 && parts.length > 1 ? Integer.parseInt(parts[1]) : first;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void loadCache() {
+        if (!cacheFile.isFile()) {
+            return;
+        }
+        try {
+            Object json = Json.parse(cacheFile);
+            if (json instanceof Map) {
+                synchronized (cache) {
+                    for (Map.Entry<?, ?> entry : ((Map<?, ?>) json).entrySet()) {
+                        cache.putIfAbsent((String) entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable Java runtime cache: " + e.getMessage());
+        }
+    }
+
+    private void saveCache() {
+        try {
+            synchronized (cache) {
+                Json.write(cacheFile, new TreeMap<>(cache));
+            }
+        } catch (IOException e) {
+            System.err.println("Could not save Java runtime cache: " + e.getMessage());
+        }
+    }
+
+    private static ExecutorService daemonPool(int threads) {
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "java-probe");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+}
@@ -0,0 +1,174 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+// Turns the memory setting into JVM options for a game and keeps running games from
+// overcommitting the machine.
+//
+// Memory figures come from the cgroup limit when the launcher runs in a container
+// (v2 memory.max or v1 memory.limit_in_bytes) and from the OS otherwise. Each game
+// reserves its heap plus an allowance for metaspace, code cache and native buffers;
+// a launch that does not fit next to the running games is refused until one exits.
+class JvmTuner {
+    private static final long MB = 1024 * 1024;
+    // Native memory a game uses beyond its heap, as a fraction of the heap.
+    private static final double NON_HEAP_OVERHEAD = 0.35;
+    // Kept free for the OS, the launcher and everything else.
+    private static final long SYSTEM_RESERVE_MB = 1024;
+    private static final int MIN_HEAP_MB = 512;
+
+    // JVM options for one launch and the memory it was admitted with.
+    static class Plan {
+        final int heapMb;
+        final long reservedMb;
+        final List<String> jvmArgs;
+
+        Plan(int heapMb, long reservedMb, List<String> jvmArgs) {
+            this.heapMb = heapMb;
+            this.reservedMb = reservedMb;
+            this.jvmArgs = jvmArgs;
+        }
+    }
+
+    private final long totalMb;
+    private final int cpus;
+    private long reservedMb;
+
+    JvmTuner() {
+        this(physicalMemoryMb(), Runtime.getRuntime().availableProcessors());
+    }
+
+    JvmTuner(long totalMb, int cpus) {
+        this.totalMb = totalMb;
+        this.cpus = cpus;
+    }
+
+    long totalMb() {
+        return totalMb;
+    }
+
+    // Plan a launch with the requested heap on a runtime of the given major version.
+    // The heap is capped to what the machine could ever give one game.
+    Plan plan(int requestedHeapMb, int javaMajor) {
+        long usable = Math.max(MIN_HEAP_MB, (long) ((totalMb - SYSTEM_RESERVE_MB) / (1 + NON_HEAP_OVERHEAD)));
+        int heap = (int) Math.max(MIN_HEAP_MB, Math.min(requestedHeapMb, usable));
+        List<String> args = new ArrayList<>();
+        // A fixed heap avoids resize pauses while the game warms up.
+        args.add("-Xms" + heap + "m");
+        args.add("-Xmx" + heap + "m");
+        if (javaMajor >= 21 && cpus >= 4 && heap >= 2048) {
+            args.add("-XX:+UseZGC");
+            if (javaMajor < 23) {
+                // Generational mode is the only mode from 23 on, and the flag is obsolete.
+                args.add("-XX:+ZGenerational");
+            }
+        } else {
+            args.add("-XX:+UseG1GC");
+            args.add("-XX:MaxGCPauseMillis=50");
+            args.add("-XX:+ParallelRefProcEnabled");
+            args.add("-XX:G1HeapRegionSize=" + (heap >= 4096 ? 16 : 8) + "M");
+            if (cpus <= 2) {
+                args.add("-XX:ParallelGCThreads=" + cpus);
+                args.add("-XX:ConcGCThreads=1");
+            }
+        }
+        if (transparentHugePagesAvailable()) {
+            args.add("-XX:+UseTransparentHugePages");
+        }
+        // Touching every heap page up front slows startup by a fraction of a second but
+        // removes page-fault stalls in game; only worth it when the memory is really free.
+        if (heap * MB <= availableMemoryMb() * MB / 2) {
+            args.add("-XX:+AlwaysPreTouch");
+        }
+        args.add("-XX:+DisableExplicitGC");
+        return new Plan(heap, (long) Math.ceil(heap * (1 + NON_HEAP_OVERHEAD)), args);
+    }
+
+    // Reserve memory for a planned launch. Returns false if it does not fit next to the
+    // games already running.
+    synchronized boolean admit(Plan plan) {
+        if (reservedMb > 0 && reservedMb + plan.reservedMb > totalMb - SYSTEM_RESERVE_MB) {
+            return false;
+        }
+        reservedMb += plan.reservedMb;
+        return true;
+    }
+
+    synchronized void release(Plan plan) {
+        reservedMb = Math.max(0, reservedMb - plan.reservedMb);
+    }
+
+    synchronized long reservedMb() {
+        return reservedMb;
+    }
+
+    // ----- host detection -----
+
+    @SuppressWarnings("deprecation")
+    static long physicalMemoryMb() {
+        long physical = -1;
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            physical = ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize() / MB;
+        }
+        long cgroup = cgroupLimitMb();
+        if (cgroup > 0 && (physical <= 0 || cgroup < physical)) {
+            return cgroup;
+        }
+        return physical > 0 ? physical : 4096;
+    }
+
+    // Memory not used by anything, per /proc/meminfo; the total if unknown.
+    private long availableMemoryMb() {
+        String meminfo = read(new File("/proc/meminfo"));
+        if (meminfo != null) {
+            for (String line : meminfo.split("\n")) {
+                if (line.startsWith("MemAvailable:")) {
+                    String kb = line.substring("MemAvailable:".length()).replace("kB", "").trim();
+                    try {
+                        return Math.min(totalMb, Long.parseLong(kb) / 1024);
+                    } catch (NumberFormatException e) {
+                        break;
+                    }
+                }
+            }
+        }
+        return totalMb;
+    }
+
+    private static long cgroupLimitMb() {
+        for (String path : new String[]{"/sys/fs/cgroup/memory.max", "/sys/fs/cgroup/memory/memory.limit_in_bytes"}) {
+            String value = read(new File(path));
+            if (value == null || value.trim().equals("max")) {
+                continue;
+            }
+            try {
+                long bytes = Long.parseLong(value.trim());
+                // v1 reports "unlimited" as a huge page-aligned number.
+                if (bytes > 0 && bytes < Long.MAX_VALUE / 2) {
+                    return bytes / MB;
+                }
+            } catch (NumberFormatException e) {
+                // Not a limit.
+            }
+        }
+        return -1;
+    }
+
+    private static boolean transparentHugePagesAvailable() {
+        String mode = read(new File("/sys/kernel/mm/transparent_hugepage/enabled"));
+        return mode != null && (mode.contains("[madvise]") || mode.contains("[always]"));
+    }
+
+    private static String read(File file) {
+        try {
+            return file.isFile() ? new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
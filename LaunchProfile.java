@@ -0,0 +1,315 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+// A launchable game profile: the version JSON of a Minecraft version, optionally merged
+// with a mod loader profile that "inheritsFrom" it.
+class LaunchProfile {
+    static final String LIBRARIES = "libraries";
+
+    // One library entry with its rules already applied.
+    static class Library {
+        final String name;
+        final String path;
+        final String url;
+        final String sha1;
+        final long size;
+        // Only extracted into the natives directory, never put on the classpath.
+        final boolean nativesOnly;
+
+        Library(String name, String path, String url, String sha1, long size, boolean nativesOnly) {
+            this.name = name;
+            this.path = path;
+            this.url = url;
+            this.sha1 = sha1;
+            this.size = size;
+            this.nativesOnly = nativesOnly;
+        }
+
+        boolean isNatives() {
+            return nativesOnly || name.contains(":natives-");
+        }
+    }
+
+    final Map<String, Object> json;
+
+    LaunchProfile(Map<String, Object> json) {
+        this.json = json;
+    }
+
+    @SuppressWarnings("unchecked")
+    static LaunchProfile parse(Object json) throws IOException {
+        if (!(json instanceof Map)) {
+            throw new IOException("Version profile is not a JSON object");
+        }
+        return new LaunchProfile((Map<String, Object>) json);
+    }
+
+    String id() {
+        return Json.string(json, "id");
+    }
+
+    String mainClass() {
+        return Json.string(json, "mainClass");
+    }
+
+    Map<String, Object> clientDownload() {
+        return Json.object(Json.object(json, "downloads"), "client");
+    }
+
+    Map<String, Object> assetIndex() {
+        return Json.object(json, "assetIndex");
+    }
+
+    String assets() {
+        String assets = Json.string(json, "assets");
+        return assets != null ? assets : Json.string(assetIndex(), "id");
+    }
+
+    int javaMajorVersion() {
+        return (int) Json.number(Json.object(json, "javaVersion"), "majorVersion", 8);
+    }
+
+    // Merge a loader profile on top of this (vanilla) profile. Loader libraries come
+    // first so they win on the classpath; arguments are appended.
+    LaunchProfile mergeChild(LaunchProfile child, String newId) {
+        Map<String, Object> merged = new LinkedHashMap<>(json);
+        for (Map.Entry<String, Object> entry : child.json.entrySet()) {
+            String key = entry.getKey();
+            if (key.equals("libraries")) {
+                List<Object> libraries = new ArrayList<>(Json.array(child.json, "libraries"));
+                Set<String> seen = new HashSet<>();
+                for (Object library : libraries) {
+                    seen.add(versionless(Json.string(library, "name")));
+                }
+                for (Object library : Json.array(json, "libraries")) {
+                    if (!seen.contains(versionless(Json.string(library, "name")))) {
+                        libraries.add(library);
+                    }
+                }
+                merged.put(key, libraries);
+            } else if (key.equals("arguments")) {
+                Map<String, Object> arguments = new LinkedHashMap<>();
+                for (String side : new String[]{"game", "jvm"}) {
+                    List<Object> list = new ArrayList<>(Json.array(Json.object(json, "arguments"), side));
+                    list.addAll(Json.array(entry.getValue(), side));
+                    arguments.put(side, list);
+                }
+                merged.put(key, arguments);
+            } else if (!key.equals("inheritsFrom")) {
+                merged.put(key, entry.getValue());
+            }
+        }
+        merged.put("id", newId);
+        merged.remove("inheritsFrom");
+        return new LaunchProfile(merged);
+    }
+
+    // Libraries that apply to this OS.
+    List<Library> libraries() {
+        List<Library> result = new ArrayList<>();
+        String os = osName();
+        for (Object library : Json.array(json, "libraries")) {
+            if (!rulesAllow(Json.array(library, "rules"))) {
+                continue;
+            }
+            String name = Json.string(library, "name");
+            Map<String, Object> downloads = Json.object(library, "downloads");
+            Map<String, Object> artifact = Json.object(downloads, "artifact");
+            if (!artifact.isEmpty()) {
+                String path = Json.string(artifact, "path");
+                result.add(new Library(name, path != null ? path : mavenPath(name), Json.string(artifact, "url"),
+                        Json.string(artifact, "sha1"), Json.number(artifact, "size", -1), false));
+            } else if (downloads.isEmpty() && name != null) {
+                // Maven-style entry (Fabric, Forge): repository base url + coordinate path.
+                String base = Json.string(library, "url");
+                if (base == null) {
+                    base = "https://libraries.minecraft.net/";
+                }
+                if (!base.endsWith("/")) {
+                    base += "/";
+                }
+                String path = mavenPath(name);
+                result.add(new Library(name, path, base + path, Json.string(library, "sha1"),
+                        Json.number(library, "size", -1), false));
+            }
+            // Pre-1.19 natives: a classifier jar selected by OS.
+            String classifier = Json.string(Json.object(library, "natives"), os);
+            if (classifier != null) {
+                classifier = classifier.replace("${arch}", is64Bit() ? "64" : "32");
+                Map<String, Object> nativeJar = Json.object(Json.object(downloads, "classifiers"), classifier);
+                if (!nativeJar.isEmpty()) {
+                    result.add(new Library(name + ":" + classifier, Json.string(nativeJar, "path"),
+                            Json.string(nativeJar, "url"), Json.string(nativeJar, "sha1"),
+                            Json.number(nativeJar, "size", -1), true));
+                }
+            }
+        }
+        return result;
+    }
+
+    // Libraries then the game jar, as passed to -cp.
+    String classpath(File versionDir) {
+        StringBuilder classpath = new StringBuilder();
+        for (Library library : libraries()) {
+            if (!library.nativesOnly) {
+                classpath.append(new File(new File(versionDir, LIBRARIES), library.path).getPath())
+                        .append(File.pathSeparator);
+            }
+        }
+        return classpath.append(new File(versionDir, id() + ".jar").getPath()).toString();
+    }
+
+    // Build the java command line (without the java executable itself).
+    List<String> commandLine(File gameDir, File versionDir, File assetsDir, File nativesDir,
+                             Map<String, String> auth) {
+        String separator = File.pathSeparator;
+        String classpath = classpath(versionDir);
+
+        Map<String, String> vars = new HashMap<>(auth);
+        vars.put("natives_directory", nativesDir.getPath());
+        vars.put("launcher_name", "FullMinecraftLauncher");
+        vars.put("launcher_version", "1.0");
+        vars.put("classpath", classpath);
+        vars.put("classpath_separator", separator);
+        vars.put("library_directory", new File(versionDir, LIBRARIES).getPath());
+        vars.put("version_name", id());
+        vars.put("version_type", Json.string(json, "type") != null ? Json.string(json, "type") : "release");
+        vars.put("game_directory", gameDir.getPath());
+        vars.put("assets_root", assetsDir.getPath());
+        vars.put("game_assets", assetsDir.getPath());
+        vars.put("assets_index_name", assets());
+        vars.putIfAbsent("user_type", "legacy");
+        vars.putIfAbsent("user_properties", "{}");
+        vars.putIfAbsent("clientid", "");
+        vars.putIfAbsent("auth_xuid", "");
+
+        List<String> command = new ArrayList<>();
+        Map<String, Object> arguments = Json.object(json, "arguments");
+        if (arguments.isEmpty()) {
+            // Legacy profiles (before 1.13) have no JVM arguments section.
+            command.add("-Djava.library.path=" + nativesDir.getPath());
+            command.add("-cp");
+            command.add(classpath);
+        } else {
+            addArguments(command, Json.array(arguments, "jvm"), vars);
+        }
+        command.add(mainClass());
+        String legacy = Json.string(json, "minecraftArguments");
+        if (legacy != null) {
+            for (String arg : legacy.split(" ")) {
+                command.add(substitute(arg, vars));
+            }
+        } else {
+            addArguments(command, Json.array(arguments, "game"), vars);
+        }
+        return command;
+    }
+
+    private static void addArguments(List<String> command, List<Object> arguments, Map<String, String> vars) {
+        for (Object argument : arguments) {
+            if (argument instanceof String) {
+                command.add(substitute((String) argument, vars));
+            } else if (rulesAllow(Json.array(argument, "rules"))) {
+                Object value = ((Map<?, ?>) argument).get("value");
+                if (value instanceof String) {
+                    command.add(substitute((String) value, vars));
+                } else if (value instanceof List) {
+                    for (Object v : (List<?>) value) {
+                        command.add(substitute(String.valueOf(v), vars));
+                    }
+                }
+            }
+        }
+    }
+
+    static String substitute(String text, Map<String, String> vars) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            int start = text.indexOf("${", i);
+            int end = start < 0 ? -1 : text.indexOf('}', start);
+            if (end < 0) {
+                sb.append(text, i, text.length());
+                break;
+            }
+            sb.append(text, i, start);
+            String key = text.substring(start + 2, end);
+            String value = vars.get(key);
+            sb.append(value != null ? value : text.substring(start, end + 1));
+            i = end + 1;
+        }
+        return sb.toString();
+    }
+
+    // Evaluate Mojang library/argument rules. Feature-gated rules (demo mode, custom
+    // resolution, quick play) are treated as not matching.
+    static boolean rulesAllow(List<Object> rules) {
+        if (rules.isEmpty()) {
+            return true;
+        }
+        boolean allowed = false;
+        for (Object rule : rules) {
+            boolean matches = true;
+            Map<String, Object> os = Json.object(rule, "os");
+            String name = Json.string(os, "name");
+            if (name != null && !name.equals(osName())) {
+                matches = false;
+            }
+            String arch = Json.string(os, "arch");
+            if (arch != null && !(arch.equals("x86") ? !is64Bit() : System.getProperty("os.arch").contains(arch))) {
+                matches = false;
+            }
+            if (!Json.object(rule, "features").isEmpty()) {
+                matches = false;
+            }
+            if (matches) {
+                allowed = "allow".equals(Json.string(rule, "action"));
+            }
+        }
+        return allowed;
+    }
+
+    static String osName() {
+        String os = System.getProperty("os.name").toLowerCase(Locale.ROOT);
+        if (os.contains("win")) {
+            return "windows";
+        }
+        if (os.contains("mac")) {
+            return "osx";
+        }
+        return "linux";
+    }
+
+    private static boolean is64Bit() {
+        return System.getProperty("os.arch").contains("64");
+    }
+
+    // group:artifact:version[:classifier][@ext] -> group/path/artifact/version/artifact-version[-classifier].ext
+    static String mavenPath(String coordinate) {
+        String ext = "jar";
+        int at = coordinate.indexOf('@');
+        if (at >= 0) {
+            ext = coordinate.substring(at + 1);
+            coordinate = coordinate.substring(0, at);
+        }
+        String[] parts = coordinate.split(":");
+        if (parts.length < 3) {
+            throw new IllegalArgumentException("Bad maven coordinate: " + coordinate);
+        }
+        String file = parts[1] + "-" + parts[2] + (parts.length > 3 ? "-" + parts[3] : "") + "." + ext;
+        return parts[0].replace('.', '/') + "/" + parts[1] + "/" + parts[2] + "/" + file;
+    }
+
+    // group:artifact[:classifier], used to let loader libraries replace vanilla ones.
+    private static String versionless(String coordinate) {
+        if (coordinate == null) {
+            return "";
+        }
+        String[] parts = coordinate.split(":");
+        if (parts.length < 3) {
+            return coordinate;
+        }
+        return parts[0] + ":" + parts[1] + (parts.length > 3 ? ":" + parts[3] : "");
+    }
+}
@@ -0,0 +1,444 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Headless entry point: the install, play and verify actions of the window, plus batch
+// provisioning of many instances. It never touches an AWT or Swing class, so it runs on
+// servers and in containers without a display:
+//
+//   java -cp launcher.jar LauncherCli install <version> <Forge|Fabric>
+//   java -cp launcher.jar LauncherCli play <version> <Forge|Fabric> [--memory MB] [--java PATH] [--user NAME]
+//                                          [--instance NAME] [--force]
+//   java -cp launcher.jar LauncherCli verify <version> <Forge|Fabric> [--full] [--repair]
+//   java -cp launcher.jar LauncherCli batch <manifest.json> [--parallel N]
+//
+// A batch manifest lists instances:
+//
+//   {"parallel": 4, "instances": [{"name": "lobby", "version": "1.20.1", "loader": "Fabric",
+//     "memory": 3072, "mods": ["sodium.jar", {"url": "https://...", "sha1": "..."}], "launch": true,
+//     "cpus": "0-3", "cpuQuota": 200, "hardMemoryLimit": true, "nice": 5, "ioPriority": 7}]}
+//
+// Instances that share a version and loader share one install, and every download goes
+// through the same object store, so a file is fetched once however many instances use
+// it. Each instance gets its own game directory under instances/<name> with its mods
+// linked from the store and its budget (memory, CPUs, priorities) in instance.json; the
+// instances to launch start one after another as the earlier ones finish warming up.
+// Progress goes to stderr and the result is one JSON document on
+// stdout, and timings of every phase go to metrics/metrics.json and metrics.prom. The
+// exit code is 0 if everything succeeded, 1 if anything failed and 2 for
+// usage errors.
+final class LauncherCli {
+    // Same directories and settings as the window.
+    private static final String APPDATA = System.getenv("APPDATA") != null
+            ? System.getenv("APPDATA") : System.getProperty("user.home");
+    private static final File LAUNCHER_DIR = new File(APPDATA, "FullMinecraftLauncher");
+    private static final File VERSIONS_DIR = new File(LAUNCHER_DIR, "versions");
+    private static final File ASSETS_DIR = new File(LAUNCHER_DIR, "assets");
+    private static final int DEFAULT_MEMORY_MB = 2048;
+    private static final int DEFAULT_PARALLEL = 4;
+
+    private final ArtifactDownloader downloader = new ArtifactDownloader(
+            Integer.getInteger("launcher.connections", 8), Long.getLong("launcher.bandwidth", 0L));
+    private final ObjectStore store = new ObjectStore(new File(LAUNCHER_DIR, "objects"));
+    private final VersionCatalog catalog = new VersionCatalog(
+            System.getProperty("launcher.manifest", VersionCatalog.MANIFEST_URL), VERSIONS_DIR);
+    private final JavaRuntimes runtimes = new JavaRuntimes(new File(LAUNCHER_DIR, "java-runtimes.json"));
+    private final JvmTuner tuner = new JvmTuner();
+    private final ModResolver resolver = new ModResolver();
+    private final CdsArchives cds = new CdsArchives(new File(LAUNCHER_DIR, "cds"));
+    private final Instances instances = new Instances(new File(LAUNCHER_DIR, "instances"), LAUNCHER_DIR);
+    private final Instances.StartScheduler starts = new Instances.StartScheduler();
+    private final ProcessSupervisor supervisor = new ProcessSupervisor();
+    private final AtomicLong downloaded = new AtomicLong();
+    // Progress lines are echoed to stderr as they are logged.
+    private final LogBuffer log = new LogBuffer(1000) {
+        @Override
+        synchronized void add(String line) {
+            super.add(line);
+            System.err.println(line);
+        }
+    };
+    private final LoaderInstaller installer = new LoaderInstaller(store, downloader, catalog, VERSIONS_DIR, ASSETS_DIR,
+            new NativesCache(new File(LAUNCHER_DIR, "natives")), new DeltaPatches(System.getProperty("launcher.patches")),
+            Boolean.getBoolean("launcher.assetPacks") ? new AssetPacks(new File(LAUNCHER_DIR, "assetpacks")) : null,
+            new IntegrityJournal(new File(LAUNCHER_DIR, "verified.journal")), log);
+    // One install per profile id, shared by every instance that needs it.
+    private final Map<String, CompletableFuture<Map<String, Object>>> installs = new ConcurrentHashMap<>();
+    private final ExecutorService installPool = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "install");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private LauncherCli() {
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        List<String> rest = new ArrayList<>(Arrays.asList(args));
+        if (rest.isEmpty()) {
+            usage(null);
+        }
+        String command = rest.remove(0);
+        Map<String, String> options = options(rest);
+        LauncherCli cli = new LauncherCli();
+        Metrics.exportOnExit(new File(LAUNCHER_DIR, "metrics"));
+        long start = System.nanoTime();
+        Map<String, Object> result;
+        try {
+            switch (command) {
+                case "install":
+                    result = cli.install(positional(rest, 0, "version"), loader(positional(rest, 1, "loader")));
+                    break;
+                case "play":
+                    result = cli.play(positional(rest, 0, "version"), loader(positional(rest, 1, "loader")), options);
+                    break;
+                case "verify":
+                    result = cli.verify(positional(rest, 0, "version"), loader(positional(rest, 1, "loader")),
+                            options.containsKey("full"), options.containsKey("repair"));
+                    break;
+                case "batch":
+                    result = cli.batch(new File(positional(rest, 0, "manifest")), options);
+                    break;
+                default:
+                    usage("Unknown command: " + command);
+                    return;
+            }
+        } catch (IllegalArgumentException e) {
+            usage(e.getMessage());
+            return;
+        } catch (Exception e) {
+            result = new LinkedHashMap<>();
+            result.put("ok", false);
+            result.put("error", String.valueOf(e.getMessage()));
+        } finally {
+            cli.downloader.close();
+        }
+        result.put("downloadedBytes", cli.downloaded.get());
+        result.put("seconds", (System.nanoTime() - start) / 1_000_000 / 1000.0);
+        System.out.println(Json.write(result));
+        System.exit(Boolean.TRUE.equals(result.get("ok")) ? 0 : 1);
+    }
+
+    // ----- commands -----
+
+    private Map<String, Object> install(String version, String modLoader) throws Exception {
+        Map<String, Object> result = new LinkedHashMap<>(await(ensureInstalled(version, modLoader)));
+        result.put("ok", true);
+        return result;
+    }
+
+    // Install if needed, launch and wait for the game to exit. Like the Play button, it
+    // refuses a mod set with errors (unless --force) and a launch that would overcommit
+    // memory.
+    private Map<String, Object> play(String version, String modLoader, Map<String, String> options) throws Exception {
+        Map<String, Object> result = new LinkedHashMap<>(await(ensureInstalled(version, modLoader)));
+        String name = options.getOrDefault("instance", Instances.DEFAULT);
+        if (!Instances.isValidName(name)) {
+            throw new IllegalArgumentException("Invalid instance name: " + name);
+        }
+        Instances.Instance instance = instances.load(name);
+        if (!instance.gameDir.isDirectory() && !instance.gameDir.mkdirs()) {
+            throw new IOException("Cannot create " + instance.gameDir);
+        }
+        List<ModIndex.ModFile> mods = instances.mods(name).scan();
+        ModResolver.Result check = resolver.resolve(mods, modLoader, version);
+        for (ModResolver.Issue issue : check.issues) {
+            log.add(issue.toString());
+        }
+        if (check.hasErrors() && !options.containsKey("force")) {
+            throw new IOException("Some mods will not load; fix them or pass --force to launch anyway");
+        }
+        GameLaunch launch = GameLaunch.prepare(installer, runtimes, tuner, cds, instances, instance, version,
+                modLoader, intOption(options, "memory", DEFAULT_MEMORY_MB), options.getOrDefault("java", ""),
+                options.getOrDefault("user", "Player"), mods, ASSETS_DIR);
+        for (String note : launch.notes) {
+            log.add(note);
+        }
+        if (!tuner.admit(launch.plan)) {
+            throw new IOException("Not enough memory to start Minecraft " + version + " with " + launch.plan.heapMb
+                    + " MB next to " + tuner.reservedMb() + " MB already reserved");
+        }
+        result.put("instance", name);
+        ProcessBuilder pb = new ProcessBuilder(launch.command).directory(instance.gameDir);
+        CountDownLatch exited = new CountDownLatch(1);
+        int[] exitCode = {-1};
+        ProcessSupervisor.Handle handle;
+        try {
+            handle = supervisor.launch("minecraft-" + version, pb, log, (h, code, millis) -> {
+                tuner.release(launch.plan);
+                exitCode[0] = code;
+                exited.countDown();
+            });
+        } catch (Exception e) {
+            tuner.release(launch.plan);
+            throw e;
+        }
+        result.put("pid", handle.process.pid());
+        result.put("heapMb", launch.plan.heapMb);
+        exited.await();
+        result.put("exitCode", exitCode[0]);
+        result.put("ok", exitCode[0] == 0);
+        return result;
+    }
+
+    private Map<String, Object> verify(String version, String modLoader, boolean full, boolean repair) throws Exception {
+        if (!installer.isInstalled(version, modLoader)) {
+            throw new IOException("Minecraft " + version + " with " + modLoader + " is not installed");
+        }
+        IntegrityJournal.Report report = installer.verify(version, modLoader, full);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("profile", LoaderInstaller.profileId(version, modLoader));
+        result.put("checked", report.checked);
+        result.put("hashed", report.hashed);
+        result.put("hashedBytes", report.hashedBytes);
+        result.put("bad", new ArrayList<Object>(report.bad));
+        if (repair && !report.bad.isEmpty()) {
+            installer.discard(version, modLoader, report.bad);
+            installer.plan(entry(version), modLoader, (a, n) -> downloaded.addAndGet(n)).run();
+            result.put("repaired", report.bad.size());
+        }
+        result.put("ok", report.bad.isEmpty() || repair);
+        return result;
+    }
+
+    // Provision every instance of a manifest, installing each profile once.
+    private Map<String, Object> batch(File manifest, Map<String, String> options) throws Exception {
+        Object json = Json.parse(manifest);
+        List<Object> instances = Json.array(json, "instances");
+        int parallel = intOption(options, "parallel", (int) Json.number(json, "parallel", DEFAULT_PARALLEL));
+        Set<String> names = new HashSet<>();
+        for (Object instance : instances) {
+            String name = Json.string(instance, "name");
+            if (!Instances.isValidName(name) || Instances.DEFAULT.equals(name) || !names.add(name)) {
+                throw new IllegalArgumentException("Instance names must be unique and use only A-Z a-z 0-9 . _ -: " + name);
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, parallel), r -> {
+            Thread t = new Thread(r, "provision");
+            t.setDaemon(true);
+            return t;
+        });
+        List<Map<String, Object>> results = new ArrayList<>();
+        boolean ok = true;
+        try {
+            List<Future<Map<String, Object>>> futures = new ArrayList<>();
+            for (Object instance : instances) {
+                futures.add(pool.submit(() -> provision(instance)));
+            }
+            for (Future<Map<String, Object>> future : futures) {
+                Map<String, Object> instanceResult = future.get();
+                ok &= Boolean.TRUE.equals(instanceResult.get("ok"));
+                results.add(instanceResult);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("ok", ok);
+        result.put("instances", new ArrayList<Object>(results));
+        return result;
+    }
+
+    // Install the instance's profile, link its mods into its game directory and
+    // optionally start it. Never throws; failures end up in the result.
+    private Map<String, Object> provision(Object instance) {
+        long start = System.nanoTime();
+        String name = Json.string(instance, "name");
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("name", name);
+        try {
+            String version = Json.string(instance, "version");
+            String modLoader = loader(Json.string(instance, "loader"));
+            if (version == null) {
+                throw new IllegalArgumentException("No version for instance " + name);
+            }
+            result.put("version", version);
+            result.put("loader", modLoader);
+            result.putAll(await(ensureInstalled(version, modLoader)));
+            Instances.Instance settings = instances.save(name, new Instances.Budget(
+                    (int) Json.number(instance, "memory", DEFAULT_MEMORY_MB), Json.string(instance, "cpus"),
+                    (int) Json.number(instance, "cpuQuota", 0), Json.bool(instance, "hardMemoryLimit", false),
+                    (int) Json.number(instance, "nice", 0), (int) Json.number(instance, "ioPriority", -1)));
+            File gameDir = settings.gameDir;
+            Map<String, String> mods = new TreeMap<>();
+            for (Object mod : Json.array(instance, "mods")) {
+                String sha1;
+                String fileName;
+                if (mod instanceof String) {
+                    File file = new File((String) mod);
+                    sha1 = store.add(file);
+                    fileName = file.getName();
+                } else {
+                    String url = Json.string(mod, "url");
+                    fileName = Json.string(mod, "file") != null ? Json.string(mod, "file")
+                            : url.substring(url.lastIndexOf('/') + 1);
+                    sha1 = await(store.fetch(downloader, url, Json.string(mod, "sha1"), Json.number(mod, "size", -1),
+                            (a, n) -> downloaded.addAndGet(n)));
+                }
+                mods.put("mods/" + fileName, sha1);
+            }
+            store.setLayout("instance-" + name, gameDir, mods);
+            result.put("gameDir", gameDir.getPath());
+            result.put("mods", mods.size());
+            if (Json.bool(instance, "launch", false)) {
+                String user = Json.string(instance, "user") != null ? Json.string(instance, "user") : name;
+                String java = Json.string(instance, "java") != null ? Json.string(instance, "java") : "";
+                GameLaunch launch = GameLaunch.prepare(installer, runtimes, tuner, cds, instances, settings, version,
+                        modLoader, DEFAULT_MEMORY_MB, java, user, instances.mods(name).scan(), ASSETS_DIR);
+                for (String note : launch.notes) {
+                    log.add(name + ": " + note);
+                }
+                if (!tuner.admit(launch.plan)) {
+                    throw new IOException("Not enough memory to start " + name + " with " + launch.plan.heapMb
+                            + " MB next to " + tuner.reservedMb() + " MB already reserved");
+                }
+                // The game outlives this command; its output goes to a log file. The result
+                // is only reported once the scheduler has let it start.
+                File output = new File(gameDir, "logs/launcher-output.log");
+                output.getParentFile().mkdirs();
+                Process process;
+                try {
+                    process = await(starts.submit(() -> new ProcessBuilder(launch.command).directory(gameDir)
+                            .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.appendTo(output)).start()));
+                } catch (Exception e) {
+                    tuner.release(launch.plan);
+                    throw e;
+                }
+                log.add("Started " + name + " (pid " + process.pid() + ")");
+                result.put("pid", process.pid());
+                result.put("heapMb", launch.plan.heapMb);
+            }
+            result.put("ok", true);
+        } catch (Exception e) {
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+            log.add("Instance " + name + " failed: " + cause.getMessage());
+            result.put("ok", false);
+            result.put("error", String.valueOf(cause.getMessage()));
+        }
+        result.put("seconds", (System.nanoTime() - start) / 1_000_000 / 1000.0);
+        return result;
+    }
+
+    // ----- installs -----
+
+    // Install a profile, or check and repair it if it is already installed. Concurrent
+    // calls for the same profile share one run.
+    private CompletableFuture<Map<String, Object>> ensureInstalled(String version, String modLoader) {
+        String id = LoaderInstaller.profileId(version, modLoader);
+        return installs.computeIfAbsent(id, key -> CompletableFuture.supplyAsync(() -> {
+            try {
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("profile", id);
+                if (installer.isInstalled(version, modLoader)) {
+                    IntegrityJournal.Report report = installer.verify(version, modLoader, false);
+                    result.put("installed", false);
+                    result.put("repaired", report.bad.size());
+                    if (report.bad.isEmpty()) {
+                        return result;
+                    }
+                    log.add(id + ": repairing " + report.bad.size() + " files");
+                    installer.discard(version, modLoader, report.bad);
+                } else {
+                    log.add(id + ": installing");
+                    result.put("installed", true);
+                }
+                installer.plan(entry(version), modLoader, (a, n) -> downloaded.addAndGet(n)).run();
+                log.add(id + ": ready");
+                return result;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, installPool));
+    }
+
+    private VersionCatalog.Entry entry(String version) throws IOException {
+        synchronized (catalog) {
+            catalog.loadCached();
+            VersionCatalog.Entry entry = catalog.find(version);
+            if (entry == null) {
+                catalog.refresh();
+                entry = catalog.find(version);
+            }
+            if (entry == null) {
+                throw new IOException("Unknown Minecraft version " + version);
+            }
+            return entry;
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    // ----- arguments -----
+
+    // Removes "--key value" and "--flag" options from args.
+    private static Map<String, String> options(List<String> args) {
+        Map<String, String> options = new HashMap<>();
+        for (Iterator<String> it = args.iterator(); it.hasNext(); ) {
+            String arg = it.next();
+            if (!arg.startsWith("--")) {
+                continue;
+            }
+            it.remove();
+            String key = arg.substring(2);
+            boolean flag = key.equals("full") || key.equals("repair") || key.equals("force");
+            if (!flag && it.hasNext()) {
+                options.put(key, it.next());
+                it.remove();
+            } else {
+                options.put(key, "true");
+            }
+        }
+        return options;
+    }
+
+    private static String positional(List<String> args, int index, String name) {
+        if (index >= args.size()) {
+            throw new IllegalArgumentException("Missing " + name);
+        }
+        return args.get(index);
+    }
+
+    private static int intOption(Map<String, String> options, String key, int fallback) {
+        String value = options.get(key);
+        try {
+            return value != null ? Integer.parseInt(value) : fallback;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + key + " needs a number: " + value);
+        }
+    }
+
+    private static String loader(String name) {
+        if ("forge".equalsIgnoreCase(name)) {
+            return "Forge";
+        }
+        if ("fabric".equalsIgnoreCase(name)) {
+            return "Fabric";
+        }
+        throw new IllegalArgumentException("Loader must be Forge or Fabric: " + name);
+    }
+
+    private static void usage(String error) {
+        if (error != null) {
+            System.err.println(error);
+        }
+        System.err.println("Usage: LauncherCli install <version> <Forge|Fabric>");
+        System.err.println("       LauncherCli play <version> <Forge|Fabric> [--memory MB] [--java PATH] [--user NAME]");
+        System.err.println("            [--instance NAME] [--force]");
+        System.err.println("       LauncherCli verify <version> <Forge|Fabric> [--full] [--repair]");
+        System.err.println("       LauncherCli batch <manifest.json> [--parallel N]");
+        System.exit(2);
+    }
+}
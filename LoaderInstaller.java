@@ -0,0 +1,778 @@
+import java.io.*;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Installs a Minecraft version together with a Forge or Fabric loader.
+//
+// The install is planned as a TaskGraph:
+//
+//   version json --+--> client jar ---------------------------+
+//                  +--> asset index --> assets                |
+//                  |                                          v
+//   loader profile +--> resolve libraries --> library ... --> link --> natives ----> write profile
+//                                                              \--> processors (Forge) --/
+//
+// Every download goes through the shared ObjectStore, and the finished profile directory
+// versions/<mc>-<loader>/ is a layout of links into it.
+class LoaderInstaller {
+    static final String FABRIC_META = "https://meta.fabricmc.net/v2/versions/loader/";
+    static final String FORGE_PROMOTIONS = "https://files.minecraftforge.net/net/minecraftforge/forge/promotions_slim.json";
+    static final String FORGE_MAVEN = "https://maven.minecraftforge.net/net/minecraftforge/forge/";
+    static final String ASSETS_URL = "https://resources.download.minecraft.net/";
+
+    // Rough cost estimates (ms) used for critical-path scheduling.
+    private static final long COST_REQUEST = 300;
+    private static final long COST_PROCESSORS = 20000;
+    private static final long BYTES_PER_MS = 1000;
+    // Bytes of long-trusted files re-hashed by each routine verify().
+    private static final long RECHECK_BYTES = 256L * 1024 * 1024;
+    // Prefix of asset paths in verify() reports.
+    static final String ASSETS_PREFIX = "assets/";
+    // Prefix, after ASSETS_PREFIX, of damaged objects inside the asset packs.
+    private static final String PACKED_PREFIX = "packs/";
+
+    private final ObjectStore store;
+    private final ArtifactDownloader downloader;
+    private final VersionCatalog catalog;
+    private final File versionsDir;
+    private final File assetsDir;
+    private final NativesCache nativesCache;
+    private final DeltaPatches patches;
+    // Packed asset store, or null to keep assets as loose objects in the ObjectStore.
+    private final AssetPacks assetPacks;
+    private final IntegrityJournal journal;
+    private final LogBuffer log;
+
+    LoaderInstaller(ObjectStore store, ArtifactDownloader downloader, VersionCatalog catalog,
+                    File versionsDir, File assetsDir, NativesCache nativesCache, DeltaPatches patches,
+                    AssetPacks assetPacks, IntegrityJournal journal, LogBuffer log) {
+        this.store = store;
+        this.nativesCache = nativesCache;
+        this.patches = patches;
+        this.assetPacks = assetPacks;
+        this.journal = journal;
+        this.downloader = downloader;
+        this.catalog = catalog;
+        this.versionsDir = versionsDir;
+        this.assetsDir = assetsDir;
+        this.log = log;
+    }
+
+    static String profileId(String version, String modLoader) {
+        return version + "-" + modLoader.toLowerCase(Locale.ROOT);
+    }
+
+    File profileDir(String version, String modLoader) {
+        return new File(versionsDir, profileId(version, modLoader));
+    }
+
+    boolean isInstalled(String version, String modLoader) {
+        String id = profileId(version, modLoader);
+        return new File(profileDir(version, modLoader), id + ".json").isFile();
+    }
+
+    LaunchProfile loadProfile(String version, String modLoader) throws IOException {
+        String id = profileId(version, modLoader);
+        return LaunchProfile.parse(Json.parse(new File(profileDir(version, modLoader), id + ".json")));
+    }
+
+    // Make sure the profile's natives directory holds its native libraries. Cheap when
+    // nothing changed since the last launch.
+    File prepareNatives(String version, String modLoader) throws IOException {
+        File dir = profileDir(version, modLoader);
+        LinkedHashMap<String, File> jars = new LinkedHashMap<>();
+        for (LaunchProfile.Library library : loadProfile(version, modLoader).libraries()) {
+            if (library.isNatives()) {
+                File jar = new File(new File(dir, LaunchProfile.LIBRARIES), library.path);
+                jars.put(library.sha1 != null ? library.sha1 : nativesCache.sha1(jar), jar);
+            }
+        }
+        File natives = new File(dir, "natives");
+        nativesCache.link(jars, natives);
+        return natives;
+    }
+
+    // With packed assets, make sure the loose assets/objects files the profile's asset
+    // index needs exist. The install already exports them, so this is normally only a
+    // stamp check.
+    void prepareAssets(String version, String modLoader) throws IOException {
+        if (assetPacks != null) {
+            exportAssets(Json.string(loadProfile(version, modLoader).assetIndex(), "id"));
+        }
+    }
+
+    // Export an asset index's objects from the packs; a stamp next to the index makes
+    // this a no-op once it has been done.
+    private void exportAssets(String indexId) throws IOException {
+        File indexFile = new File(assetsDir, "indexes/" + indexId + ".json");
+        File stamp = new File(assetsDir, "indexes/" + indexId + ".exported");
+        if (indexId == null || !indexFile.isFile()) {
+            return;
+        }
+        String indexSha1 = ArtifactDownloader.sha1(indexFile);
+        if (stamp.isFile() && indexSha1.equals(new String(Files.readAllBytes(stamp.toPath()),
+                java.nio.charset.StandardCharsets.US_ASCII).trim())) {
+            return;
+        }
+        Set<String> hashes = new LinkedHashSet<>();
+        for (Object object : Json.object(Json.parse(indexFile), "objects").values()) {
+            hashes.add(Json.string(object, "hash"));
+        }
+        List<String> written = assetPacks.export(hashes, new File(assetsDir, "objects"));
+        if (!written.isEmpty()) {
+            log.add("Exported " + written.size() + " assets from packs");
+            // Written from the packs, so verify() can trust them until they change.
+            Map<String, String> exported = new HashMap<>();
+            for (String hash : written) {
+                exported.put("objects/" + hash.substring(0, 2) + "/" + hash, hash);
+            }
+            journal.record(assetsDir, exported);
+        }
+        Files.write(stamp.toPath(), indexSha1.getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+    }
+
+    // Check a profile's files and its loose assets against their hashes. Routine checks
+    // hash only what changed since it was last verified plus a bounded share of old files;
+    // full re-hashes everything, including the asset packs. Asset paths in the report
+    // start with ASSETS_PREFIX.
+    IntegrityJournal.Report verify(String version, String modLoader, boolean full) throws IOException {
+        String id = profileId(version, modLoader);
+        File dir = profileDir(version, modLoader);
+        long budget = full ? Long.MAX_VALUE : RECHECK_BYTES;
+        Map<String, String> files = store.layout("profile-" + id);
+        if (files.isEmpty()) {
+            // Not installed through the store: nothing to check against, so have it reinstalled.
+            return new IntegrityJournal.Report(1, 0, 0, Collections.singletonList(id + ".jar"));
+        }
+        IntegrityJournal.Report profile = journal.verify(dir, files, budget);
+        Map<String, String> assets = new TreeMap<>();
+        String indexId = Json.string(loadProfile(version, modLoader).assetIndex(), "id");
+        Map<String, String> linked = store.layout("assets");
+        String indexPath = "indexes/" + indexId + ".json";
+        if (indexId != null && linked.containsKey(indexPath)) {
+            assets.put(indexPath, linked.get(indexPath));
+            for (Object object : Json.object(Json.parse(new File(assetsDir, indexPath)), "objects").values()) {
+                String hash = Json.string(object, "hash");
+                String path = "objects/" + hash.substring(0, 2) + "/" + hash;
+                // With packs the loose objects are exports, not store links.
+                if (assetPacks != null || linked.containsKey(path)) {
+                    assets.put(path, hash);
+                }
+            }
+        }
+        IntegrityJournal.Report assetReport = journal.verify(assetsDir, assets, budget);
+        List<String> bad = new ArrayList<>(profile.bad);
+        for (String path : assetReport.bad) {
+            bad.add(ASSETS_PREFIX + path);
+        }
+        if (assetPacks != null && full) {
+            for (String hash : assetPacks.verify()) {
+                bad.add(ASSETS_PREFIX + PACKED_PREFIX + hash);
+            }
+        }
+        return new IntegrityJournal.Report(profile.checked + assetReport.checked, profile.hashed + assetReport.hashed,
+                profile.hashedBytes + assetReport.hashedBytes, bad);
+    }
+
+    // Delete the bad files of a verify() report together with their store objects, so
+    // that installing the profile again downloads exactly those.
+    void discard(String version, String modLoader, List<String> bad) throws IOException {
+        String id = profileId(version, modLoader);
+        Map<String, String> files = store.layout("profile-" + id);
+        Map<String, String> assets = store.layout("assets");
+        Set<String> packed = new HashSet<>();
+        boolean exportDamaged = false;
+        for (String path : bad) {
+            boolean asset = path.startsWith(ASSETS_PREFIX);
+            String relative = asset ? path.substring(ASSETS_PREFIX.length()) : path;
+            if (asset && relative.startsWith(PACKED_PREFIX)) {
+                // The loose copy was exported from the damaged record, so it goes too.
+                String hash = relative.substring(PACKED_PREFIX.length());
+                packed.add(hash);
+                relative = "objects/" + hash.substring(0, 2) + "/" + hash;
+            }
+            exportDamaged |= asset && assetPacks != null && relative.startsWith("objects/");
+            String sha1 = (asset ? assets : files).get(relative);
+            if (sha1 != null) {
+                store.discard(sha1);
+            }
+            Files.deleteIfExists(new File(asset ? assetsDir : profileDir(version, modLoader), relative).toPath());
+        }
+        if (!packed.isEmpty()) {
+            assetPacks.remove(packed);
+        }
+        if (exportDamaged) {
+            // Installing again then exports the missing objects instead of trusting the stamp.
+            String indexId = Json.string(loadProfile(version, modLoader).assetIndex(), "id");
+            Files.deleteIfExists(new File(assetsDir, "indexes/" + indexId + ".exported").toPath());
+        }
+    }
+
+    // Plan an install. Run the returned graph with start() or run(); bytes are reported
+    // through the listener.
+    TaskGraph plan(VersionCatalog.Entry entry, String modLoader, ArtifactDownloader.Listener bytes) {
+        Install install = new Install(entry, modLoader, bytes, false);
+        return install.graph;
+    }
+
+    // Plan a speculative, download-only install on fewer threads: every artifact lands in
+    // the object store, but nothing is linked, extracted, run or written. A later plan()
+    // for the same selection then finds its downloads already local. Cancel the graph
+    // before starting foreground work; finished downloads are kept.
+    TaskGraph prefetch(VersionCatalog.Entry entry, String modLoader) {
+        Install install = new Install(entry, modLoader, null, true);
+        return install.graph;
+    }
+
+    // State shared by the tasks of one install.
+    private final class Install {
+        final VersionCatalog.Entry entry;
+        final String modLoader;
+        final String id;
+        final File dir;
+        final ArtifactDownloader.Listener bytes;
+        final boolean downloadOnly;
+        final TaskGraph graph;
+        // Relative path inside the profile directory -> object hash.
+        final Map<String, String> files = new ConcurrentHashMap<>();
+
+        volatile LaunchProfile vanilla;
+        volatile LaunchProfile loader;
+        volatile File installerJar;
+        volatile LaunchProfile forgeInstallProfile;
+        // Files of installed profiles that patches can be applied to, loaded on first use.
+        private Map<String, String> deltaBases;
+
+        final TaskGraph.Node versionJson;
+        final TaskGraph.Node loaderProfile;
+        final TaskGraph.Node resolve;
+        final TaskGraph.Node link;
+        final TaskGraph.Node natives;
+        final TaskGraph.Node processors;
+        final TaskGraph.Node writeProfile;
+
+        Install(VersionCatalog.Entry entry, String modLoader, ArtifactDownloader.Listener bytes, boolean downloadOnly) {
+            this.entry = entry;
+            this.modLoader = modLoader;
+            this.id = profileId(entry.id, modLoader);
+            this.dir = new File(versionsDir, id);
+            this.bytes = bytes;
+            this.downloadOnly = downloadOnly;
+            this.graph = downloadOnly ? new TaskGraph("prefetch", 2) : new TaskGraph("install", 6);
+
+            versionJson = graph.add("version json", COST_REQUEST, n -> fetchVersionJson());
+            loaderProfile = graph.add(modLoader + " profile", COST_REQUEST * 3, n -> fetchLoaderProfile());
+            resolve = graph.add("resolve libraries", 1, n -> resolveLibraries(), versionJson, loaderProfile);
+            if (downloadOnly) {
+                link = graph.add("downloads finished", 1, n -> { }, resolve);
+                natives = null;
+                processors = null;
+                writeProfile = graph.add("prefetch finished", 1, n -> { }, link);
+                return;
+            }
+            link = graph.add("link files", 100, n -> {
+                store.setLayout("profile-" + id, dir, files);
+                journal.record(dir, files);
+            }, resolve);
+            natives = graph.add("extract natives", 500, n -> extractNatives(), link);
+            processors = graph.add("run processors", COST_PROCESSORS, n -> runProcessors(), link);
+            writeProfile = graph.add("write profile", 10, n -> writeProfile(), natives, processors);
+        }
+
+        private void fetchVersionJson() throws Exception {
+            vanilla = LaunchProfile.parse(catalog.versionJson(entry, downloader));
+            Map<String, Object> client = vanilla.clientDownload();
+            TaskGraph.Node clientJar = graph.add("client jar", cost(Json.number(client, "size", -1)),
+                    n -> files.put(id + ".jar", fetchDelta(id + ".jar", Json.string(client, "url"),
+                            Json.string(client, "sha1"), Json.number(client, "size", -1))));
+            TaskGraph.Node assetIndex = graph.add("asset index", COST_REQUEST, n -> fetchAssets());
+            link.after(clientJar);
+            writeProfile.after(assetIndex);
+        }
+
+        private void fetchLoaderProfile() throws Exception {
+            if ("Fabric".equals(modLoader)) {
+                String loaderVersion = null;
+                for (Object candidate : (List<?>) readJson(FABRIC_META + entry.id)) {
+                    Object loaderInfo = ((Map<?, ?>) candidate).get("loader");
+                    if (loaderVersion == null || Json.bool(loaderInfo, "stable", false)) {
+                        loaderVersion = Json.string(loaderInfo, "version");
+                        if (Json.bool(loaderInfo, "stable", false)) {
+                            break;
+                        }
+                    }
+                }
+                if (loaderVersion == null) {
+                    throw new IOException("Fabric does not support Minecraft " + entry.id);
+                }
+                loader = LaunchProfile.parse(readJson(FABRIC_META + entry.id + "/" + loaderVersion + "/profile/json"));
+                if (!downloadOnly) {
+                    log.add("Using Fabric Loader " + loaderVersion);
+                }
+            } else {
+                Map<String, Object> promos = Json.object(readJson(FORGE_PROMOTIONS), "promos");
+                Object forgeVersion = promos.get(entry.id + "-recommended");
+                if (forgeVersion == null) {
+                    forgeVersion = promos.get(entry.id + "-latest");
+                }
+                if (forgeVersion == null) {
+                    throw new IOException("Forge does not support Minecraft " + entry.id);
+                }
+                String full = entry.id + "-" + forgeVersion;
+                String url = FORGE_MAVEN + full + "/forge-" + full + "-installer.jar";
+                String sha1 = fetch(url, readChecksum(url), -1);
+                installerJar = store.objectFile(sha1);
+                files.put("forge-installer.jar", sha1);
+                try (ZipFile zip = new ZipFile(installerJar)) {
+                    forgeInstallProfile = LaunchProfile.parse(Json.parse(zip.getInputStream(required(zip, "install_profile.json"))));
+                    String versionPath = Json.string(forgeInstallProfile.json, "json");
+                    String name = versionPath != null ? versionPath.replaceFirst("^/", "") : "version.json";
+                    loader = LaunchProfile.parse(Json.parse(zip.getInputStream(required(zip, name))));
+                }
+                if (!downloadOnly) {
+                    log.add("Using Forge " + forgeVersion);
+                }
+            }
+        }
+
+        private void resolveLibraries() {
+            LaunchProfile merged = vanilla.mergeChild(loader, id);
+            List<LaunchProfile.Library> libraries = new ArrayList<>(merged.libraries());
+            if (forgeInstallProfile != null) {
+                // Processor dependencies are needed for the install but not at runtime.
+                libraries.addAll(forgeInstallProfile.libraries());
+            }
+            Set<String> paths = new HashSet<>();
+            for (LaunchProfile.Library library : libraries) {
+                if (!paths.add(library.path)) {
+                    continue;
+                }
+                TaskGraph.Node download = graph.add(library.name, cost(library.size), n -> {
+                    String sha1 = fetchLibrary(library);
+                    if (sha1 != null) {
+                        files.put(LaunchProfile.LIBRARIES + "/" + library.path, sha1);
+                    }
+                });
+                link.after(download);
+            }
+        }
+
+        private String fetchLibrary(LaunchProfile.Library library) throws IOException {
+            if (library.url == null || library.url.isEmpty()) {
+                // Shipped inside the Forge installer under maven/, or produced by a processor.
+                if (installerJar == null) {
+                    throw new IOException("No download for " + library.name);
+                }
+                try (ZipFile zip = new ZipFile(installerJar)) {
+                    ZipEntry packed = zip.getEntry("maven/" + library.path);
+                    if (packed == null) {
+                        return null;
+                    }
+                    File tmp = File.createTempFile("library", ".jar");
+                    try (InputStream in = zip.getInputStream(packed)) {
+                        Files.copy(in, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    try {
+                        return store.add(tmp);
+                    } finally {
+                        tmp.delete();
+                    }
+                }
+            }
+            File existing = new File(new File(dir, LaunchProfile.LIBRARIES), library.path);
+            if (library.sha1 == null && existing.isFile()) {
+                // No published checksum: reuse what an earlier install linked.
+                return store.add(existing);
+            }
+            return fetchDelta(LaunchProfile.LIBRARIES + "/" + library.path, library.url, library.sha1, library.size);
+        }
+
+        private void fetchAssets() throws Exception {
+            Map<String, Object> index = vanilla.assetIndex();
+            String indexId = Json.string(index, "id");
+            String indexSha1 = fetch(Json.string(index, "url"), Json.string(index, "sha1"), Json.number(index, "size", -1));
+            Map<String, String> links = new HashMap<>();
+            links.put("indexes/" + indexId + ".json", indexSha1);
+            Map<String, Object> objects = Json.object(Json.parse(store.objectFile(indexSha1)), "objects");
+            if (assetPacks != null) {
+                fetchPackedAssets(objects);
+                if (!downloadOnly) {
+                    store.linkAll("assets", assetsDir, links);
+                    exportAssets(indexId);
+                }
+                return;
+            }
+            List<CompletableFuture<String>> downloads = new ArrayList<>();
+            for (Object object : objects.values()) {
+                String hash = Json.string(object, "hash");
+                String path = hash.substring(0, 2) + "/" + hash;
+                links.put("objects/" + path, hash);
+                downloads.add(store.fetch(downloader, ASSETS_URL + path, hash, Json.number(object, "size", -1), bytes));
+            }
+            try {
+                for (CompletableFuture<String> download : downloads) {
+                    ArtifactDownloader.await(download);
+                }
+            } finally {
+                for (CompletableFuture<String> download : downloads) {
+                    download.cancel(true);
+                }
+            }
+            if (!downloadOnly) {
+                store.linkAll("assets", assetsDir, links);
+                journal.record(assetsDir, links);
+            }
+        }
+
+        // Download the objects the packs do not have yet straight into them. Objects that
+        // are still loose in the ObjectStore from before packs were enabled are moved over.
+        private void fetchPackedAssets(Map<String, Object> objects) throws IOException {
+            List<CompletableFuture<Void>> downloads = new ArrayList<>();
+            try {
+                for (Object object : objects.values()) {
+                    String hash = Json.string(object, "hash");
+                    if (assetPacks.contains(hash)) {
+                        continue;
+                    }
+                    if (store.contains(hash)) {
+                        assetPacks.add(hash, Files.readAllBytes(store.objectFile(hash).toPath()));
+                        continue;
+                    }
+                    String url = ASSETS_URL + hash.substring(0, 2) + "/" + hash;
+                    downloads.add(downloader.fetchBytes(url, hash, Json.number(object, "size", -1), bytes)
+                            .thenAccept(data -> {
+                                try {
+                                    assetPacks.add(hash, data);
+                                } catch (IOException e) {
+                                    throw new UncheckedIOException(e);
+                                }
+                            }));
+                }
+                for (CompletableFuture<Void> download : downloads) {
+                    ArtifactDownloader.await(download);
+                }
+            } finally {
+                for (CompletableFuture<Void> download : downloads) {
+                    download.cancel(true);
+                }
+                // Keep what did arrive, even if the install failed or was cancelled.
+                assetPacks.commit();
+            }
+        }
+
+        private void extractNatives() throws IOException {
+            LinkedHashMap<String, File> jars = new LinkedHashMap<>();
+            for (LaunchProfile.Library library : vanilla.mergeChild(loader, id).libraries()) {
+                if (library.isNatives()) {
+                    String sha1 = files.get(LaunchProfile.LIBRARIES + "/" + library.path);
+                    if (sha1 != null) {
+                        jars.put(sha1, store.objectFile(sha1));
+                        continue;
+                    }
+                    // Not in the store (no download and not in the installer): use what an
+                    // earlier install linked, as prepareNatives does.
+                    File jar = new File(new File(dir, LaunchProfile.LIBRARIES), library.path);
+                    if (!jar.isFile()) {
+                        throw new IOException("No natives jar for " + library.name);
+                    }
+                    jars.put(nativesCache.sha1(jar), jar);
+                }
+            }
+            nativesCache.link(jars, new File(dir, "natives"));
+        }
+
+        private void runProcessors() throws Exception {
+            if (forgeInstallProfile == null) {
+                return;
+            }
+            File libraries = new File(dir, LaunchProfile.LIBRARIES);
+            Map<String, String> data = new HashMap<>();
+            try (ZipFile zip = new ZipFile(installerJar)) {
+                for (Map.Entry<String, Object> item : Json.object(forgeInstallProfile.json, "data").entrySet()) {
+                    String value = Json.string(item.getValue(), "client");
+                    if (value == null) {
+                        continue;
+                    }
+                    if (value.startsWith("[") && value.endsWith("]")) {
+                        value = new File(libraries, LaunchProfile.mavenPath(value.substring(1, value.length() - 1))).getPath();
+                    } else if (value.startsWith("'") && value.endsWith("'")) {
+                        value = value.substring(1, value.length() - 1);
+                    } else if (value.startsWith("/")) {
+                        File out = new File(new File(dir, "installer-data"), value.substring(1));
+                        out.getParentFile().mkdirs();
+                        try (InputStream in = zip.getInputStream(required(zip, value.substring(1)))) {
+                            Files.copy(in, out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                        }
+                        value = out.getPath();
+                    }
+                    data.put(item.getKey(), value);
+                }
+            }
+            data.put("SIDE", "client");
+            data.put("MINECRAFT_JAR", new File(dir, id + ".jar").getPath());
+            data.put("MINECRAFT_VERSION", entry.id);
+            data.put("ROOT", dir.getPath());
+            data.put("INSTALLER", installerJar.getPath());
+            data.put("LIBRARY_DIR", libraries.getPath());
+
+            // Resolve every processor first so the runner can share common libraries.
+            List<Object> pending = new ArrayList<>();
+            List<List<File>> classpaths = new ArrayList<>();
+            for (Object processor : Json.array(forgeInstallProfile.json, "processors")) {
+                List<Object> sides = Json.array(processor, "sides");
+                if (!sides.isEmpty() && !sides.contains("client")) {
+                    continue;
+                }
+                List<File> classpath = new ArrayList<>();
+                classpath.add(new File(libraries, LaunchProfile.mavenPath(Json.string(processor, "jar"))));
+                for (Object coordinate : Json.array(processor, "classpath")) {
+                    classpath.add(new File(libraries, LaunchProfile.mavenPath((String) coordinate)));
+                }
+                pending.add(processor);
+                classpaths.add(classpath);
+            }
+            try (ProcessorRunner runner = new ProcessorRunner(classpaths)) {
+                boolean inProcess = runner.guard();
+                if (!pending.isEmpty()) {
+                    log.add(inProcess ? "Running Forge processors inside the launcher"
+                            : "Running Forge processors in separate JVMs (this Java does not allow the exit guard;"
+                            + " start the launcher with -Djava.security.manager=allow to run them inside it)");
+                }
+                for (int i = 0; i < pending.size(); i++) {
+                    Object processor = pending.get(i);
+                    if (outputsValid(processor, data, libraries)) {
+                        continue;
+                    }
+                    List<File> classpath = classpaths.get(i);
+                    File jar = classpath.get(0);
+                    List<String> args = new ArrayList<>();
+                    for (Object arg : Json.array(processor, "args")) {
+                        args.add(resolveArgument((String) arg, data, libraries));
+                    }
+                    String mainClass;
+                    try (JarFile jarFile = new JarFile(jar)) {
+                        Manifest manifest = jarFile.getManifest();
+                        mainClass = manifest != null ? manifest.getMainAttributes().getValue("Main-Class") : null;
+                    }
+                    if (mainClass == null) {
+                        throw new IOException("Processor " + jar.getName() + " has no Main-Class");
+                    }
+                    log.add("Running processor " + jar.getName());
+                    if (inProcess) {
+                        runner.run(mainClass, classpath, args, log);
+                    } else {
+                        runProcessor(mainClass, classpath, args);
+                    }
+                    if (!outputsValid(processor, data, libraries) && !Json.object(processor, "outputs").isEmpty()) {
+                        throw new IOException("Processor " + jar.getName() + " produced unexpected output");
+                    }
+                }
+            }
+        }
+
+        // Fallback for runtimes that cannot guard System.exit: one JVM per processor.
+        private void runProcessor(String mainClass, List<File> classpath, List<String> args) throws Exception {
+            StringBuilder cp = new StringBuilder();
+            for (File file : classpath) {
+                cp.append(cp.length() > 0 ? File.pathSeparator : "").append(file.getPath());
+            }
+            // Processors run on the launcher's own runtime, which is always new enough.
+            String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+            List<String> command = new ArrayList<>(Arrays.asList(java, "-cp", cp.toString(), mainClass));
+            command.addAll(args);
+            ProcessBuilder pb = new ProcessBuilder(command).directory(dir).redirectErrorStream(true);
+            Process process = pb.start();
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    log.add("  " + line);
+                }
+            } finally {
+                if (process.isAlive()) {
+                    process.destroyForcibly();
+                }
+            }
+            int code = process.waitFor();
+            if (code != 0) {
+                throw new IOException(mainClass + " exited with code " + code);
+            }
+        }
+
+        private boolean outputsValid(Object processor, Map<String, String> data, File libraries) throws IOException {
+            Map<String, Object> outputs = Json.object(processor, "outputs");
+            if (outputs.isEmpty()) {
+                return false;
+            }
+            for (Map.Entry<String, Object> output : outputs.entrySet()) {
+                File file = new File(resolveArgument(output.getKey(), data, libraries));
+                String expected = resolveArgument(String.valueOf(output.getValue()), data, libraries).replace("'", "");
+                if (!file.isFile() || !expected.equalsIgnoreCase(ArtifactDownloader.sha1(file))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void writeProfile() throws IOException {
+            LaunchProfile merged = vanilla.mergeChild(loader, id);
+            Json.write(new File(dir, id + ".json"), merged.json);
+        }
+
+        private String fetch(String url, String sha1, long size) throws IOException {
+            return ArtifactDownloader.await(store.fetch(downloader, url, sha1, size, bytes));
+        }
+
+        // Like fetch(), but first tries to patch the same file of another installed
+        // profile into the wanted one. Any failure falls back to the full download.
+        private String fetchDelta(String path, String url, String sha1, long size) throws IOException {
+            if (!patches.isEnabled() || sha1 == null || store.contains(sha1)) {
+                return fetch(url, sha1, size);
+            }
+            String base = deltaBase(path, sha1);
+            if (base != null) {
+                String name = path.substring(path.lastIndexOf('/') + 1);
+                try {
+                    long patchBytes = patches.fetch(store, downloader, base, sha1, size, bytes);
+                    if (!downloadOnly) {
+                        log.add("Patched " + name + ": " + patchBytes / 1024 + " KB instead of "
+                                + (size >= 0 ? size / 1024 + " KB" : "a full download"));
+                    }
+                    return sha1.toLowerCase(Locale.ROOT);
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (FileNotFoundException e) {
+                    // No patch published for this pair.
+                } catch (IOException e) {
+                    if (!downloadOnly) {
+                        log.add("Delta update of " + name + " failed (" + e.getMessage() + "), downloading it whole");
+                    }
+                }
+            }
+            return fetch(url, sha1, size);
+        }
+
+        // The installed file to patch into the one at path: the same library (or the client
+        // jar) at the closest older version, else the closest newer one.
+        private String deltaBase(String path, String sha1) throws IOException {
+            String[] wanted = deltaSlot(path);
+            if (wanted == null) {
+                return null;
+            }
+            synchronized (this) {
+                if (deltaBases == null) {
+                    deltaBases = store.entries("profile-");
+                }
+            }
+            String older = null;
+            String olderVersion = null;
+            String newer = null;
+            String newerVersion = null;
+            for (Map.Entry<String, String> candidate : deltaBases.entrySet()) {
+                String[] slot = deltaSlot(candidate.getKey());
+                if (slot == null || !slot[0].equals(wanted[0]) || candidate.getValue().equalsIgnoreCase(sha1)) {
+                    continue;
+                }
+                int order = ModResolver.compare(slot[1], wanted[1]);
+                if (order <= 0 && (olderVersion == null || ModResolver.compare(slot[1], olderVersion) > 0)) {
+                    older = candidate.getValue();
+                    olderVersion = slot[1];
+                } else if (order > 0 && (newerVersion == null || ModResolver.compare(slot[1], newerVersion) < 0)) {
+                    newer = candidate.getValue();
+                    newerVersion = slot[1];
+                }
+            }
+            return older != null ? older : newer;
+        }
+    }
+
+    // {file identity without its version, version} for a patchable profile path, or null.
+    // "1.20.1-fabric.jar" is the client jar of 1.20.1; "libraries/org/lwjgl/lwjgl/3.3.1/
+    // lwjgl-3.3.1-natives-linux.jar" is lwjgl's linux natives at 3.3.1.
+    static String[] deltaSlot(String path) {
+        if (!path.endsWith(".jar")) {
+            return null;
+        }
+        if (path.indexOf('/') < 0) {
+            int dash = path.lastIndexOf('-');
+            return dash > 0 && !path.equals("forge-installer.jar")
+                    ? new String[]{"client", path.substring(0, dash)} : null;
+        }
+        String[] parts = path.split("/");
+        if (parts.length < 5 || !parts[0].equals(LaunchProfile.LIBRARIES)) {
+            return null;
+        }
+        String version = parts[parts.length - 2];
+        String file = parts[parts.length - 1];
+        if (!file.contains(version)) {
+            return null;
+        }
+        String group = String.join("/", Arrays.asList(parts).subList(1, parts.length - 2));
+        return new String[]{group + "/" + file.replace(version, "*"), version};
+    }
+
+    // {KEY} -> data value, [coordinate] -> library path, anything else verbatim.
+    private static String resolveArgument(String arg, Map<String, String> data, File libraries) {
+        if (arg.startsWith("[") && arg.endsWith("]")) {
+            return new File(libraries, LaunchProfile.mavenPath(arg.substring(1, arg.length() - 1))).getPath();
+        }
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < arg.length()) {
+            int start = arg.indexOf('{', i);
+            int end = start < 0 ? -1 : arg.indexOf('}', start);
+            if (end < 0) {
+                sb.append(arg, i, arg.length());
+                break;
+            }
+            String value = data.get(arg.substring(start + 1, end));
+            sb.append(arg, i, start).append(value != null ? value : arg.substring(start, end + 1));
+            i = end + 1;
+        }
+        return sb.toString();
+    }
+
+    private static ZipEntry required(ZipFile zip, String name) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        if (entry == null) {
+            throw new FileNotFoundException(name + " not found in " + zip.getName());
+        }
+        return entry;
+    }
+
+    private static Object readJson(String url) throws IOException {
+        java.net.URLConnection conn = new URL(url).openConnection();
+        conn.setConnectTimeout(15000);
+        conn.setReadTimeout(30000);
+        conn.setRequestProperty("User-Agent", "FullMinecraftLauncher");
+        try (InputStream in = conn.getInputStream()) {
+            return Json.parse(in);
+        }
+    }
+
+    // Maven publishes <file>.sha1 next to each artifact; without it the file is always re-fetched.
+    private static String readChecksum(String url) {
+        try {
+            java.net.URLConnection conn = new URL(url + ".sha1").openConnection();
+            conn.setConnectTimeout(15000);
+            conn.setReadTimeout(30000);
+            try (InputStream in = conn.getInputStream()) {
+                String text = new String(Json.readAll(in), java.nio.charset.StandardCharsets.US_ASCII).trim();
+                return text.matches("[0-9a-fA-F]{40}") ? text : null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static long cost(long size) {
+        return size > 0 ? Math.max(COST_REQUEST, size / BYTES_PER_MS) : COST_REQUEST;
+    }
+}
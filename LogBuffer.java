@@ -0,0 +1,53 @@
+import java.util.Arrays;
+
+// Fixed-size ring buffer of log lines. Writers never block on readers: when the buffer
+// is full the oldest line is overwritten and counted as dropped.
+class LogBuffer {
+    private final String[] lines;
+    private long written;
+    private long dropped;
+    private long modCount;
+
+    LogBuffer(int capacity) {
+        this.lines = new String[capacity];
+    }
+
+    synchronized void add(String line) {
+        if (written >= lines.length) {
+            dropped++;
+        }
+        lines[(int) (written % lines.length)] = line;
+        written++;
+        modCount++;
+    }
+
+    synchronized void clear() {
+        Arrays.fill(lines, null);
+        written = 0;
+        modCount++;
+    }
+
+    // Changes whenever the content changes.
+    synchronized long version() {
+        return modCount;
+    }
+
+    synchronized long dropped() {
+        return dropped;
+    }
+
+    int capacity() {
+        return lines.length;
+    }
+
+    // Copy of the retained lines, oldest first.
+    synchronized String[] snapshot() {
+        int count = (int) Math.min(written, lines.length);
+        String[] copy = new String[count];
+        int start = (int) ((written - count) % lines.length);
+        for (int i = 0; i < count; i++) {
+            copy[i] = lines[(start + i) % lines.length];
+        }
+        return copy;
+    }
+}
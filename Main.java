@@ -5,7 +5,10 @@ import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 class FullMinecraftLauncher {
     // Use APPDATA on Windows; fallback to user's home if not available.
@@ -14,27 +17,120 @@ class FullMinecraftLauncher {
             : System.getProperty("user.home");
     private static final File LAUNCHER_DIR = new File(APPDATA, "FullMinecraftLauncher");
     private static final File MODS_DIR = new File(LAUNCHER_DIR, "mods");
+    private static final File VERSIONS_DIR = new File(LAUNCHER_DIR, "versions");
+    private static final File ASSETS_DIR = new File(LAUNCHER_DIR, "assets");
+    // Metrics reports (JSON and Prometheus text), written on exit and from the settings tab.
+    private static final File METRICS_DIR = new File(LAUNCHER_DIR, "metrics");
+    // Version manifest location; point it at a local file or server for testing.
+    private static final String MANIFEST_URL = System.getProperty("launcher.manifest", VersionCatalog.MANIFEST_URL);
+
+    // Shared download engine: 8 parallel connections, no bandwidth limit by default.
+    private static final ArtifactDownloader DOWNLOADER = new ArtifactDownloader(
+            Integer.getInteger("launcher.connections", 8), Long.getLong("launcher.bandwidth", 0L));
+    // Shared content-addressed store; versions and instances link their files from here.
+    private static final ObjectStore STORE = new ObjectStore(new File(LAUNCHER_DIR, "objects"));
+    // Native libraries extracted once per jar hash and linked into each version.
+    private static final NativesCache NATIVES = new NativesCache(new File(LAUNCHER_DIR, "natives"));
+    // Source of delta patches between jar versions (an HTTP(S) URL or a directory); unset
+    // means every jar is downloaded whole.
+    private static final DeltaPatches PATCHES = new DeltaPatches(System.getProperty("launcher.patches"));
+    // Optional packed asset store (-Dlauncher.assetPacks=true): a few pack files and a
+    // mapped index instead of thousands of loose objects.
+    private static final AssetPacks ASSET_PACKS = Boolean.getBoolean("launcher.assetPacks")
+            ? new AssetPacks(new File(LAUNCHER_DIR, "assetpacks")) : null;
+    // What was verified when, so pre-launch checks only hash changed files.
+    private static final IntegrityJournal JOURNAL = new IntegrityJournal(new File(LAUNCHER_DIR, "verified.journal"));
+    // Cached version list, refreshed in the background.
+    private static final VersionCatalog CATALOG = new VersionCatalog(MANIFEST_URL, VERSIONS_DIR);
+    // Keeps a handle on launched games and drains their output.
+    private static final ProcessSupervisor SUPERVISOR = new ProcessSupervisor();
+    // Game directories with their own mods and resource budgets; "default" is LAUNCHER_DIR.
+    private static final Instances INSTANCES = new Instances(new File(LAUNCHER_DIR, "instances"), LAUNCHER_DIR);
+    // Metadata of the jars in MODS_DIR, cached by file size and mtime.
+    private static final ModIndex MOD_INDEX = INSTANCES.mods(Instances.DEFAULT);
+    // Heap, GC, CPU and class loading of running games (-Dlauncher.telemetry=false to turn off).
+    private static final GameTelemetry TELEMETRY = "false".equals(System.getProperty("launcher.telemetry"))
+            ? null : new GameTelemetry(new File(LAUNCHER_DIR, "telemetry"));
+    // Staggers the cold starts of games launched close together.
+    private static final Instances.StartScheduler STARTS = new Instances.StartScheduler();
+    // Pre-launch dependency check for the mod set; caches its last result.
+    private static final ModResolver RESOLVER = new ModResolver();
+    // Installed Java runtimes, discovered in the background at startup.
+    private static final JavaRuntimes RUNTIMES = new JavaRuntimes(new File(LAUNCHER_DIR, "java-runtimes.json"));
+    // Heap and GC options per launch, and the memory running games have reserved.
+    private static final JvmTuner TUNER = new JvmTuner();
+    // Per-classpath class data sharing archives that shorten game startup.
+    private static final CdsArchives CDS = new CdsArchives(new File(LAUNCHER_DIR, "cds"));
+    // Event thread stalls at least this long are reported to edt-stalls.log (0 to turn off).
+    private static final long EDT_STALL_MILLIS = Long.getLong("launcher.edtStallMillis", 200);
+    // Download the selected version in the background (-Dlauncher.prefetch=false for metered links).
+    private static final boolean PREFETCH = !"false".equals(System.getProperty("launcher.prefetch"));
+    private static final int PREFETCH_DELAY_MS = 750;
 
     // Keys for CardLayout panels.
     private static final String LOGIN_PANEL = "loginPanel";
     private static final String LAUNCHER_PANEL = "launcherPanel";
 
     private JFrame frame;
+    // Offline-mode player name passed to the game.
+    private String username = "Player";
     private CardLayout cardLayout;
     private JPanel mainPanel;
+    private LauncherPanel launcherPanel;
 
     public static void main(String[] args) {
+        if (args.length > 0) {
+            // Command-line use (install, play, verify, batch) runs headless. Starting
+            // LauncherCli directly avoids loading any AWT class at all.
+            LauncherCli.main(args);
+            return;
+        }
+        StartupTrace.mark("jvm started");
+        // Fonts load in the background while the look and feel initializes.
+        preloadFonts();
         // Set dark futuristic theme.
         setDarkTheme();
+        StartupTrace.mark("look and feel");
 
         System.out.println("Starting FullMinecraftLauncher with Centered Tabs and No Underline...");
         createDirectories();
+        Metrics.exportOnExit(METRICS_DIR);
+        if (EDT_STALL_MILLIS > 0) {
+            EdtWatchdog.install(EDT_STALL_MILLIS, new File(LAUNCHER_DIR, "edt-stalls.log"));
+        }
+        collectGarbage();
+        RUNTIMES.discover();
+        writeLauncherJvmOptions();
+        StartupTrace.mark("directories, background tasks");
         SwingUtilities.invokeLater(() -> {
             FullMinecraftLauncher launcher = new FullMinecraftLauncher();
             launcher.createAndShowGUI();
         });
     }
 
+    // Shared UI fonts, created once.
+    private static final Map<Integer, Font> FONTS = new java.util.concurrent.ConcurrentHashMap<>();
+
+    static Font font(int style, int size) {
+        return FONTS.computeIfAbsent(style << 16 | size, k -> new Font("Segoe UI", style, size));
+    }
+
+    // Create the UI fonts and load their glyphs on a background thread, so the first
+    // layout on the EDT does not wait for the font system.
+    private static void preloadFonts() {
+        Thread preload = new Thread(() -> {
+            java.awt.font.FontRenderContext frc = new java.awt.font.FontRenderContext(null, true, true);
+            int[][] used = {{Font.BOLD, 32}, {Font.BOLD, 28}, {Font.BOLD, 26}, {Font.BOLD, 24}, {Font.BOLD, 20},
+                    {Font.PLAIN, 18}, {Font.PLAIN, 16}, {Font.PLAIN, 14}};
+            for (int[] f : used) {
+                font(f[0], f[1]).getStringBounds("Minecraft Launcher 0123456789", frc);
+            }
+            StartupTrace.mark("fonts preloaded");
+        }, "font-preload");
+        preload.setDaemon(true);
+        preload.start();
+    }
+
     // Set Nimbus Look & Feel with dark overrides.
     private static void setDarkTheme() {
         try {
@@ -75,24 +171,75 @@ class FullMinecraftLauncher {
             if (LAUNCHER_DIR.mkdirs()) {
                 System.out.println("Created launcher directory: " + LAUNCHER_DIR.getAbsolutePath());
             } else {
-                JOptionPane.showMessageDialog(null, "Failed to create launcher directory at: "
-                        + LAUNCHER_DIR.getAbsolutePath(), "Error", JOptionPane.ERROR_MESSAGE);
-                System.exit(1);
+                fatal("Failed to create launcher directory at: " + LAUNCHER_DIR.getAbsolutePath());
             }
         }
         if (!MODS_DIR.exists()) {
             if (MODS_DIR.mkdirs()) {
                 System.out.println("Created mods directory: " + MODS_DIR.getAbsolutePath());
             } else {
-                JOptionPane.showMessageDialog(null, "Failed to create mods directory at: "
-                        + MODS_DIR.getAbsolutePath(), "Error", JOptionPane.ERROR_MESSAGE);
-                System.exit(1);
+                fatal("Failed to create mods directory at: " + MODS_DIR.getAbsolutePath());
             }
         }
     }
 
+    // Show an error on the EDT and exit.
+    private static void fatal(String message) {
+        try {
+            SwingUtilities.invokeAndWait(() -> JOptionPane.showMessageDialog(null, message, "Error",
+                    JOptionPane.ERROR_MESSAGE));
+        } catch (Exception e) {
+            System.err.println(message);
+        }
+        System.exit(1);
+    }
+
+    // Keep LAUNCHER_DIR/launcher.jvmopts pointing at a class data archive for the launcher
+    // itself. Starting with "java @launcher.jvmopts ..." maps the classes of earlier runs
+    // instead of loading them again.
+    private static void writeLauncherJvmOptions() {
+        JavaRuntimes.Runtime self = new JavaRuntimes.Runtime(new File(System.getProperty("java.home"), "bin/java"),
+                System.getProperty("java.version"), System.getProperty("java.vendor"), System.getProperty("os.arch"));
+        List<String> options = CDS.options("launcher", self, System.getProperty("java.class.path"),
+                new ArrayList<>());
+        if (options.isEmpty()) {
+            return;
+        }
+        File argFile = new File(LAUNCHER_DIR, "launcher.jvmopts");
+        try {
+            java.nio.file.Files.write(argFile.toPath(), options);
+        } catch (IOException e) {
+            System.err.println("Could not write " + argFile + ": " + e.getMessage());
+            return;
+        }
+        boolean usingArchive = false;
+        for (String arg : java.lang.management.ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            usingArchive |= arg.startsWith("-XX:SharedArchiveFile=") || arg.startsWith("-XX:ArchiveClassesAtExit=");
+        }
+        if (!usingArchive) {
+            System.out.println("Tip: start with \"java @" + argFile.getPath() + " ...\" for a faster startup.");
+        }
+    }
+
+    // Remove store objects no version or instance references any more, in the background.
+    private static void collectGarbage() {
+        Thread gc = new Thread(() -> {
+            try {
+                long freed = STORE.gc();
+                if (freed > 0) {
+                    System.out.println("Object store: freed " + (freed / 1024) + " KB");
+                }
+            } catch (IOException e) {
+                System.err.println("Object store cleanup failed: " + e.getMessage());
+            }
+        }, "store-gc");
+        gc.setDaemon(true);
+        gc.start();
+    }
+
     // Create and display the main GUI window.
     private void createAndShowGUI() {
+        RepaintManager.setCurrentManager(new TimedRepaintManager());
         frame = new JFrame("Full Minecraft Launcher");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setSize(950, 650);
@@ -107,17 +254,37 @@ class FullMinecraftLauncher {
         mainPanel = new JPanel(cardLayout);
         mainPanel.setOpaque(false);
 
-        // Add login and launcher panels.
+        // Show the login panel first; the launcher panel is built right after the window opens.
         mainPanel.add(new LoginPanel(), LOGIN_PANEL);
-        mainPanel.add(new LauncherPanel(), LAUNCHER_PANEL);
 
         background.add(mainPanel, BorderLayout.CENTER);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                StartupTrace.mark("window open (interactive)");
+                SwingUtilities.invokeLater(() -> {
+                    ensureLauncherPanel();
+                    StartupTrace.finish("launcher panel built");
+                });
+            }
+        });
+        StartupTrace.mark("frame built");
         frame.setVisible(true);
     }
 
+    private void ensureLauncherPanel() {
+        if (launcherPanel == null) {
+            launcherPanel = new LauncherPanel();
+            mainPanel.add(launcherPanel, LAUNCHER_PANEL);
+        }
+    }
+
     // Utility method to switch panels.
     private void switchToPanel(String panelName) {
         System.out.println("Switching to panel: " + panelName);
+        if (LAUNCHER_PANEL.equals(panelName)) {
+            ensureLauncherPanel();
+        }
         cardLayout.show(mainPanel, panelName);
     }
 
@@ -128,7 +295,7 @@ class FullMinecraftLauncher {
             setBorder(new EmptyBorder(20, 20, 20, 20));
 
             JLabel title = new JLabel("Welcome to Full Minecraft Launcher", SwingConstants.CENTER);
-            title.setFont(new Font("Segoe UI", Font.BOLD, 24));
+            title.setFont(font(Font.BOLD, 24));
             title.setForeground(Color.WHITE);
             add(title, BorderLayout.NORTH);
 
@@ -145,7 +312,7 @@ class FullMinecraftLauncher {
             gbc.gridy = 0;
             JLabel usernameLabel = new JLabel("Username");
             usernameLabel.setForeground(Color.WHITE);
-            usernameLabel.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+            usernameLabel.setFont(font(Font.PLAIN, 16));
             formPanel.add(usernameLabel, gbc);
 
             gbc.gridy = 1;
@@ -157,7 +324,7 @@ class FullMinecraftLauncher {
             gbc.gridy = 2;
             JLabel passwordLabel = new JLabel("Password");
             passwordLabel.setForeground(Color.WHITE);
-            passwordLabel.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+            passwordLabel.setFont(font(Font.PLAIN, 16));
             formPanel.add(passwordLabel, gbc);
 
             gbc.gridy = 3;
@@ -177,23 +344,50 @@ class FullMinecraftLauncher {
 
             signInLaterButton.addActionListener(e -> {
                 System.out.println("Bypassing login...");
+                if (!usernameField.getText().trim().isEmpty()) {
+                    username = usernameField.getText().trim();
+                }
                 switchToPanel(LAUNCHER_PANEL);
             });
         }
     }
     // ------------------------------------------------------------------------
 
-    // ----- SIMULATED LAUNCHER PANEL WITH SIDEBAR, MODERN TABS, AND SETTINGS -----
+    // ----- LAUNCHER PANEL WITH SIDEBAR, MODERN TABS, AND SETTINGS -----
     class LauncherPanel extends RoundedPanel {
         private JTabbedPane tabbedPane;
         private JRadioButton forgeButton;
         private JRadioButton fabricButton;
         private JComboBox<String> versionComboBox;
+        private VersionCatalog.VersionListModel versionModel;
         private RoundedButton installButton;
         private RoundedButton playButton;
         private JProgressBar progressBar;
-        private JTextArea messageArea;
-        private boolean modLoaderInstalled = false;
+        private final FadePanel versionPanel = new FadePanel();
+        private final FadePanel modsPanel = new FadePanel();
+        private final FadePanel settingsPanel = new FadePanel();
+        private final FadePanel telemetryPanel = new FadePanel();
+        // Tabs not built yet, with the code that builds them.
+        private final Map<Component, Runnable> lazyTabs = new HashMap<>();
+        // Status messages and game output; bounded so it never grows during long sessions.
+        private final LogBuffer statusLog = new LogBuffer(2000);
+        // Coalesces progress from worker threads into progressBar at a fixed UI rate.
+        private final ProgressBus progress = new ProgressBus(statusLog);
+        private final LoaderInstaller installer = new LoaderInstaller(STORE, DOWNLOADER, CATALOG, VERSIONS_DIR,
+                ASSETS_DIR, NATIVES, PATCHES, ASSET_PACKS, JOURNAL, statusLog);
+        // The install currently running, so the install button can cancel it.
+        private TaskGraph runningInstall;
+        // Speculative download of the selected version and loader, and what it is for.
+        private TaskGraph prefetch;
+        private String prefetchKey;
+        private Timer prefetchDelay;
+        private javax.swing.table.DefaultTableModel modsModel;
+        private JLabel modsSummary;
+        private JTextField javaPathField;
+        private JSlider memorySlider;
+        private JComboBox<String> instanceBox;
+        // Launches waiting for a running game to exit and free its memory.
+        private final java.util.ArrayDeque<String[]> queuedLaunches = new java.util.ArrayDeque<>();
 
         public LauncherPanel() {
             super(new BorderLayout(10, 10), 25, new Color(55, 55, 55));
@@ -201,7 +395,7 @@ class FullMinecraftLauncher {
 
             // Top header
             JLabel header = new JLabel("Minecraft Launcher", SwingConstants.CENTER);
-            header.setFont(new Font("Segoe UI", Font.BOLD, 32));
+            header.setFont(font(Font.BOLD, 32));
             header.setForeground(Color.WHITE);
             add(header, BorderLayout.NORTH);
 
@@ -216,7 +410,7 @@ class FullMinecraftLauncher {
             sidebar.setLayout(new BoxLayout(sidebar, BoxLayout.Y_AXIS));
             // Logo area
             JLabel logoLabel = new JLabel("LOGO", SwingConstants.CENTER);
-            logoLabel.setFont(new Font("Segoe UI", Font.BOLD, 28));
+            logoLabel.setFont(font(Font.BOLD, 28));
             logoLabel.setForeground(Color.WHITE);
             logoLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
             logoLabel.setBorder(new EmptyBorder(10, 0, 20, 0));
@@ -228,7 +422,7 @@ class FullMinecraftLauncher {
             newsArea.setWrapStyleWord(true);
             newsArea.setOpaque(false);
             newsArea.setForeground(Color.LIGHT_GRAY);
-            newsArea.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+            newsArea.setFont(font(Font.PLAIN, 14));
             sidebar.add(newsArea);
 
             contentPanel.add(sidebar, BorderLayout.WEST);
@@ -253,13 +447,97 @@ class FullMinecraftLauncher {
             FadePanel homePanel = new FadePanel();
             homePanel.setLayout(new BorderLayout());
             JLabel welcomeLabel = new JLabel("Welcome to the Launcher!", SwingConstants.CENTER);
-            welcomeLabel.setFont(new Font("Segoe UI", Font.BOLD, 26));
+            welcomeLabel.setFont(font(Font.BOLD, 26));
             welcomeLabel.setForeground(Color.WHITE);
             homePanel.add(welcomeLabel, BorderLayout.CENTER);
             tabbedPane.addTab("Home", homePanel);
 
-            // Version Tab.
-            FadePanel versionPanel = new FadePanel();
+            // Other tabs are filled in the first time they are shown (or needed).
+            // Version list from the cached manifest, refreshed in the background.
+            versionModel = new VersionCatalog.VersionListModel();
+            versionModel.setEntries(CATALOG.loadCached());
+            refreshVersions();
+            addLazyTab("Version", versionPanel, this::buildVersionTab);
+
+            addLazyTab("Mods", modsPanel, this::buildModsTab);
+
+            addLazyTab("Settings", settingsPanel, this::buildSettingsTab);
+
+            if (TELEMETRY != null) {
+                addLazyTab("Telemetry", telemetryPanel, this::buildTelemetryTab);
+            }
+
+            // Set custom tab headers (larger and centered)
+            for (int i = 0; i < tabbedPane.getTabCount(); i++) {
+                tabbedPane.setTabComponentAt(i, new TabHeader(tabbedPane.getTitleAt(i)));
+            }
+
+            // Animate fade-in on tab change.
+            tabbedPane.getModel().addChangeListener(e -> {
+                int index = tabbedPane.getSelectedIndex();
+                Component comp = tabbedPane.getComponentAt(index);
+                buildTab(comp);
+                if (comp instanceof FadePanel) {
+                    animateFade((FadePanel) comp);
+                }
+                if ("Mods".equals(tabbedPane.getTitleAt(index))) {
+                    refreshMods();
+                }
+            });
+
+            contentPanel.add(tabbedPane, BorderLayout.CENTER);
+            add(contentPanel, BorderLayout.CENTER);
+
+            // Bottom panel for install/play controls.
+            JPanel bottomPanel = new JPanel(new BorderLayout());
+            bottomPanel.setOpaque(false);
+
+            JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 15, 15));
+            buttonPanel.setOpaque(false);
+            installButton = new RoundedButton("Install Mod Loader");
+            installButton.setPreferredSize(new Dimension(220, 60));
+            playButton = new RoundedButton("Play Minecraft");
+            playButton.setPreferredSize(new Dimension(220, 60));
+            buttonPanel.add(installButton);
+            buttonPanel.add(playButton);
+            bottomPanel.add(buttonPanel, BorderLayout.NORTH);
+
+            progressBar = new JProgressBar(0, 100);
+            progressBar.setStringPainted(true);
+            progress.attach(progressBar);
+            LogView statusView = new LogView(statusLog, 4);
+            statusView.setBackground(new Color(60, 60, 60));
+            statusView.setForeground(Color.WHITE);
+            JScrollPane scrollPane = new JScrollPane(statusView);
+            scrollPane.setBorder(BorderFactory.createTitledBorder("Status"));
+            bottomPanel.add(progressBar, BorderLayout.CENTER);
+            bottomPanel.add(scrollPane, BorderLayout.SOUTH);
+
+            add(bottomPanel, BorderLayout.SOUTH);
+
+            // Button actions.
+            installButton.addActionListener(e -> installModLoader());
+            playButton.addActionListener(e -> launchMinecraft());
+        }
+
+        private void addLazyTab(String title, FadePanel panel, Runnable builder) {
+            lazyTabs.put(panel, builder);
+            tabbedPane.addTab(title, panel);
+        }
+
+        // Build a lazily created tab if it has not been built yet.
+        private void buildTab(Component tab) {
+            Runnable builder = lazyTabs.remove(tab);
+            if (builder != null) {
+                long start = System.nanoTime();
+                builder.run();
+                tab.revalidate();
+                System.out.println("Built tab in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+        }
+
+        // Mod loader and version selection.
+        private void buildVersionTab() {
             versionPanel.setLayout(new GridBagLayout());
             GridBagConstraints gbc = new GridBagConstraints();
             gbc.insets = new Insets(8, 8, 8, 8);
@@ -268,7 +546,7 @@ class FullMinecraftLauncher {
             gbc.anchor = GridBagConstraints.WEST;
             JLabel modLoaderLabel = new JLabel("Select Mod Loader:");
             modLoaderLabel.setForeground(Color.WHITE);
-            modLoaderLabel.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+            modLoaderLabel.setFont(font(Font.PLAIN, 16));
             versionPanel.add(modLoaderLabel, gbc);
 
             gbc.gridy++;
@@ -290,30 +568,64 @@ class FullMinecraftLauncher {
             gbc.gridy++;
             JLabel versionLabel = new JLabel("Select Minecraft Version:");
             versionLabel.setForeground(Color.WHITE);
-            versionLabel.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+            versionLabel.setFont(font(Font.PLAIN, 16));
             versionPanel.add(versionLabel, gbc);
 
             gbc.gridy++;
-            // Updated version list with 1.21.4 added.
-            versionComboBox = new JComboBox<>(new String[]{"1.16.5", "1.17.1", "1.18.2", "1.19.4", "1.20.1", "1.21.4"});
+            versionComboBox = new JComboBox<>(versionModel);
+            // A prototype value keeps the combo box from measuring every entry.
+            versionComboBox.setPrototypeDisplayValue("1.21.4-pre-release 10");
+            versionComboBox.setMaximumRowCount(12);
             versionComboBox.setBackground(new Color(60, 60, 60));
             versionComboBox.setForeground(Color.WHITE);
-            versionComboBox.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+            versionComboBox.setFont(font(Font.PLAIN, 16));
             versionPanel.add(versionComboBox, gbc);
 
-            tabbedPane.addTab("Version", versionPanel);
+            gbc.gridy++;
+            JCheckBox snapshotsCheck = new JCheckBox("Show snapshots");
+            snapshotsCheck.setOpaque(false);
+            snapshotsCheck.setForeground(Color.WHITE);
+            snapshotsCheck.addActionListener(e -> versionModel.setShowSnapshots(snapshotsCheck.isSelected()));
+            versionPanel.add(snapshotsCheck, gbc);
+
+            // Only offer versions the selected mod loader supports.
+            forgeButton.addActionListener(e -> versionModel.setModLoader("Forge"));
+            fabricButton.addActionListener(e -> versionModel.setModLoader("Fabric"));
+            // Start fetching the selection in the background once it settles.
+            prefetchDelay = new Timer(PREFETCH_DELAY_MS, e -> prefetchSelection());
+            prefetchDelay.setRepeats(false);
+            forgeButton.addActionListener(e -> prefetchDelay.restart());
+            fabricButton.addActionListener(e -> prefetchDelay.restart());
+            versionComboBox.addActionListener(e -> prefetchDelay.restart());
+        }
 
-            // Mods Tab.
-            FadePanel modsPanel = new FadePanel();
+        // Mods found in MODS_DIR.
+        private void buildModsTab() {
             modsPanel.setLayout(new BorderLayout());
             JLabel modsLabel = new JLabel("Manage your mods", SwingConstants.CENTER);
-            modsLabel.setFont(new Font("Segoe UI", Font.PLAIN, 18));
+            modsLabel.setFont(font(Font.PLAIN, 18));
             modsLabel.setForeground(Color.WHITE);
-            modsPanel.add(modsLabel, BorderLayout.CENTER);
-            tabbedPane.addTab("Mods", modsPanel);
+            modsPanel.add(modsLabel, BorderLayout.NORTH);
+            modsModel = new javax.swing.table.DefaultTableModel(
+                    new Object[]{"Name", "Version", "Loader", "File"}, 0) {
+                @Override
+                public boolean isCellEditable(int row, int column) {
+                    return false;
+                }
+            };
+            JTable modsTable = new JTable(modsModel);
+            modsTable.setBackground(new Color(60, 60, 60));
+            modsTable.setForeground(Color.WHITE);
+            modsTable.setFillsViewportHeight(true);
+            modsTable.setAutoCreateRowSorter(true);
+            modsPanel.add(new JScrollPane(modsTable), BorderLayout.CENTER);
+            modsSummary = new JLabel(" ");
+            modsSummary.setForeground(Color.LIGHT_GRAY);
+            modsPanel.add(modsSummary, BorderLayout.SOUTH);
+        }
 
-            // Settings Tab with additional settings.
-            FadePanel settingsPanel = new FadePanel();
+        // Settings tab with additional settings.
+        private void buildSettingsTab() {
             settingsPanel.setLayout(new BorderLayout(10, 10));
             JPanel settingsMain = new JPanel(new GridBagLayout());
             settingsMain.setOpaque(false);
@@ -324,7 +636,7 @@ class FullMinecraftLauncher {
             sgbc.gridy = 0;
 
             JLabel settingsLabel = new JLabel("Settings");
-            settingsLabel.setFont(new Font("Segoe UI", Font.BOLD, 24));
+            settingsLabel.setFont(font(Font.BOLD, 24));
             settingsLabel.setForeground(Color.WHITE);
             settingsMain.add(settingsLabel, sgbc);
 
@@ -333,18 +645,18 @@ class FullMinecraftLauncher {
             JCheckBox autoUpdateCheck = new JCheckBox("Enable Auto-Update");
             autoUpdateCheck.setOpaque(false);
             autoUpdateCheck.setForeground(Color.WHITE);
-            autoUpdateCheck.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+            autoUpdateCheck.setFont(font(Font.PLAIN, 16));
             settingsMain.add(autoUpdateCheck, sgbc);
 
             // Memory Allocation slider.
             sgbc.gridy++;
             JLabel memoryLabel = new JLabel("Memory Allocation (MB):");
             memoryLabel.setForeground(Color.WHITE);
-            memoryLabel.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+            memoryLabel.setFont(font(Font.PLAIN, 16));
             settingsMain.add(memoryLabel, sgbc);
 
             sgbc.gridy++;
-            JSlider memorySlider = new JSlider(512, 4096, 2048);
+            memorySlider = new JSlider(512, 4096, 2048);
             memorySlider.setMajorTickSpacing(512);
             memorySlider.setMinorTickSpacing(128);
             memorySlider.setPaintTicks(true);
@@ -357,15 +669,30 @@ class FullMinecraftLauncher {
             sgbc.gridy++;
             JLabel javaPathLabel = new JLabel("Custom Java Path:");
             javaPathLabel.setForeground(Color.WHITE);
-            javaPathLabel.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+            javaPathLabel.setFont(font(Font.PLAIN, 16));
             settingsMain.add(javaPathLabel, sgbc);
 
             sgbc.gridy++;
-            JTextField javaPathField = new JTextField();
+            javaPathField = new JTextField();
+            javaPathField.setToolTipText("Leave empty to pick an installed Java that matches the game version");
             javaPathField.setPreferredSize(new Dimension(300, 30));
-            javaPathField.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+            javaPathField.setFont(font(Font.PLAIN, 16));
             settingsMain.add(javaPathField, sgbc);
 
+            // Instance the next launch runs in; typing a new name creates it.
+            sgbc.gridy++;
+            JLabel instanceLabel = new JLabel("Instance:");
+            instanceLabel.setForeground(Color.WHITE);
+            instanceLabel.setFont(font(Font.PLAIN, 16));
+            settingsMain.add(instanceLabel, sgbc);
+
+            sgbc.gridy++;
+            instanceBox = new JComboBox<>(INSTANCES.names().toArray(new String[0]));
+            instanceBox.setEditable(true);
+            instanceBox.setToolTipText("Each instance has its own saves, options and mods folder");
+            instanceBox.setFont(font(Font.PLAIN, 16));
+            settingsMain.add(instanceBox, sgbc);
+
             // Save Settings Button.
             sgbc.gridy++;
             RoundedButton saveSettingsButton = new RoundedButton("Save Settings");
@@ -378,189 +705,526 @@ class FullMinecraftLauncher {
             });
             settingsMain.add(saveSettingsButton, sgbc);
 
-            settingsPanel.add(settingsMain, BorderLayout.CENTER);
-            tabbedPane.addTab("Settings", settingsPanel);
-
-            // Set custom tab headers (larger and centered)
-            for (int i = 0; i < tabbedPane.getTabCount(); i++) {
-                tabbedPane.setTabComponentAt(i, new TabHeader(tabbedPane.getTitleAt(i)));
-            }
-
-            // Animate fade-in on tab change.
-            tabbedPane.getModel().addChangeListener(e -> {
-                int index = tabbedPane.getSelectedIndex();
-                Component comp = tabbedPane.getComponentAt(index);
-                if (comp instanceof FadePanel) {
-                    animateFade((FadePanel) comp);
+            // Re-hash every file of the selected version and re-download the bad ones.
+            sgbc.gridy++;
+            RoundedButton repairButton = new RoundedButton("Verify & Repair Files");
+            repairButton.addActionListener(e -> {
+                buildTab(versionPanel);
+                VersionCatalog.Entry entry = versionModel.getSelectedEntry();
+                String modLoader = forgeButton.isSelected() ? "Forge" : fabricButton.isSelected() ? "Fabric" : null;
+                if (entry == null || modLoader == null || !installer.isInstalled(entry.id, modLoader)) {
+                    JOptionPane.showMessageDialog(settingsPanel, "Select an installed version and mod loader first.",
+                            "Verify", JOptionPane.INFORMATION_MESSAGE);
+                    return;
                 }
+                verifyAndRepair(entry, modLoader, true, () -> log("Minecraft " + entry.id + " files are OK."));
             });
+            settingsMain.add(repairButton, sgbc);
 
-            contentPanel.add(tabbedPane, BorderLayout.CENTER);
-            add(contentPanel, BorderLayout.CENTER);
-
-            // Bottom panel for install/play controls.
-            JPanel bottomPanel = new JPanel(new BorderLayout());
-            bottomPanel.setOpaque(false);
+            // Write the launcher's phase timings so slow steps can be compared across machines.
+            sgbc.gridy++;
+            RoundedButton metricsButton = new RoundedButton("Export Metrics");
+            metricsButton.addActionListener(e -> {
+                try {
+                    Metrics.export(METRICS_DIR);
+                    log("Metrics written to " + new File(METRICS_DIR, "metrics.json") + " and metrics.prom");
+                } catch (IOException ex) {
+                    log("Could not write metrics: " + ex.getMessage());
+                }
+            });
+            settingsMain.add(metricsButton, sgbc);
 
-            JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 15, 15));
-            buttonPanel.setOpaque(false);
-            installButton = new RoundedButton("Install Mod Loader");
-            installButton.setPreferredSize(new Dimension(220, 60));
-            playButton = new RoundedButton("Play Minecraft");
-            playButton.setPreferredSize(new Dimension(220, 60));
-            buttonPanel.add(installButton);
-            buttonPanel.add(playButton);
-            bottomPanel.add(buttonPanel, BorderLayout.NORTH);
+            settingsPanel.add(settingsMain, BorderLayout.CENTER);
+        }
 
-            progressBar = new JProgressBar(0, 100);
-            progressBar.setStringPainted(true);
-            messageArea = new JTextArea(4, 40);
-            messageArea.setEditable(false);
-            messageArea.setLineWrap(true);
-            messageArea.setWrapStyleWord(true);
-            messageArea.setBackground(new Color(60, 60, 60));
-            messageArea.setForeground(Color.WHITE);
-            JScrollPane scrollPane = new JScrollPane(messageArea);
-            scrollPane.setBorder(BorderFactory.createTitledBorder("Status"));
-            bottomPanel.add(progressBar, BorderLayout.CENTER);
-            bottomPanel.add(scrollPane, BorderLayout.SOUTH);
+        // Live charts of the selected running game, updated while the tab is visible.
+        private void buildTelemetryTab() {
+            telemetryPanel.setLayout(new BorderLayout(10, 10));
+            JComboBox<String> gameBox = new JComboBox<>();
+            gameBox.setFont(font(Font.PLAIN, 16));
+            telemetryPanel.add(gameBox, BorderLayout.NORTH);
+
+            Sparkline heap = new Sparkline("Heap used (MB)");
+            Sparkline gc = new Sparkline("GC pauses (ms per " + GameTelemetry.INTERVAL_MILLIS / 1000 + " s)");
+            Sparkline cpu = new Sparkline("CPU (% of machine)");
+            Sparkline threads = new Sparkline("Threads");
+            Sparkline classes = new Sparkline("Classes loaded");
+            JPanel charts = new JPanel(new GridLayout(0, 1, 0, 6));
+            charts.setOpaque(false);
+            for (Sparkline chart : new Sparkline[]{heap, gc, cpu, threads, classes}) {
+                charts.add(chart);
+            }
+            telemetryPanel.add(charts, BorderLayout.CENTER);
+            JLabel status = new JLabel("No game running.");
+            status.setForeground(Color.LIGHT_GRAY);
+            telemetryPanel.add(status, BorderLayout.SOUTH);
+
+            List<GameTelemetry.Session> shown = new ArrayList<>();
+            Timer timer = new Timer((int) GameTelemetry.INTERVAL_MILLIS, e -> {
+                if (!telemetryPanel.isShowing()) {
+                    return;
+                }
+                List<GameTelemetry.Session> sessions = TELEMETRY.sessions();
+                if (!sessions.equals(shown)) {
+                    Object selected = gameBox.getSelectedItem();
+                    shown.clear();
+                    shown.addAll(sessions);
+                    gameBox.removeAllItems();
+                    for (GameTelemetry.Session session : sessions) {
+                        gameBox.addItem(session.name + " (pid " + session.process.pid() + ")");
+                    }
+                    if (selected != null) {
+                        gameBox.setSelectedItem(selected);
+                    }
+                }
+                int index = gameBox.getSelectedIndex();
+                if (index < 0 || index >= shown.size()) {
+                    status.setText("No game running.");
+                    return;
+                }
+                GameTelemetry.Session session = shown.get(index);
+                List<GameTelemetry.Sample> samples = session.samples();
+                int n = samples.size();
+                double[] heapValues = new double[n];
+                double[] gcValues = new double[n];
+                double[] cpuValues = new double[n];
+                double[] threadValues = new double[n];
+                double[] classValues = new double[n];
+                long heapMax = 0;
+                for (int i = 0; i < n; i++) {
+                    GameTelemetry.Sample sample = samples.get(i);
+                    heapValues[i] = sample.heapUsedMb;
+                    gcValues[i] = sample.gcPauseMillis;
+                    cpuValues[i] = sample.cpuPercent;
+                    threadValues[i] = sample.threads;
+                    classValues[i] = sample.classesLoaded;
+                    heapMax = Math.max(heapMax, sample.heapMaxMb);
+                }
+                heap.setValues(heapValues, heapMax);
+                gc.setValues(gcValues, 0);
+                cpu.setValues(cpuValues, 100);
+                threads.setValues(threadValues, 0);
+                classes.setValues(classValues, 0);
+                status.setText(n == 0 ? session.status() : session.status() + " - peak heap use "
+                        + session.peakHeapUsedMb() + " of " + heapMax + " MB");
+            });
+            timer.start();
+        }
 
-            add(bottomPanel, BorderLayout.SOUTH);
+        // Append a line to the status view.
+        private void log(String message) {
+            progress.message(message);
+        }
 
-            // Button actions.
-            installButton.addActionListener(e -> installModLoader());
-            playButton.addActionListener(e -> launchMinecraft());
+        // Re-validate the version manifest off the EDT and update the list if it changed.
+        private void refreshVersions() {
+            new SwingWorker<Boolean, Void>() {
+                @Override
+                protected Boolean doInBackground() throws Exception {
+                    return CATALOG.refresh();
+                }
+                @Override
+                protected void done() {
+                    try {
+                        if (get()) {
+                            versionModel.setEntries(CATALOG.entries());
+                        }
+                    } catch (InterruptedException | java.util.concurrent.ExecutionException ex) {
+                        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                        System.err.println("Could not refresh version list: " + cause.getMessage());
+                    }
+                }
+            }.execute();
         }
 
-        // Animate fade-in for a FadePanel.
-        private void animateFade(FadePanel panel) {
-            panel.setAlpha(0f);
-            Timer timer = new Timer(30, null);
-            timer.addActionListener(new ActionListener() {
-                float alpha = 0f;
+        // Rescan the mods directory off the EDT; unchanged jars come from the index.
+        private void refreshMods() {
+            new SwingWorker<List<ModIndex.ModFile>, Void>() {
+                @Override
+                protected List<ModIndex.ModFile> doInBackground() throws Exception {
+                    return MOD_INDEX.scan();
+                }
                 @Override
-                public void actionPerformed(ActionEvent e) {
-                    alpha += 0.05f;
-                    if (alpha >= 1f) {
-                        alpha = 1f;
-                        panel.setAlpha(alpha);
-                        timer.stop();
-                    } else {
-                        panel.setAlpha(alpha);
+                protected void done() {
+                    try {
+                        List<ModIndex.ModFile> files = get();
+                        modsModel.setRowCount(0);
+                        int mods = 0;
+                        for (ModIndex.ModFile file : files) {
+                            if (file.mods.isEmpty()) {
+                                modsModel.addRow(new Object[]{file.error != null ? "(unreadable)" : "(no metadata)",
+                                        "", "", file.fileName});
+                            }
+                            for (ModIndex.Mod mod : file.mods) {
+                                modsModel.addRow(new Object[]{mod.name, mod.version, mod.loader, file.fileName});
+                                mods++;
+                            }
+                        }
+                        modsSummary.setText(mods + " mods in " + files.size() + " files");
+                    } catch (InterruptedException | java.util.concurrent.ExecutionException ex) {
+                        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                        modsSummary.setText("Could not read mods: " + cause.getMessage());
                     }
                 }
-            });
-            timer.start();
+            }.execute();
+        }
+
+        // Animate fade-in for a FadePanel; a new tab's fade finishes the previous one.
+        private void animateFade(FadePanel panel) {
+            panel.startFade();
+            ANIMATOR.animate(tabbedPane, 600, panel::setAlpha, panel::endFade);
+        }
+
+        // Download the selected version and loader in the background so a later install
+        // or launch finds them local. A new selection cancels the old prefetch.
+        private void prefetchSelection() {
+            if (!PREFETCH || runningInstall != null || (!forgeButton.isSelected() && !fabricButton.isSelected())) {
+                return;
+            }
+            String modLoader = forgeButton.isSelected() ? "Forge" : "Fabric";
+            VersionCatalog.Entry entry = versionModel.getSelectedEntry();
+            if (entry == null || installer.isInstalled(entry.id, modLoader)) {
+                cancelPrefetch();
+                return;
+            }
+            String key = LoaderInstaller.profileId(entry.id, modLoader);
+            if (key.equals(prefetchKey)) {
+                return;
+            }
+            cancelPrefetch();
+            TaskGraph graph = installer.prefetch(entry, modLoader);
+            prefetch = graph;
+            prefetchKey = key;
+            graph.start().whenComplete((v, t) -> SwingUtilities.invokeLater(() -> {
+                if (t == null) {
+                    log("Minecraft " + entry.id + " with " + modLoader + " is downloaded and ready to install.");
+                } else if (!graph.isCancelled()) {
+                    System.err.println("Prefetch of " + key + " stopped: " + t.getMessage());
+                }
+                if (prefetch == graph) {
+                    prefetch = null;
+                }
+            }));
+        }
+
+        private void cancelPrefetch() {
+            if (prefetch != null) {
+                prefetch.cancel();
+                prefetch = null;
+            }
+            prefetchKey = null;
         }
 
-        // Simulate mod loader installation.
+        // Install the selected mod loader and game version, or cancel a running install.
         private void installModLoader() {
+            if (runningInstall != null) {
+                log("Cancelling installation...");
+                runningInstall.cancel();
+                return;
+            }
             System.out.println("Installing mod loader...");
+            buildTab(versionPanel);
             if (!forgeButton.isSelected() && !fabricButton.isSelected()) {
                 JOptionPane.showMessageDialog(this, "Please select a mod loader to install.", "Error",
                         JOptionPane.ERROR_MESSAGE);
                 return;
             }
             String modLoader = forgeButton.isSelected() ? "Forge" : "Fabric";
-            messageArea.setText("Installing " + modLoader + "...\n");
-            installButton.setEnabled(false);
+            VersionCatalog.Entry entry = versionModel.getSelectedEntry();
+            if (entry == null) {
+                JOptionPane.showMessageDialog(this, "Please select a Minecraft version.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            log("Installing " + modLoader + " for Minecraft " + entry.id + "...");
+            installButton.setText("Cancel Install");
             playButton.setEnabled(false);
-            SwingWorker<Void, Integer> installer = new SwingWorker<Void, Integer>() {
+            runInstall(entry, modLoader, () -> log("Installation complete!"));
+        }
+
+        // Run an install graph in the background; onSuccess runs on the EDT.
+        private void runInstall(VersionCatalog.Entry entry, String modLoader, Runnable onSuccess) {
+            // Foreground work takes the connections; whatever the prefetch finished is kept.
+            cancelPrefetch();
+            ProgressBus.Task steps = progress.start("Install " + modLoader, 100);
+            ProgressBus.Task bytes = progress.startTransfer("Downloads", -1);
+            // The graph finds its downloads as it runs; each one raises the total for the ETA.
+            TaskGraph graph = installer.plan(entry, modLoader, new ArtifactDownloader.Listener() {
                 @Override
-                protected Void doInBackground() throws Exception {
-                    for (int i = 0; i <= 100; i += 5) {
-                        TimeUnit.MILLISECONDS.sleep(100);
-                        publish(i);
+                public void transferred(ArtifactDownloader.Artifact artifact, long n) {
+                    bytes.add(n);
+                }
+                @Override
+                public void started(ArtifactDownloader.Artifact artifact) {
+                    if (artifact.size > 0) {
+                        bytes.grow(artifact.size);
                     }
-                    return null;
                 }
+            });
+            graph.setListener((node, completed, total) -> steps.set(completed * 100L / total));
+            runningInstall = graph;
+            SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
                 @Override
-                protected void process(java.util.List<Integer> chunks) {
-                    int latest = chunks.get(chunks.size() - 1);
-                    progressBar.setValue(latest);
-                    messageArea.append("Installation progress: " + latest + "%\n");
+                protected Void doInBackground() throws Exception {
+                    try {
+                        graph.run();
+                    } finally {
+                        steps.finish();
+                        bytes.finish();
+                    }
+                    return null;
                 }
                 @Override
                 protected void done() {
-                    modLoaderInstalled = true;
-                    messageArea.append("Installation complete!\n");
-                    installButton.setEnabled(true);
+                    runningInstall = null;
+                    installButton.setText("Install Mod Loader");
                     playButton.setEnabled(true);
+                    try {
+                        get();
+                        onSuccess.run();
+                    } catch (InterruptedException | java.util.concurrent.ExecutionException
+                            | java.util.concurrent.CancellationException ex) {
+                        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                        log(graph.isCancelled() ? "Installation cancelled." : "Installation failed: " + cause.getMessage());
+                    }
                 }
             };
-            installer.execute();
+            worker.execute();
         }
 
-        // Simulate launching Minecraft.
+        // Launch the installed profile, repairing missing files first.
         private void launchMinecraft() {
             System.out.println("Launching Minecraft...");
+            buildTab(versionPanel);
+            buildTab(settingsPanel);
             if (!forgeButton.isSelected() && !fabricButton.isSelected()) {
                 JOptionPane.showMessageDialog(this, "Please select a mod loader.", "Error", JOptionPane.ERROR_MESSAGE);
                 return;
             }
-            if (!modLoaderInstalled) {
+            String modLoader = forgeButton.isSelected() ? "Forge" : "Fabric";
+            VersionCatalog.Entry entry = versionModel.getSelectedEntry();
+            if (entry == null) {
+                JOptionPane.showMessageDialog(this, "Please select a Minecraft version.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            String version = entry.id;
+            if (!installer.isInstalled(version, modLoader)) {
                 JOptionPane.showMessageDialog(this, "Mod loader is not installed. Please install it first.", "Error",
                         JOptionPane.ERROR_MESSAGE);
                 return;
             }
-            String modLoader = forgeButton.isSelected() ? "Forge" : "Fabric";
-            String version = (String) versionComboBox.getSelectedItem();
-            messageArea.append("Launching Minecraft " + version + " with " + modLoader + "...\n");
-
-            // Determine jar file name based on selected version.
-            String jarName = "minecraft-" + version + ".jar";
-            File jarFile = new File(LAUNCHER_DIR, jarName);
-
-            if (!jarFile.exists()) {
-                messageArea.append("Minecraft " + version + " not found locally. Downloading...\n");
-                SwingWorker<Void, Integer> downloader = new SwingWorker<Void, Integer>() {
-                    @Override
-                    protected Void doInBackground() throws Exception {
-                        for (int i = 0; i <= 100; i += 10) {
-                            TimeUnit.MILLISECONDS.sleep(100);
-                            publish(i);
+            String instance = selectedInstance();
+            if (!Instances.isValidName(instance)) {
+                JOptionPane.showMessageDialog(this, "Instance names may only use letters, digits, '.', '_' and '-'.",
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            checkMods(instance, version, modLoader, () -> {
+                log("Launching Minecraft " + version + " with " + modLoader + " in instance " + instance + "...");
+                verifyAndRepair(entry, modLoader, false, () -> launchJar(instance, version, modLoader));
+            });
+        }
+
+        // Check the profile's files off the EDT, re-download the damaged or missing ones,
+        // then run onSuccess. A full check hashes every file instead of only changed ones.
+        private void verifyAndRepair(VersionCatalog.Entry entry, String modLoader, boolean full, Runnable onSuccess) {
+            String version = entry.id;
+            playButton.setEnabled(false);
+            ProgressBus.Task task = progress.start("Verify files", 1);
+            SwingWorker<IntegrityJournal.Report, Void> worker = new SwingWorker<IntegrityJournal.Report, Void>() {
+                @Override
+                protected IntegrityJournal.Report doInBackground() throws Exception {
+                    try {
+                        IntegrityJournal.Report report = installer.verify(version, modLoader, full);
+                        if (!report.bad.isEmpty()) {
+                            installer.discard(version, modLoader, report.bad);
                         }
-                        return null;
+                        return report;
+                    } finally {
+                        task.finish();
+                    }
+                }
+                @Override
+                protected void done() {
+                    playButton.setEnabled(true);
+                    IntegrityJournal.Report report;
+                    try {
+                        report = get();
+                    } catch (InterruptedException | java.util.concurrent.ExecutionException ex) {
+                        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                        log("Could not verify Minecraft " + version + ": " + cause.getMessage());
+                        return;
+                    }
+                    if (full || report.hashed > 0) {
+                        log("Verified Minecraft " + version + ": " + report);
                     }
-                    @Override
-                    protected void process(java.util.List<Integer> chunks) {
-                        int latest = chunks.get(chunks.size() - 1);
-                        progressBar.setValue(latest);
-                        messageArea.append("Download progress: " + latest + "%\n");
+                    if (report.bad.isEmpty()) {
+                        onSuccess.run();
+                        return;
                     }
-                    @Override
-                    protected void done() {
-                        try {
-                            jarFile.createNewFile();
-                        } catch (IOException ex) {
-                            ex.printStackTrace();
+                    int shown = 0;
+                    for (String path : report.bad) {
+                        if (shown++ < 10) {
+                            log("  damaged or missing: " + path);
                         }
-                        messageArea.append("Download complete!\n");
-                        launchJar(jarName, version, modLoader);
                     }
-                };
-                downloader.execute();
-            } else {
-                launchJar(jarName, version, modLoader);
-            }
+                    log("Repairing " + report.bad.size() + " files...");
+                    runInstall(entry, modLoader, onSuccess);
+                }
+            };
+            worker.execute();
         }
 
-        private void launchJar(String jarName, String version, String modLoader) {
-            ProcessBuilder pb = new ProcessBuilder(
-                    "java",
-                    "-jar",
-                    jarName,
-                    "--version", version,
-                    "--modloader", modLoader
-            );
-            pb.directory(LAUNCHER_DIR);
-            try {
-                pb.start();
-                messageArea.append("Minecraft launched (simulated)!\n");
-            } catch (IOException ex) {
-                JOptionPane.showMessageDialog(this, "Error launching Minecraft: " + ex.getMessage(), "Launch Error",
+        // Resolve the mod set against the loader and game version off the EDT, then run
+        // onLaunch unless the user chose not to launch with broken mods.
+        private void checkMods(String instance, String version, String modLoader, Runnable onLaunch) {
+            playButton.setEnabled(false);
+            new SwingWorker<ModResolver.Result, Void>() {
+                @Override
+                protected ModResolver.Result doInBackground() throws Exception {
+                    return RESOLVER.resolve(INSTANCES.mods(instance).scan(), modLoader, version);
+                }
+                @Override
+                protected void done() {
+                    playButton.setEnabled(true);
+                    ModResolver.Result result;
+                    try {
+                        result = get();
+                    } catch (InterruptedException | java.util.concurrent.ExecutionException ex) {
+                        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                        log("Could not check mods: " + cause.getMessage());
+                        onLaunch.run();
+                        return;
+                    }
+                    for (ModResolver.Issue issue : result.issues) {
+                        log(issue.toString());
+                    }
+                    if (!result.hasErrors()) {
+                        onLaunch.run();
+                        return;
+                    }
+                    StringBuilder message = new StringBuilder("Some mods will not load:\n\n");
+                    int shown = 0;
+                    for (ModResolver.Issue issue : result.issues) {
+                        if (issue.severity == ModResolver.Severity.ERROR && shown++ < 15) {
+                            message.append("- ").append(issue.message).append('\n');
+                        }
+                    }
+                    message.append("\nLaunch anyway?");
+                    if (JOptionPane.showConfirmDialog(LauncherPanel.this, message.toString(), "Mod Problems",
+                            JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE) == JOptionPane.YES_OPTION) {
+                        onLaunch.run();
+                    }
+                }
+            }.execute();
+        }
+
+        private String selectedInstance() {
+            Object selected = instanceBox.getEditor().getItem();
+            String name = selected != null ? selected.toString().trim() : "";
+            return name.isEmpty() ? Instances.DEFAULT : name;
+        }
+
+        // Prepare the launch off the EDT (mod scan, runtime selection, natives, assets and
+        // class data archives all touch the disk or fork), then admit and start it.
+        private void launchJar(String instanceName, String version, String modLoader) {
+            int memoryMb = memorySlider.getValue();
+            String javaPath = javaPathField.getText();
+            String player = username;
+            playButton.setEnabled(false);
+            new SwingWorker<GameLaunch, Void>() {
+                private Instances.Instance instance;
+
+                @Override
+                protected GameLaunch doInBackground() throws Exception {
+                    try {
+                        instance = INSTANCES.load(instanceName);
+                        if (!instance.gameDir.isDirectory() && !instance.gameDir.mkdirs()) {
+                            throw new IOException("Cannot create " + instance.gameDir);
+                        }
+                    } catch (IOException ex) {
+                        throw new IOException("Cannot load instance " + instanceName + ": " + ex.getMessage(), ex);
+                    }
+                    List<ModIndex.ModFile> mods;
+                    try {
+                        mods = INSTANCES.mods(instanceName).scan();
+                    } catch (IOException ex) {
+                        mods = new ArrayList<>();
+                    }
+                    try {
+                        return GameLaunch.prepare(installer, RUNTIMES, TUNER, CDS, INSTANCES, instance, version,
+                                modLoader, memoryMb, javaPath, player, mods, ASSETS_DIR);
+                    } catch (IOException ex) {
+                        throw new IOException("Cannot prepare launch: " + ex.getMessage(), ex);
+                    }
+                }
+                @Override
+                protected void done() {
+                    playButton.setEnabled(true);
+                    try {
+                        startGame(instance, version, modLoader, get());
+                    } catch (InterruptedException | java.util.concurrent.ExecutionException ex) {
+                        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                        log(cause.getMessage());
+                    }
+                }
+            }.execute();
+        }
+
+        // Admit a prepared launch and hand it to the start scheduler; runs on the EDT.
+        private void startGame(Instances.Instance instance, String version, String modLoader, GameLaunch launch) {
+            String instanceName = instance.name;
+            JvmTuner.Plan plan = launch.plan;
+            if (!TUNER.admit(plan)) {
+                int choice = JOptionPane.showConfirmDialog(this, "Running games already use "
+                        + TUNER.reservedMb() + " MB of " + TUNER.totalMb() + " MB. Starting another one with "
+                        + plan.heapMb + " MB would overcommit memory.\n\nStart it when a running game exits?",
+                        "Not Enough Memory", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+                if (choice == JOptionPane.YES_OPTION) {
+                    queuedLaunches.add(new String[]{instanceName, version, modLoader});
+                    log("Minecraft " + version + " queued until memory is free.");
+                }
+                return;
+            }
+            for (String note : launch.notes) {
+                log(note);
+            }
+            ProcessBuilder pb = new ProcessBuilder(launch.command);
+            pb.directory(instance.gameDir);
+            String name = "minecraft-" + instanceName + "-" + version;
+            if (STARTS.waiting() > 0) {
+                log("Minecraft " + version + " will start after the games already starting.");
+            }
+            // Starts are spaced out so concurrent games do not all warm up at once.
+            STARTS.submit(() -> SUPERVISOR.launch(name, pb, statusLog, (h, code, millis) -> {
+                statusLog.add("Minecraft " + version + " (" + instanceName + ") exited with code " + code
+                        + " after " + (millis / 1000) + " s");
+                TUNER.release(plan);
+                GameTelemetry.Session session = TELEMETRY != null ? TELEMETRY.stop(h.process) : null;
+                if (session != null) {
+                    statusLog.add(session.summary());
+                }
+                SwingUtilities.invokeLater(this::launchQueued);
+            }).process).whenComplete((process, error) -> SwingUtilities.invokeLater(() -> {
+                if (error == null) {
+                    if (TELEMETRY != null) {
+                        TELEMETRY.watch(instanceName, name, process);
+                    }
+                    log("Minecraft launched with " + plan.heapMb + " MB heap (pid " + process.pid() + ")");
+                    return;
+                }
+                TUNER.release(plan);
+                JOptionPane.showMessageDialog(this, "Error launching Minecraft: " + error.getMessage(), "Launch Error",
                         JOptionPane.ERROR_MESSAGE);
-                messageArea.append("Error launching Minecraft.\n");
+                log("Error launching Minecraft.");
+            }));
+        }
+
+        // Start the oldest queued launch, if any; it queues again if memory is still short.
+        private void launchQueued() {
+            String[] next = queuedLaunches.poll();
+            if (next != null) {
+                log("Starting queued Minecraft " + next[1] + "...");
+                launchJar(next[0], next[1], next[2]);
             }
         }
 
@@ -570,7 +1234,7 @@ class FullMinecraftLauncher {
                 setOpaque(false);
                 setLayout(new BorderLayout());
                 JLabel label = new JLabel(title, SwingConstants.CENTER);
-                label.setFont(new Font("Segoe UI", Font.BOLD, 20));
+                label.setFont(font(Font.BOLD, 20));
                 label.setForeground(Color.WHITE);
                 add(label, BorderLayout.CENTER);
                 // Set a preferred size for the tab header.
@@ -582,24 +1246,90 @@ class FullMinecraftLauncher {
 
     // ------------------- CUSTOM COMPONENTS -------------------
 
+    // Pre-rendered component backgrounds. Each entry is an image of the component at its
+    // current size (and device scale) for one visual state; a resize drops them all. The
+    // images are compatible (managed) images, so Java2D keeps an accelerated copy where
+    // the pipeline supports it and a plain blit everywhere else.
+    static class RenderCache {
+        interface Painter {
+            void paint(Graphics2D g, int width, int height);
+        }
+
+        private final Map<Object, java.awt.image.BufferedImage> images = new HashMap<>();
+        private final boolean opaque;
+        private int width = -1;
+        private int height = -1;
+        private double scale;
+
+        RenderCache() {
+            this(false);
+        }
+
+        // An opaque cache is for painters that cover every pixel; opaque images blit faster.
+        RenderCache(boolean opaque) {
+            this.opaque = opaque;
+        }
+
+        // Draw the image for state, rendering it with painter on a miss.
+        void paint(Graphics g, JComponent c, Object state, Painter painter) {
+            int w = c.getWidth();
+            int h = c.getHeight();
+            if (w <= 0 || h <= 0) {
+                return;
+            }
+            double s = ((Graphics2D) g).getTransform().getScaleX();
+            if (w != width || h != height || s != scale) {
+                images.clear();
+                width = w;
+                height = h;
+                scale = s;
+            }
+            java.awt.image.BufferedImage image = images.get(state);
+            if (image == null) {
+                int pw = (int) Math.ceil(w * s);
+                int ph = (int) Math.ceil(h * s);
+                GraphicsConfiguration gc = c.getGraphicsConfiguration();
+                int transparency = opaque ? Transparency.OPAQUE : Transparency.TRANSLUCENT;
+                image = gc != null ? gc.createCompatibleImage(pw, ph, transparency)
+                        : new java.awt.image.BufferedImage(pw, ph, opaque ? java.awt.image.BufferedImage.TYPE_INT_RGB
+                        : java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE);
+                Graphics2D ig = image.createGraphics();
+                ig.scale(s, s);
+                ig.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                ig.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                painter.paint(ig, w, h);
+                ig.dispose();
+                images.put(state, image);
+            }
+            g.drawImage(image, 0, 0, w, h, null);
+        }
+    }
+
+    private static final Color GRADIENT_START = new Color(30, 30, 30);
+    private static final Color GRADIENT_END = new Color(60, 60, 60);
+    private static final Color BORDER_COLOR = new Color(80, 80, 80);
+    private static final Color BUTTON_COLOR = new Color(50, 50, 50);
+    private static final Color BUTTON_HOVER_COLOR = new Color(60, 60, 60);
+    private static final Color BUTTON_PRESSED_COLOR = new Color(70, 70, 70);
+    private static final Color FIELD_COLOR = new Color(60, 60, 60);
+
     // Gradient background panel.
     static class GradientPanel extends JPanel {
+        private final RenderCache cache = new RenderCache(true);
+
         @Override
         protected void paintComponent(Graphics g) {
-            Graphics2D g2 = (Graphics2D) g;
-            int width = getWidth();
-            int height = getHeight();
-            Color color1 = new Color(30, 30, 30);
-            Color color2 = new Color(60, 60, 60);
-            GradientPaint gp = new GradientPaint(0, 0, color1, width, height, color2);
-            g2.setPaint(gp);
-            g2.fillRect(0, 0, width, height);
+            cache.paint(g, this, "gradient", (g2, width, height) -> {
+                g2.setPaint(new GradientPaint(0, 0, GRADIENT_START, width, height, GRADIENT_END));
+                g2.fillRect(0, 0, width, height);
+            });
             super.paintComponent(g);
         }
     }
 
     // A custom rounded panel.
     static class RoundedPanel extends JPanel {
+        private final RenderCache cache = new RenderCache();
         private int cornerRadius;
         private Color backgroundColor;
 
@@ -612,22 +1342,19 @@ class FullMinecraftLauncher {
 
         @Override
         protected void paintComponent(Graphics g) {
-            Dimension arcs = new Dimension(cornerRadius, cornerRadius);
-            int width = getWidth();
-            int height = getHeight();
-            Graphics2D g2 = (Graphics2D) g.create();
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g2.setColor(backgroundColor);
-            g2.fillRoundRect(0, 0, width, height, arcs.width, arcs.height);
-            g2.setColor(new Color(80, 80, 80));
-            g2.drawRoundRect(0, 0, width - 1, height - 1, arcs.width, arcs.height);
-            g2.dispose();
+            cache.paint(g, this, "background", (g2, width, height) -> {
+                g2.setColor(backgroundColor);
+                g2.fillRoundRect(0, 0, width, height, cornerRadius, cornerRadius);
+                g2.setColor(BORDER_COLOR);
+                g2.drawRoundRect(0, 0, width - 1, height - 1, cornerRadius, cornerRadius);
+            });
             super.paintComponent(g);
         }
     }
 
     // A custom rounded button with hover effect (pop-out disabled).
     static class RoundedButton extends JButton {
+        private final RenderCache cache = new RenderCache();
         private boolean hover = false;
 
         public RoundedButton(String label) {
@@ -636,7 +1363,7 @@ class FullMinecraftLauncher {
             setFocusPainted(false);
             setContentAreaFilled(false);
             setForeground(Color.WHITE);
-            setFont(new Font("Segoe UI", Font.BOLD, 20));
+            setFont(font(Font.BOLD, 20));
             addMouseListener(new MouseAdapter() {
                 @Override
                 public void mouseEntered(MouseEvent e) {
@@ -653,38 +1380,47 @@ class FullMinecraftLauncher {
 
         @Override
         protected void paintComponent(Graphics g) {
-            Graphics2D g2 = (Graphics2D) g.create();
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            if (getModel().isPressed()) {
-                g2.setColor(new Color(70, 70, 70));
-            } else if (hover) {
-                g2.setColor(new Color(60, 60, 60));
-            } else {
-                g2.setColor(new Color(50, 50, 50));
-            }
-            g2.fillRoundRect(0, 0, getWidth(), getHeight(), 25, 25);
-            g2.setColor(getForeground());
-            FontMetrics fm = g2.getFontMetrics();
-            Rectangle textBounds = fm.getStringBounds(getText(), g2).getBounds();
-            int textX = (getWidth() - textBounds.width) / 2;
-            int textY = (getHeight() - textBounds.height) / 2 + fm.getAscent();
-            g2.drawString(getText(), textX, textY);
-            g2.dispose();
+            Color fill = getModel().isPressed() ? BUTTON_PRESSED_COLOR : hover ? BUTTON_HOVER_COLOR : BUTTON_COLOR;
+            String text = getText();
+            // Background, border and label in one image per state and label text.
+            cache.paint(g, this, java.util.Arrays.asList(fill, text, getForeground(), getFont()),
+                    (g2, width, height) -> {
+                        g2.setColor(fill);
+                        g2.fillRoundRect(0, 0, width, height, 25, 25);
+                        g2.setColor(BORDER_COLOR);
+                        g2.drawRoundRect(0, 0, width - 1, height - 1, 25, 25);
+                        g2.setColor(getForeground());
+                        g2.setFont(getFont());
+                        FontMetrics fm = g2.getFontMetrics();
+                        Rectangle textBounds = fm.getStringBounds(text, g2).getBounds();
+                        int textX = (width - textBounds.width) / 2;
+                        int textY = (height - textBounds.height) / 2 + fm.getAscent();
+                        g2.drawString(text, textX, textY);
+                    });
             super.paintComponent(g);
         }
 
         @Override
         public void paintBorder(Graphics g) {
-            Graphics2D g2 = (Graphics2D) g.create();
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g2.setColor(new Color(80, 80, 80));
-            g2.drawRoundRect(0, 0, getWidth() - 1, getHeight() - 1, 25, 25);
-            g2.dispose();
+            // Drawn with the cached background.
         }
     }
 
+    // Cached background and border shared by the rounded text fields.
+    private static void paintFieldBackground(RenderCache cache, Graphics g, JComponent field, int arcWidth,
+                                             int arcHeight) {
+        Color background = field.getBackground();
+        cache.paint(g, field, background, (g2, width, height) -> {
+            g2.setColor(background);
+            g2.fillRoundRect(0, 0, width, height, arcWidth, arcHeight);
+            g2.setColor(BORDER_COLOR);
+            g2.drawRoundRect(0, 0, width - 1, height - 1, arcWidth, arcHeight);
+        });
+    }
+
     // A custom rounded text field.
     static class RoundedTextField extends JTextField {
+        private final RenderCache cache = new RenderCache();
         private int arcWidth = 25;
         private int arcHeight = 25;
 
@@ -693,32 +1429,25 @@ class FullMinecraftLauncher {
             setOpaque(false);
             setBorder(BorderFactory.createEmptyBorder(8, 12, 8, 12));
             setForeground(Color.WHITE);
-            setBackground(new Color(60, 60, 60));
-            setFont(new Font("Segoe UI", Font.PLAIN, 16));
+            setBackground(FIELD_COLOR);
+            setFont(font(Font.PLAIN, 16));
         }
 
         @Override
         protected void paintComponent(Graphics g) {
-            Graphics2D g2 = (Graphics2D) g.create();
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g2.setColor(getBackground());
-            g2.fillRoundRect(0, 0, getWidth(), getHeight(), arcWidth, arcHeight);
-            super.paintComponent(g2);
-            g2.dispose();
+            paintFieldBackground(cache, g, this, arcWidth, arcHeight);
+            super.paintComponent(g);
         }
 
         @Override
         protected void paintBorder(Graphics g) {
-            Graphics2D g2 = (Graphics2D) g.create();
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g2.setColor(new Color(80, 80, 80));
-            g2.drawRoundRect(0, 0, getWidth()-1, getHeight()-1, arcWidth, arcHeight);
-            g2.dispose();
+            // Drawn with the cached background.
         }
     }
 
     // A custom rounded password field.
     static class RoundedPasswordField extends JPasswordField {
+        private final RenderCache cache = new RenderCache();
         private int arcWidth = 25;
         private int arcHeight = 25;
 
@@ -727,33 +1456,240 @@ class FullMinecraftLauncher {
             setOpaque(false);
             setBorder(BorderFactory.createEmptyBorder(8, 12, 8, 12));
             setForeground(Color.WHITE);
-            setBackground(new Color(60, 60, 60));
-            setFont(new Font("Segoe UI", Font.PLAIN, 16));
+            setBackground(FIELD_COLOR);
+            setFont(font(Font.PLAIN, 16));
         }
 
         @Override
         protected void paintComponent(Graphics g) {
-            Graphics2D g2 = (Graphics2D) g.create();
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g2.setColor(getBackground());
-            g2.fillRoundRect(0, 0, getWidth(), getHeight(), arcWidth, arcHeight);
-            super.paintComponent(g2);
-            g2.dispose();
+            paintFieldBackground(cache, g, this, arcWidth, arcHeight);
+            super.paintComponent(g);
         }
 
         @Override
         protected void paintBorder(Graphics g) {
+            // Drawn with the cached background.
+        }
+    }
+
+    // Read-only list view over a LogBuffer. A timer polls the buffer and repaints only when
+    // it changed, so writers on other threads never touch Swing.
+    static class LogView extends JList<String> {
+        private final LogBuffer buffer;
+        private final LinesModel model = new LinesModel();
+        private long seenVersion = -1;
+
+        public LogView(LogBuffer buffer, int visibleRows) {
+            this.buffer = buffer;
+            setModel(model);
+            setVisibleRowCount(visibleRows);
+            setFocusable(false);
+            // Fixed cell height: no per-row measuring, even with thousands of lines.
+            setPrototypeCellValue("Xg");
+            setFixedCellWidth(-1);
+            Timer timer = new Timer(100, e -> refresh());
+            timer.start();
+        }
+
+        private void refresh() {
+            long version = buffer.version();
+            if (version == seenVersion) {
+                return;
+            }
+            seenVersion = version;
+            model.setLines(buffer.snapshot());
+            if (model.getSize() > 0) {
+                ensureIndexIsVisible(model.getSize() - 1);
+            }
+        }
+
+        private static class LinesModel extends AbstractListModel<String> {
+            private String[] lines = new String[0];
+
+            void setLines(String[] newLines) {
+                int oldSize = lines.length;
+                lines = newLines;
+                if (newLines.length < oldSize) {
+                    fireIntervalRemoved(this, newLines.length, oldSize - 1);
+                } else if (newLines.length > oldSize) {
+                    fireIntervalAdded(this, oldSize, newLines.length - 1);
+                }
+                if (Math.min(oldSize, newLines.length) > 0) {
+                    fireContentsChanged(this, 0, Math.min(oldSize, newLines.length) - 1);
+                }
+            }
+
+            @Override
+            public int getSize() {
+                return lines.length;
+            }
+
+            @Override
+            public String getElementAt(int index) {
+                return lines[index];
+            }
+        }
+    }
+
+    // One clock for every UI animation.
+    //
+    // Animations are keyed; starting one under a key that is already animating finishes
+    // the old one at once, so fast tab switching never leaves fades fighting each other.
+    // Progress is time-based, and the tick rate drops when frames are expensive to paint
+    // (software rendering) so the EDT stays responsive.
+    static class Animator {
+        interface Frame {
+            // t runs from 0 to 1 over the animation's duration.
+            void update(float t);
+        }
+
+        private static final int MIN_DELAY_MS = 16;
+        private static final int MAX_DELAY_MS = 50;
+
+        private static class Animation {
+            final long startNanos = System.nanoTime();
+            final long durationNanos;
+            final Frame frame;
+            final Runnable onDone;
+
+            Animation(long durationMs, Frame frame, Runnable onDone) {
+                this.durationNanos = Math.max(1, durationMs) * 1_000_000L;
+                this.frame = frame;
+                this.onDone = onDone;
+            }
+
+            void finish() {
+                frame.update(1f);
+                if (onDone != null) {
+                    onDone.run();
+                }
+            }
+        }
+
+        private final Map<Object, Animation> running = new java.util.LinkedHashMap<>();
+        private final Timer timer = new Timer(MIN_DELAY_MS, e -> tick());
+        // Average time to paint one animation frame, in nanoseconds.
+        private double paintCost;
+
+        // Start an animation on the EDT, finishing any other animation with the same key.
+        void animate(Object key, long durationMs, Frame frame, Runnable onDone) {
+            Animation previous = running.remove(key);
+            if (previous != null) {
+                previous.finish();
+            }
+            frame.update(0f);
+            running.put(key, new Animation(durationMs, frame, onDone));
+            if (!timer.isRunning()) {
+                timer.start();
+            }
+        }
+
+        // Called by animated components with the time one frame took to paint.
+        void reportPaint(long nanos) {
+            paintCost = paintCost == 0 ? nanos : paintCost * 0.8 + nanos * 0.2;
+        }
+
+        private void tick() {
+            long now = System.nanoTime();
+            java.util.Iterator<Animation> it = running.values().iterator();
+            while (it.hasNext()) {
+                Animation animation = it.next();
+                float t = (float) (now - animation.startNanos) / animation.durationNanos;
+                if (t >= 1f) {
+                    it.remove();
+                    animation.finish();
+                } else {
+                    animation.frame.update(t);
+                }
+            }
+            if (running.isEmpty()) {
+                timer.stop();
+                return;
+            }
+            // Leave the EDT at least three times the paint cost between frames.
+            int delay = (int) Math.max(MIN_DELAY_MS, Math.min(MAX_DELAY_MS, paintCost * 4 / 1_000_000));
+            timer.setDelay(delay);
+        }
+    }
+
+    private static final Animator ANIMATOR = new Animator();
+
+    // Times every repaint of the window into launcher_edt_paint_seconds.
+    static class TimedRepaintManager extends RepaintManager {
+        private final Metrics.Histogram paints = Metrics.timer("launcher_edt_paint_seconds");
+
+        @Override
+        public void paintDirtyRegions() {
+            Metrics.Span span = Metrics.paintSpan(paints);
+            try {
+                super.paintDirtyRegions();
+            } finally {
+                span.close();
+            }
+        }
+    }
+
+    // A titled line chart of the latest values. The scale runs from 0 to max, or to the
+    // largest value when max is 0.
+    static class Sparkline extends JComponent {
+        private static final Color LINE_COLOR = new Color(115, 164, 209);
+        private final String title;
+        private double[] values = new double[0];
+        private double max;
+
+        Sparkline(String title) {
+            this.title = title;
+            setPreferredSize(new Dimension(400, 60));
+            setFont(font(Font.PLAIN, 12));
+        }
+
+        void setValues(double[] values, double max) {
+            this.values = values;
+            this.max = max;
+            repaint();
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
             Graphics2D g2 = (Graphics2D) g.create();
             g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g2.setColor(new Color(80, 80, 80));
-            g2.drawRoundRect(0, 0, getWidth()-1, getHeight()-1, arcWidth, arcHeight);
+            int width = getWidth();
+            int height = getHeight();
+            g2.setColor(FIELD_COLOR);
+            g2.fillRect(0, 0, width, height);
+            double top = max;
+            for (double value : values) {
+                top = Math.max(top, value);
+            }
+            String label = title;
+            if (values.length > 0) {
+                double last = values[values.length - 1];
+                label += ": " + (last == Math.rint(last) ? String.valueOf((long) last)
+                        : String.format(java.util.Locale.ROOT, "%.1f", last));
+            }
+            g2.setColor(Color.LIGHT_GRAY);
+            g2.drawString(label, 6, g2.getFontMetrics().getAscent() + 2);
+            if (values.length > 1 && top > 0) {
+                int[] xs = new int[values.length];
+                int[] ys = new int[values.length];
+                int plotHeight = height - 4;
+                for (int i = 0; i < values.length; i++) {
+                    xs[i] = (int) ((long) i * (width - 1) / (values.length - 1));
+                    ys[i] = height - 2 - (int) Math.round(values[i] / top * plotHeight);
+                }
+                g2.setColor(LINE_COLOR);
+                g2.drawPolyline(xs, ys, values.length);
+            }
             g2.dispose();
         }
     }
 
-    // A custom fadeable panel.
+    // A custom fadeable panel. While fading it paints a snapshot of its children taken
+    // at the start of the fade, so each frame is one blit instead of a full repaint.
     static class FadePanel extends JPanel {
         private float alpha = 1.0f;
+        private java.awt.image.BufferedImage snapshot;
+        private boolean fading;
 
         public FadePanel() {
             super();
@@ -769,12 +1705,41 @@ class FullMinecraftLauncher {
             return alpha;
         }
 
+        void startFade() {
+            fading = true;
+            snapshot = null;
+        }
+
+        void endFade() {
+            fading = false;
+            snapshot = null;
+            repaint();
+        }
+
         @Override
-        protected void paintComponent(Graphics g) {
+        public void paint(Graphics g) {
+            if (!fading || getWidth() <= 0 || getHeight() <= 0) {
+                super.paint(g);
+                return;
+            }
+            long start = System.nanoTime();
+            double scale = ((Graphics2D) g).getTransform().getScaleX();
+            int w = (int) Math.ceil(getWidth() * scale);
+            int h = (int) Math.ceil(getHeight() * scale);
+            if (snapshot == null || snapshot.getWidth() != w || snapshot.getHeight() != h) {
+                GraphicsConfiguration gc = getGraphicsConfiguration();
+                snapshot = gc != null ? gc.createCompatibleImage(w, h, Transparency.TRANSLUCENT)
+                        : new java.awt.image.BufferedImage(w, h, java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE);
+                Graphics2D sg = snapshot.createGraphics();
+                sg.scale(scale, scale);
+                super.paint(sg);
+                sg.dispose();
+            }
             Graphics2D g2 = (Graphics2D) g.create();
             g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
-            super.paintComponent(g2);
+            g2.drawImage(snapshot, 0, 0, getWidth(), getHeight(), null);
             g2.dispose();
+            ANIMATOR.reportPaint(System.nanoTime() - start);
         }
     }
 }
@@ -0,0 +1,411 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and histograms for the launcher's own phases, and JFR events for the same.
+//
+// Series are named and labelled the Prometheus way: counter("launcher_download_bytes_total",
+// "host", "example.com"). Recording is lock-free and cheap enough for the paint path.
+// span() times a block of code into a histogram and, when the JDK has Flight Recorder,
+// also emits a launcher.Phase event, so a recording started with
+// -XX:StartFlightRecording shows the phases next to GC, IO and lock events. export()
+// writes metrics.json and metrics.prom (Prometheus text format, suitable for the node
+// exporter's textfile collector); the window and the command line do that on exit.
+final class Metrics {
+    // Seconds; from a fast paint to a slow install.
+    static final double[] TIME_BUCKETS = {0.001, 0.0025, 0.005, 0.01, 0.016, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5,
+            5, 10, 30, 60, 300};
+    private static final boolean JFR = ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+    // Series key ("name{labels}") -> Counter or Histogram.
+    private static final Map<String, Object> series = new ConcurrentHashMap<>();
+    private static boolean exportHook;
+
+    private Metrics() {
+    }
+
+    static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        void add(long n) {
+            value.add(n);
+        }
+
+        void increment() {
+            value.increment();
+        }
+
+        long value() {
+            return value.sum();
+        }
+    }
+
+    static final class Histogram {
+        private final double[] bounds;
+        // Per bucket, not cumulative; the last one is +Inf.
+        private final LongAdder[] buckets;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+        private final AtomicLong maxBits = new AtomicLong(Double.doubleToLongBits(0));
+
+        private Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void observe(double value) {
+            int i = Arrays.binarySearch(bounds, value);
+            buckets[i >= 0 ? i : -i - 1].increment();
+            count.increment();
+            sum.add(value);
+            long bits;
+            while (value > Double.longBitsToDouble(bits = maxBits.get())
+                    && !maxBits.compareAndSet(bits, Double.doubleToLongBits(value))) {
+                // another thread raised the maximum; compare again
+            }
+        }
+
+        // A duration, for histograms in seconds.
+        void recordNanos(long nanos) {
+            observe(nanos / 1e9);
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        // Upper bound of the bucket that holds quantile q, capped at the maximum seen.
+        double quantile(double q) {
+            long total = count.sum();
+            if (total == 0) {
+                return 0;
+            }
+            double max = Double.longBitsToDouble(maxBits.get());
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                seen += buckets[i].sum();
+                if (seen >= rank) {
+                    return Math.min(bounds[i], max);
+                }
+            }
+            return max;
+        }
+    }
+
+    static Counter counter(String name, String... labels) {
+        return (Counter) series.computeIfAbsent(key(name, labels), k -> new Counter());
+    }
+
+    // A histogram of durations in seconds.
+    static Histogram timer(String name, String... labels) {
+        return histogram(name, TIME_BUCKETS, labels);
+    }
+
+    // bounds must be sorted; a series keeps the bounds it was created with.
+    static Histogram histogram(String name, double[] bounds, String... labels) {
+        return (Histogram) series.computeIfAbsent(key(name, labels), k -> new Histogram(bounds));
+    }
+
+    // ----- spans -----
+
+    // Times a block into a histogram and a JFR event: try (Metrics.Span span = ...) { }
+    static final class Span implements AutoCloseable {
+        private final Histogram histogram;
+        private final long start = System.nanoTime();
+        private final Object event;
+
+        private Span(Histogram histogram, Object event) {
+            this.histogram = histogram;
+            this.event = event;
+        }
+
+        // What the phase worked on, for the JFR event only (names of files, tasks...).
+        Span detail(String detail) {
+            if (event != null) {
+                Events.detail(event, detail);
+            }
+            return this;
+        }
+
+        Span bytes(long bytes) {
+            if (event != null) {
+                Events.bytes(event, bytes);
+            }
+            return this;
+        }
+
+        @Override
+        public void close() {
+            histogram.recordNanos(System.nanoTime() - start);
+            if (event != null) {
+                Events.commit(event);
+            }
+        }
+    }
+
+    static Span span(String name, String... labels) {
+        return new Span(timer(name, labels), JFR ? Events.phase(name, labels) : null);
+    }
+
+    // A span for one repaint of the window; its JFR event is only kept for slow paints.
+    static Span paintSpan(Histogram histogram) {
+        return new Span(histogram, JFR ? Events.paint() : null);
+    }
+
+    // Record a phase that already ended, such as startup steps measured by timestamps.
+    // Its JFR event spans the call only and carries the duration in its detail.
+    static void record(String name, long nanos, String... labels) {
+        timer(name, labels).recordNanos(nanos);
+        if (JFR) {
+            Object event = Events.phase(name, labels);
+            Events.detail(event, TimeUnit.NANOSECONDS.toMillis(nanos) + " ms");
+            Events.commit(event);
+        }
+    }
+
+    // Kept apart so the jdk.jfr classes are only loaded when the module is present.
+    private static final class Events {
+        @jdk.jfr.Name("launcher.Phase")
+        @jdk.jfr.Label("Launcher Phase")
+        @jdk.jfr.Category("Launcher")
+        static class PhaseEvent extends jdk.jfr.Event {
+            @jdk.jfr.Label("Metric")
+            String metric;
+            @jdk.jfr.Label("Labels")
+            String labels;
+            @jdk.jfr.Label("Detail")
+            String detail;
+            @jdk.jfr.Label("Bytes")
+            @jdk.jfr.DataAmount
+            long bytes;
+        }
+
+        @jdk.jfr.Name("launcher.Paint")
+        @jdk.jfr.Label("Launcher Window Paint")
+        @jdk.jfr.Category("Launcher")
+        @jdk.jfr.Threshold("16 ms")
+        static class PaintEvent extends jdk.jfr.Event {
+        }
+
+        static Object phase(String name, String[] labels) {
+            PhaseEvent event = new PhaseEvent();
+            if (event.isEnabled()) {
+                event.metric = name;
+                event.labels = labels.length > 0 ? key("", labels) : null;
+                event.begin();
+            }
+            return event;
+        }
+
+        static Object paint() {
+            PaintEvent event = new PaintEvent();
+            event.begin();
+            return event;
+        }
+
+        static void detail(Object event, String detail) {
+            if (event instanceof PhaseEvent) {
+                ((PhaseEvent) event).detail = detail;
+            }
+        }
+
+        static void bytes(Object event, long bytes) {
+            if (event instanceof PhaseEvent) {
+                ((PhaseEvent) event).bytes = bytes;
+            }
+        }
+
+        static void commit(Object event) {
+            jdk.jfr.Event jfrEvent = (jdk.jfr.Event) event;
+            jfrEvent.end();
+            if (jfrEvent.shouldCommit()) {
+                jfrEvent.commit();
+            }
+        }
+    }
+
+    // ----- export -----
+
+    // Write metrics.json and metrics.prom into dir, replacing earlier reports.
+    static void export(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        write(new File(dir, "metrics.json"), Json.write(toJson()) + "\n");
+        write(new File(dir, "metrics.prom"), toPrometheus());
+    }
+
+    // Export into dir when the JVM exits.
+    static synchronized void exportOnExit(File dir) {
+        if (exportHook) {
+            return;
+        }
+        exportHook = true;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                export(dir);
+            } catch (IOException e) {
+                System.err.println("Could not write metrics: " + e.getMessage());
+            }
+        }, "metrics-export"));
+    }
+
+    static Map<String, Object> toJson() {
+        List<Object> list = new ArrayList<>();
+        for (Map.Entry<String, Object> item : sorted()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            String key = item.getKey();
+            int brace = key.indexOf('{');
+            entry.put("name", brace < 0 ? key : key.substring(0, brace));
+            entry.put("labels", brace < 0 ? new LinkedHashMap<String, Object>() : parseLabels(key.substring(brace)));
+            if (item.getValue() instanceof Counter) {
+                entry.put("type", "counter");
+                entry.put("value", ((Counter) item.getValue()).value());
+            } else {
+                Histogram histogram = (Histogram) item.getValue();
+                entry.put("type", "histogram");
+                entry.put("count", histogram.count());
+                entry.put("sum", round(histogram.sum.sum()));
+                entry.put("max", round(Double.longBitsToDouble(histogram.maxBits.get())));
+                entry.put("p50", round(histogram.quantile(0.5)));
+                entry.put("p90", round(histogram.quantile(0.9)));
+                entry.put("p99", round(histogram.quantile(0.99)));
+            }
+            list.add(entry);
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("generatedAt", System.currentTimeMillis());
+        report.put("metrics", list);
+        return report;
+    }
+
+    static String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        String family = null;
+        for (Map.Entry<String, Object> item : sorted()) {
+            String key = item.getKey();
+            int brace = key.indexOf('{');
+            String name = brace < 0 ? key : key.substring(0, brace);
+            String labels = brace < 0 ? "" : key.substring(brace + 1, key.length() - 1);
+            if (!name.equals(family)) {
+                family = name;
+                sb.append("# TYPE ").append(name).append(' ')
+                        .append(item.getValue() instanceof Counter ? "counter" : "histogram").append('\n');
+            }
+            if (item.getValue() instanceof Counter) {
+                sb.append(key).append(' ').append(((Counter) item.getValue()).value()).append('\n');
+                continue;
+            }
+            Histogram histogram = (Histogram) item.getValue();
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0;
+            for (int i = 0; i <= histogram.bounds.length; i++) {
+                cumulative += histogram.buckets[i].sum();
+                String le = i < histogram.bounds.length ? number(histogram.bounds[i]) : "+Inf";
+                sb.append(name).append("_bucket{").append(prefix).append("le=\"").append(le).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+            sb.append(name).append("_sum").append(suffix).append(' ').append(number(histogram.sum.sum())).append('\n');
+            sb.append(name).append("_count").append(suffix).append(' ').append(histogram.count()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // ----- helpers -----
+
+    private static String key(String name, String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs: " + Arrays.toString(labels));
+        }
+        if (labels.length == 0) {
+            return name;
+        }
+        StringBuilder sb = new StringBuilder(name).append('{');
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"");
+            String value = String.valueOf(labels[i + 1]);
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') {
+                    sb.append('\\').append(c);
+                } else if (c == '\n') {
+                    sb.append("\\n");
+                } else {
+                    sb.append(c);
+                }
+            }
+            sb.append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static Map<String, Object> parseLabels(String labels) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        int i = 1;
+        while (i < labels.length() - 1) {
+            int eq = labels.indexOf('=', i);
+            String name = labels.substring(i, eq);
+            StringBuilder value = new StringBuilder();
+            int j = eq + 2;
+            for (; labels.charAt(j) != '"'; j++) {
+                char c = labels.charAt(j);
+                if (c == '\\') {
+                    c = labels.charAt(++j);
+                    value.append(c == 'n' ? '\n' : c);
+                } else {
+                    value.append(c);
+                }
+            }
+            result.put(name, value.toString());
+            i = j + 2;
+        }
+        return result;
+    }
+
+    private static List<Map.Entry<String, Object>> sorted() {
+        List<Map.Entry<String, Object>> entries = new ArrayList<>(series.entrySet());
+        // By metric name first, so each family is contiguous: "a_b_c" sorts between "a_b" and "a_b{x}".
+        entries.sort(Comparator.comparing((Map.Entry<String, Object> e) -> family(e.getKey()))
+                .thenComparing(Map.Entry::getKey));
+        return entries;
+    }
+
+    private static String family(String key) {
+        int brace = key.indexOf('{');
+        return brace < 0 ? key : key.substring(0, brace);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1e6) / 1e6;
+    }
+
+    private static String number(double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value) ? String.valueOf((long) value)
+                : String.valueOf(value);
+    }
+
+    private static void write(File file, String text) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer out = new OutputStreamWriter(Files.newOutputStream(tmp.toPath()), StandardCharsets.UTF_8)) {
+            out.write(text);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
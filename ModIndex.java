@@ -0,0 +1,606 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// Index of the jars in the mods directory.
+//
+// Each jar is opened with a FileChannel and only its zip central directory and the
+// metadata entries we need (fabric.mod.json, META-INF/mods.toml, mcmod.info and, for
+// Forge's ${file.jarVersion}, the manifest) are read; nothing else is decompressed.
+// The exception are the jars a Fabric mod bundles (its "jars"), which are read whole to
+// learn the mod ids they provide.
+// Results are kept in a binary index keyed by file name, size and mtime, so a rescan
+// only opens jars that changed. Changed jars are parsed in parallel.
+class ModIndex {
+    private static final int INDEX_MAGIC = 0x4D4F4449; // "MODI"
+    private static final int INDEX_FORMAT = 2;
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int MAX_METADATA_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_BUNDLED_JAR_SIZE = 32 * 1024 * 1024;
+    private static final int MAX_BUNDLE_DEPTH = 3;
+
+    static final String FABRIC = "fabric";
+    static final String FORGE = "forge";
+
+    // A dependency or conflict declared by a mod. range uses the declaring loader's syntax.
+    static class Dependency {
+        final String modId;
+        final String range;
+        final boolean mandatory;
+
+        Dependency(String modId, String range, boolean mandatory) {
+            this.modId = modId;
+            this.range = range;
+            this.mandatory = mandatory;
+        }
+    }
+
+    // One mod declared by a jar (a jar may declare several).
+    static class Mod {
+        final String id;
+        final String name;
+        final String version;
+        final String loader;
+        final List<Dependency> depends;
+        final List<Dependency> breaks;
+        // Other mod ids this mod makes available, with their versions (null if unknown):
+        // Fabric "provides" aliases and the mods in the jars it bundles.
+        final Map<String, String> provides;
+
+        Mod(String id, String name, String version, String loader, List<Dependency> depends, List<Dependency> breaks,
+            Map<String, String> provides) {
+            this.id = id;
+            this.name = name;
+            this.version = version;
+            this.loader = loader;
+            this.depends = depends;
+            this.breaks = breaks;
+            this.provides = provides;
+        }
+    }
+
+    // One jar in the mods directory.
+    static class ModFile {
+        final String fileName;
+        final long size;
+        final long lastModified;
+        final List<Mod> mods;
+        final String error;
+
+        ModFile(String fileName, long size, long lastModified, List<Mod> mods, String error) {
+            this.fileName = fileName;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.mods = mods;
+            this.error = error;
+        }
+    }
+
+    private final File modsDir;
+    private final File indexFile;
+    private Map<String, ModFile> files = new LinkedHashMap<>();
+    private boolean loaded;
+
+    ModIndex(File modsDir, File indexFile) {
+        this.modsDir = modsDir;
+        this.indexFile = indexFile;
+    }
+
+    // Bring the index up to date with the mods directory and return its files, sorted by name.
+    synchronized List<ModFile> scan() throws IOException {
+        if (!loaded) {
+            loadIndex();
+            loaded = true;
+        }
+        File[] jars = modsDir.listFiles((dir, name) -> {
+            String lower = name.toLowerCase(Locale.ROOT);
+            return lower.endsWith(".jar") || lower.endsWith(".zip");
+        });
+        if (jars == null) {
+            jars = new File[0];
+        }
+        Map<String, ModFile> updated = new TreeMap<>();
+        List<File> changed = new ArrayList<>();
+        for (File jar : jars) {
+            ModFile cached = files.get(jar.getName());
+            if (cached != null && cached.size == jar.length() && cached.lastModified == jar.lastModified()) {
+                updated.put(jar.getName(), cached);
+            } else {
+                changed.add(jar);
+            }
+        }
+        if (!changed.isEmpty()) {
+            int threads = Math.min(changed.size(), Runtime.getRuntime().availableProcessors());
+            ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "mod-indexer");
+                t.setDaemon(true);
+                return t;
+            });
+            try {
+                List<Future<ModFile>> results = new ArrayList<>();
+                for (File jar : changed) {
+                    results.add(pool.submit(() -> read(jar)));
+                }
+                for (Future<ModFile> result : results) {
+                    ModFile file = result.get();
+                    updated.put(file.fileName, file);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Mod scan interrupted");
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        boolean dirty = !changed.isEmpty() || updated.size() != files.size();
+        files = updated;
+        if (dirty) {
+            saveIndex();
+        }
+        return new ArrayList<>(files.values());
+    }
+
+    // ----- jar reading -----
+
+    static ModFile read(File jar) {
+        long size = jar.length();
+        long lastModified = jar.lastModified();
+        try (FileChannel channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ)) {
+            Map<String, long[]> entries = centralDirectory(channel, "fabric.mod.json", "META-INF/mods.toml",
+                    "mcmod.info", "META-INF/MANIFEST.MF");
+            List<Mod> mods = new ArrayList<>();
+            if (entries.containsKey("fabric.mod.json")) {
+                Object json = parseJson(readEntry(channel, entries.get("fabric.mod.json"), MAX_METADATA_SIZE));
+                Map<String, String> bundled = new LinkedHashMap<>();
+                List<String> jars = bundledJars(json);
+                if (!jars.isEmpty()) {
+                    Map<String, long[]> jarEntries = centralDirectory(channel, jars.toArray(new String[0]));
+                    for (String path : jars) {
+                        if (jarEntries.containsKey(path)) {
+                            readBundled(readEntry(channel, jarEntries.get(path), MAX_BUNDLED_JAR_SIZE), bundled, 1);
+                        }
+                    }
+                }
+                mods.add(parseFabric(json, bundled));
+            }
+            if (entries.containsKey("META-INF/mods.toml")) {
+                String jarVersion = null;
+                if (entries.containsKey("META-INF/MANIFEST.MF")) {
+                    jarVersion = manifestVersion(readEntry(channel, entries.get("META-INF/MANIFEST.MF"), MAX_METADATA_SIZE));
+                }
+                mods.addAll(parseModsToml(readEntry(channel, entries.get("META-INF/mods.toml"), MAX_METADATA_SIZE), jarVersion));
+            } else if (entries.containsKey("mcmod.info")) {
+                mods.addAll(parseMcmodInfo(readEntry(channel, entries.get("mcmod.info"), MAX_METADATA_SIZE)));
+            }
+            return new ModFile(jar.getName(), size, lastModified, mods, null);
+        } catch (IOException | RuntimeException e) {
+            return new ModFile(jar.getName(), size, lastModified, Collections.emptyList(),
+                    e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    // Find the wanted entries in the central directory. Values are
+    // {local header offset, compressed size, method}.
+    private static Map<String, long[]> centralDirectory(FileChannel channel, String... wanted) throws IOException {
+        long fileSize = channel.size();
+        int tailSize = (int) Math.min(fileSize, 22 + 65535);
+        ByteBuffer tail = readFully(channel, fileSize - tailSize, tailSize);
+        int eocd = -1;
+        for (int i = tailSize - 22; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new IOException("Not a zip file");
+        }
+        long cenSize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long cenOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (cenSize == 0xFFFFFFFFL || cenOffset == 0xFFFFFFFFL || cenOffset + cenSize > fileSize) {
+            throw new IOException("Unsupported zip layout (zip64)");
+        }
+        ByteBuffer cen = readFully(channel, cenOffset, (int) cenSize);
+        Set<String> names = new HashSet<>(Arrays.asList(wanted));
+        Map<String, long[]> found = new HashMap<>();
+        int pos = 0;
+        while (pos + 46 <= cen.limit() && cen.getInt(pos) == CEN_SIGNATURE && found.size() < names.size()) {
+            int method = cen.getShort(pos + 10) & 0xFFFF;
+            long compressed = cen.getInt(pos + 20) & 0xFFFFFFFFL;
+            int nameLength = cen.getShort(pos + 28) & 0xFFFF;
+            int extraLength = cen.getShort(pos + 30) & 0xFFFF;
+            int commentLength = cen.getShort(pos + 32) & 0xFFFF;
+            long localOffset = cen.getInt(pos + 42) & 0xFFFFFFFFL;
+            byte[] nameBytes = new byte[nameLength];
+            cen.position(pos + 46);
+            cen.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+            if (names.contains(name)) {
+                found.put(name, new long[]{localOffset, compressed, method});
+            }
+            pos += 46 + nameLength + extraLength + commentLength;
+        }
+        return found;
+    }
+
+    private static byte[] readEntry(FileChannel channel, long[] entry, int maxSize) throws IOException {
+        long compressed = entry[1];
+        if (compressed > maxSize) {
+            throw new IOException("Metadata entry too large");
+        }
+        ByteBuffer local = readFully(channel, entry[0], 30);
+        if (local.getInt(0) != LOC_SIGNATURE) {
+            throw new IOException("Bad local header");
+        }
+        long dataOffset = entry[0] + 30 + (local.getShort(26) & 0xFFFF) + (local.getShort(28) & 0xFFFF);
+        ByteBuffer data = readFully(channel, dataOffset, (int) compressed);
+        byte[] raw = new byte[(int) compressed];
+        data.get(raw);
+        if (entry[2] == 0) {
+            return raw;
+        }
+        if (entry[2] != 8) {
+            throw new IOException("Unsupported compression method " + entry[2]);
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(raw);
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) compressed * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                out.write(buffer, 0, n);
+                if (out.size() > maxSize) {
+                    throw new IOException("Metadata entry too large");
+                }
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt metadata entry", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated zip file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // ----- metadata formats -----
+
+    // Add the mods of a jar bundled in a Fabric mod to provides: its id, its aliases and,
+    // in turn, those of the jars it bundles. A bundled jar that cannot be read is skipped.
+    private static void readBundled(byte[] jar, Map<String, String> provides, int depth) {
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(jar))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (entry.getName().equals("fabric.mod.json")
+                        || depth < MAX_BUNDLE_DEPTH && entry.getName().endsWith(".jar")) {
+                    entries.put(entry.getName(), Json.readAll(in));
+                }
+            }
+            if (!entries.containsKey("fabric.mod.json")) {
+                return;
+            }
+            Object json = parseJson(entries.get("fabric.mod.json"));
+            for (String path : bundledJars(json)) {
+                if (entries.containsKey(path)) {
+                    readBundled(entries.get(path), provides, depth + 1);
+                }
+            }
+            Mod mod = parseFabric(json, Collections.emptyMap());
+            if (mod.id != null) {
+                provides.putIfAbsent(mod.id, mod.version);
+            }
+            for (Map.Entry<String, String> alias : mod.provides.entrySet()) {
+                provides.putIfAbsent(alias.getKey(), alias.getValue());
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Skipping unreadable bundled jar: " + e.getMessage());
+        }
+    }
+
+    private static List<String> bundledJars(Object json) {
+        List<String> paths = new ArrayList<>();
+        for (Object jar : Json.array(json, "jars")) {
+            String file = Json.string(jar, "file");
+            if (file != null) {
+                paths.add(file);
+            }
+        }
+        return paths;
+    }
+
+    private static Object parseJson(byte[] data) throws IOException {
+        return Json.parse(new String(data, StandardCharsets.UTF_8));
+    }
+
+    // bundled holds the ids of the mods in the jars this one bundles.
+    private static Mod parseFabric(Object json, Map<String, String> bundled) {
+        List<Dependency> depends = new ArrayList<>();
+        for (Map.Entry<String, Object> dep : Json.object(json, "depends").entrySet()) {
+            depends.add(new Dependency(dep.getKey(), fabricRange(dep.getValue()), true));
+        }
+        List<Dependency> breaks = new ArrayList<>();
+        for (Map.Entry<String, Object> dep : Json.object(json, "breaks").entrySet()) {
+            breaks.add(new Dependency(dep.getKey(), fabricRange(dep.getValue()), true));
+        }
+        String id = Json.string(json, "id");
+        String name = Json.string(json, "name");
+        String version = Json.string(json, "version");
+        Map<String, String> provides = new LinkedHashMap<>();
+        for (Object alias : Json.array(json, "provides")) {
+            provides.put(String.valueOf(alias), version);
+        }
+        for (Map.Entry<String, String> mod : bundled.entrySet()) {
+            provides.putIfAbsent(mod.getKey(), mod.getValue());
+        }
+        return new Mod(id, name != null ? name : id, version, FABRIC, depends, breaks, provides);
+    }
+
+    // Fabric allows a single range or a list of alternatives; alternatives are joined with "||".
+    private static String fabricRange(Object value) {
+        if (value instanceof List) {
+            StringBuilder sb = new StringBuilder();
+            for (Object item : (List<?>) value) {
+                sb.append(sb.length() > 0 ? " || " : "").append(item);
+            }
+            return sb.toString();
+        }
+        return value != null ? value.toString() : "*";
+    }
+
+    // Reads the subset of TOML that mods.toml uses: [[mods]] and [[dependencies.<id>]]
+    // tables with string, boolean and number values.
+    private static List<Mod> parseModsToml(byte[] data, String jarVersion) {
+        List<Map<String, String>> modTables = new ArrayList<>();
+        Map<String, List<Map<String, String>>> dependencyTables = new HashMap<>();
+        Map<String, String> current = null;
+        String[] lines = new String(data, StandardCharsets.UTF_8).split("\r?\n");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("[[") && line.contains("]]")) {
+                String table = line.substring(2, line.indexOf("]]")).trim();
+                current = new HashMap<>();
+                if (table.equals("mods")) {
+                    modTables.add(current);
+                } else if (table.startsWith("dependencies.")) {
+                    dependencyTables.computeIfAbsent(unquote(table.substring("dependencies.".length())),
+                            k -> new ArrayList<>()).add(current);
+                } else {
+                    current = null;
+                }
+                continue;
+            }
+            if (line.startsWith("[")) {
+                current = null;
+                continue;
+            }
+            int eq = line.indexOf('=');
+            if (eq < 0) {
+                continue;
+            }
+            String key = line.substring(0, eq).trim();
+            String value = line.substring(eq + 1).trim();
+            if (value.startsWith("'''") || value.startsWith("\"\"\"")) {
+                // Multi-line string (usually the description): skip to its end.
+                String quote = value.substring(0, 3);
+                while (value.indexOf(quote, 3) < 0 && i + 1 < lines.length) {
+                    value = quote + lines[++i];
+                }
+                continue;
+            }
+            if (current != null) {
+                current.put(key, unquote(stripComment(value)));
+            }
+        }
+        List<Mod> mods = new ArrayList<>();
+        for (Map<String, String> table : modTables) {
+            String id = table.get("modId");
+            String version = table.get("version");
+            if ("${file.jarVersion}".equals(version)) {
+                version = jarVersion;
+            }
+            List<Dependency> depends = new ArrayList<>();
+            List<Dependency> breaks = new ArrayList<>();
+            for (Map<String, String> dep : dependencyTables.getOrDefault(id, Collections.emptyList())) {
+                String side = dep.getOrDefault("side", "BOTH");
+                if (side.equalsIgnoreCase("SERVER")) {
+                    continue;
+                }
+                String type = dep.get("type");
+                String range = dep.getOrDefault("versionRange", "");
+                if ("incompatible".equalsIgnoreCase(type)) {
+                    breaks.add(new Dependency(dep.get("modId"), range, true));
+                } else {
+                    boolean mandatory = type != null ? type.equalsIgnoreCase("required")
+                            : Boolean.parseBoolean(dep.getOrDefault("mandatory", "false"));
+                    depends.add(new Dependency(dep.get("modId"), range, mandatory));
+                }
+            }
+            String name = table.get("displayName");
+            mods.add(new Mod(id, name != null ? name : id, version, FORGE, depends, breaks, Collections.emptyMap()));
+        }
+        return mods;
+    }
+
+    private static List<Mod> parseMcmodInfo(byte[] data) throws IOException {
+        Object json = Json.parse(new String(data, StandardCharsets.UTF_8));
+        List<?> list = json instanceof List ? (List<?>) json : Json.array(json, "modList");
+        List<Mod> mods = new ArrayList<>();
+        for (Object mod : list) {
+            List<Dependency> depends = new ArrayList<>();
+            for (Object dep : Json.array(mod, "requiredMods")) {
+                String spec = String.valueOf(dep);
+                int at = spec.indexOf('@');
+                depends.add(at < 0 ? new Dependency(spec, "", true)
+                        : new Dependency(spec.substring(0, at), spec.substring(at + 1), true));
+            }
+            String mcVersion = Json.string(mod, "mcversion");
+            if (mcVersion != null && !mcVersion.isEmpty()) {
+                depends.add(new Dependency("minecraft", "[" + mcVersion + "]", true));
+            }
+            String id = Json.string(mod, "modid");
+            String name = Json.string(mod, "name");
+            mods.add(new Mod(id, name != null ? name : id, Json.string(mod, "version"), FORGE, depends,
+                    Collections.emptyList(), Collections.emptyMap()));
+        }
+        return mods;
+    }
+
+    private static String manifestVersion(byte[] data) {
+        for (String line : new String(data, StandardCharsets.UTF_8).split("\r?\n")) {
+            if (line.startsWith("Implementation-Version:")) {
+                return line.substring("Implementation-Version:".length()).trim();
+            }
+        }
+        return null;
+    }
+
+    private static String stripComment(String value) {
+        if (value.startsWith("\"") || value.startsWith("'")) {
+            int end = value.indexOf(value.charAt(0), 1);
+            return end > 0 ? value.substring(0, end + 1) : value;
+        }
+        int hash = value.indexOf('#');
+        return hash >= 0 ? value.substring(0, hash).trim() : value;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && (value.startsWith("\"") && value.endsWith("\"")
+                || value.startsWith("'") && value.endsWith("'"))) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    // ----- persistent index -----
+
+    private void loadIndex() {
+        if (!indexFile.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_FORMAT) {
+                return;
+            }
+            int count = in.readInt();
+            Map<String, ModFile> loadedFiles = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String fileName = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                String error = readNullable(in);
+                int modCount = in.readInt();
+                List<Mod> mods = new ArrayList<>(modCount);
+                for (int m = 0; m < modCount; m++) {
+                    mods.add(new Mod(readNullable(in), readNullable(in), readNullable(in), in.readUTF(),
+                            readDependencies(in), readDependencies(in), readProvides(in)));
+                }
+                loadedFiles.put(fileName, new ModFile(fileName, size, lastModified, mods, error));
+            }
+            files = loadedFiles;
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable mod index: " + e.getMessage());
+        }
+    }
+
+    private void saveIndex() throws IOException {
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_FORMAT);
+            out.writeInt(files.size());
+            for (ModFile file : files.values()) {
+                out.writeUTF(file.fileName);
+                out.writeLong(file.size);
+                out.writeLong(file.lastModified);
+                writeNullable(out, file.error);
+                out.writeInt(file.mods.size());
+                for (Mod mod : file.mods) {
+                    writeNullable(out, mod.id);
+                    writeNullable(out, mod.name);
+                    writeNullable(out, mod.version);
+                    out.writeUTF(mod.loader);
+                    writeDependencies(out, mod.depends);
+                    writeDependencies(out, mod.breaks);
+                    writeProvides(out, mod.provides);
+                }
+            }
+        }
+        java.nio.file.Files.move(tmp.toPath(), indexFile.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static List<Dependency> readDependencies(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<Dependency> deps = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            deps.add(new Dependency(readNullable(in), readNullable(in), in.readBoolean()));
+        }
+        return deps;
+    }
+
+    private static void writeDependencies(DataOutputStream out, List<Dependency> deps) throws IOException {
+        out.writeInt(deps.size());
+        for (Dependency dep : deps) {
+            writeNullable(out, dep.modId);
+            writeNullable(out, dep.range);
+            out.writeBoolean(dep.mandatory);
+        }
+    }
+
+    private static Map<String, String> readProvides(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, String> provides = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            provides.put(in.readUTF(), readNullable(in));
+        }
+        return provides;
+    }
+
+    private static void writeProvides(DataOutputStream out, Map<String, String> provides) throws IOException {
+        out.writeInt(provides.size());
+        for (Map.Entry<String, String> entry : provides.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeNullable(out, entry.getValue());
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+import java.util.*;
+
+// Checks a mod set before launch: every mandatory dependency present and in range, no
+// declared conflicts, no mod id provided twice and no mods for the other loader. A
+// dependency may also be met by a Fabric "provides" alias or by a mod bundled in another
+// mod's jar.
+//
+// Fabric ranges (">=0.14 <1", "~1.20", "^2.0", "1.20.x", alternatives joined by "||") and
+// Forge/Maven ranges ("[47,)", "[1.20.1,1.21)") are both understood. Resolution is a
+// hash lookup per dependency; the last result is reused while the mod files, loader and
+// game version stay the same.
+class ModResolver {
+    enum Severity { ERROR, WARNING }
+
+    static class Issue {
+        final Severity severity;
+        final String message;
+
+        Issue(Severity severity, String message) {
+            this.severity = severity;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return (severity == Severity.ERROR ? "Error: " : "Warning: ") + message;
+        }
+    }
+
+    static class Result {
+        final List<Issue> issues;
+
+        Result(List<Issue> issues) {
+            this.issues = Collections.unmodifiableList(issues);
+        }
+
+        boolean hasErrors() {
+            for (Issue issue : issues) {
+                if (issue.severity == Severity.ERROR) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private long cachedKey;
+    private Result cached;
+
+    // loader is "Forge" or "Fabric" as chosen in the UI.
+    synchronized Result resolve(List<ModIndex.ModFile> files, String loader, String minecraftVersion) {
+        long key = fingerprint(files, loader, minecraftVersion);
+        if (cached != null && key == cachedKey) {
+            return cached;
+        }
+        cached = check(files, loader.toLowerCase(Locale.ROOT), minecraftVersion);
+        cachedKey = key;
+        return cached;
+    }
+
+    private static Result check(List<ModIndex.ModFile> files, String loader, String minecraftVersion) {
+        List<Issue> issues = new ArrayList<>();
+        // Ids the loader itself provides; their version is only known for minecraft.
+        Map<String, String> builtIn = new HashMap<>();
+        builtIn.put("minecraft", minecraftVersion);
+        builtIn.put("java", null);
+        if (loader.equals(ModIndex.FABRIC)) {
+            builtIn.put("fabricloader", null);
+            builtIn.put("fabric-loader", null);
+        } else {
+            builtIn.put("forge", null);
+            builtIn.put("javafml", null);
+        }
+
+        Map<String, String> fileOf = new HashMap<>();
+        List<ModIndex.Mod> active = new ArrayList<>();
+        for (ModIndex.ModFile file : files) {
+            if (file.error != null) {
+                issues.add(new Issue(Severity.WARNING, file.fileName + " could not be read: " + file.error));
+                continue;
+            }
+            if (file.mods.isEmpty()) {
+                issues.add(new Issue(Severity.WARNING, file.fileName + " has no mod metadata"));
+                continue;
+            }
+            boolean forLoader = false;
+            for (ModIndex.Mod mod : file.mods) {
+                forLoader |= mod.loader.equals(loader);
+            }
+            if (!forLoader) {
+                issues.add(new Issue(Severity.ERROR, file.fileName + " is a " + file.mods.get(0).loader
+                        + " mod and will not load with " + loader));
+                continue;
+            }
+            for (ModIndex.Mod mod : file.mods) {
+                if (!mod.loader.equals(loader) || mod.id == null) {
+                    continue;
+                }
+                String previous = fileOf.putIfAbsent(mod.id, file.fileName);
+                if (previous != null) {
+                    issues.add(new Issue(Severity.ERROR, "Duplicate mod " + mod.id + " in " + previous + " and "
+                            + file.fileName));
+                    continue;
+                }
+                active.add(mod);
+            }
+        }
+
+        // Every id that is present with its version (null if unknown). Mods in the mods
+        // folder win over aliases and bundled copies, and the loader's own ids over all.
+        Map<String, String> provided = new HashMap<>();
+        for (ModIndex.Mod mod : active) {
+            provided.put(mod.id, mod.version);
+        }
+        for (ModIndex.Mod mod : active) {
+            for (Map.Entry<String, String> alias : mod.provides.entrySet()) {
+                provided.putIfAbsent(alias.getKey(), alias.getValue());
+            }
+        }
+        provided.putAll(builtIn);
+
+        for (ModIndex.Mod mod : active) {
+            for (ModIndex.Dependency dep : mod.depends) {
+                String version = provided.get(dep.modId);
+                if (!provided.containsKey(dep.modId)) {
+                    if (dep.mandatory) {
+                        issues.add(new Issue(Severity.ERROR, mod.name + " requires missing mod " + dep.modId
+                                + describeRange(dep.range)));
+                    }
+                } else if (version != null && !matches(version, dep.range, mod.loader)) {
+                    issues.add(new Issue(dep.mandatory ? Severity.ERROR : Severity.WARNING, mod.name + " requires "
+                            + dep.modId + describeRange(dep.range) + " but " + version + " is installed"));
+                }
+            }
+            for (ModIndex.Dependency conflict : mod.breaks) {
+                String version = provided.get(conflict.modId);
+                if (provided.containsKey(conflict.modId)
+                        && (version == null || matches(version, conflict.range, mod.loader))) {
+                    issues.add(new Issue(Severity.ERROR, mod.name + " is incompatible with " + conflict.modId
+                            + (version != null ? " " + version : "")));
+                }
+            }
+        }
+        return new Result(issues);
+    }
+
+    private static String describeRange(String range) {
+        return range == null || range.isEmpty() || range.equals("*") ? "" : " " + range;
+    }
+
+    // ----- version ranges -----
+
+    static boolean matches(String version, String range, String loader) {
+        if (range == null || range.trim().isEmpty() || range.trim().equals("*")) {
+            return true;
+        }
+        range = range.trim();
+        if (loader.equals(ModIndex.FORGE) || range.startsWith("[") || range.startsWith("(")) {
+            return mavenMatches(version, range);
+        }
+        for (String alternative : range.split("\\|\\|")) {
+            if (fabricMatches(version, alternative.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Space-separated predicates that must all hold.
+    private static boolean fabricMatches(String version, String predicates) {
+        for (String predicate : predicates.split("\\s+")) {
+            if (predicate.isEmpty() || predicate.equals("*")) {
+                continue;
+            }
+            String op = predicate.startsWith(">=") || predicate.startsWith("<=") ? predicate.substring(0, 2)
+                    : "<>=~^".indexOf(predicate.charAt(0)) >= 0 ? predicate.substring(0, 1) : "";
+            String target = predicate.substring(op.length());
+            if (target.endsWith(".x") || target.endsWith(".X") || target.endsWith(".*")) {
+                if (!op.isEmpty() && !op.equals("=")) {
+                    target = target.substring(0, target.length() - 2);
+                } else {
+                    String prefix = target.substring(0, target.length() - 1);
+                    if (!(version + ".").startsWith(prefix)) {
+                        return false;
+                    }
+                    continue;
+                }
+            }
+            int cmp = compare(version, target);
+            boolean ok;
+            switch (op) {
+                case ">=": ok = cmp >= 0; break;
+                case "<=": ok = cmp <= 0; break;
+                case ">": ok = cmp > 0; break;
+                case "<": ok = cmp < 0; break;
+                case "~": ok = cmp >= 0 && compare(version, bump(target, 1)) < 0; break;
+                case "^": ok = cmp >= 0 && compare(version, bump(target, 0)) < 0; break;
+                default: ok = cmp == 0; break;
+            }
+            if (!ok) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Comma-separated Maven ranges; a bare version is only a recommendation and always matches.
+    private static boolean mavenMatches(String version, String range) {
+        int i = 0;
+        while (i < range.length()) {
+            char open = range.charAt(i);
+            if (open != '[' && open != '(') {
+                return true;
+            }
+            int close = i + 1;
+            while (close < range.length() && range.charAt(close) != ']' && range.charAt(close) != ')') {
+                close++;
+            }
+            if (close >= range.length()) {
+                return true;
+            }
+            String body = range.substring(i + 1, close);
+            boolean inclusiveLow = open == '[';
+            boolean inclusiveHigh = range.charAt(close) == ']';
+            int comma = body.indexOf(',');
+            String low = (comma < 0 ? body : body.substring(0, comma)).trim();
+            String high = (comma < 0 ? body : body.substring(comma + 1)).trim();
+            boolean ok = true;
+            if (!low.isEmpty()) {
+                int cmp = compare(version, low);
+                ok = inclusiveLow ? cmp >= 0 : cmp > 0;
+            }
+            if (ok && !high.isEmpty()) {
+                int cmp = compare(version, high);
+                ok = inclusiveHigh ? cmp <= 0 : cmp < 0;
+            }
+            if (ok) {
+                return true;
+            }
+            i = close + 1;
+            while (i < range.length() && (range.charAt(i) == ',' || range.charAt(i) == ' ')) {
+                i++;
+            }
+        }
+        return false;
+    }
+
+    // Smallest version above every version that starts with the first index+1 components.
+    private static String bump(String version, int index) {
+        String[] parts = core(version).split("\\.");
+        while (index < parts.length - 1 && index == 0 && parseNumber(parts[0]) == 0) {
+            index++; // ^0.x behaves like ~0.x
+        }
+        if (index >= parts.length) {
+            return version + ".1";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < index; i++) {
+            sb.append(parts[i]).append('.');
+        }
+        return sb.append(parseNumber(parts[index]) + 1).toString();
+    }
+
+    // Compare dotted versions numerically; a pre-release suffix sorts before the release.
+    static int compare(String a, String b) {
+        String[] x = core(a).split("\\.");
+        String[] y = core(b).split("\\.");
+        for (int i = 0; i < Math.max(x.length, y.length); i++) {
+            String p = i < x.length ? x[i] : "0";
+            String q = i < y.length ? y[i] : "0";
+            long m = parseNumber(p);
+            long n = parseNumber(q);
+            int cmp = m >= 0 && n >= 0 ? Long.compare(m, n) : p.compareTo(q);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        boolean aPre = preRelease(a) != null;
+        boolean bPre = preRelease(b) != null;
+        if (aPre != bPre) {
+            return aPre ? -1 : 1;
+        }
+        return aPre ? preRelease(a).compareTo(preRelease(b)) : 0;
+    }
+
+    private static String core(String version) {
+        int end = version.length();
+        for (int i = 0; i < version.length(); i++) {
+            char c = version.charAt(i);
+            if (c == '-' || c == '+') {
+                end = i;
+                break;
+            }
+        }
+        return version.substring(0, end);
+    }
+
+    private static String preRelease(String version) {
+        int plus = version.indexOf('+');
+        String withoutBuild = plus >= 0 ? version.substring(0, plus) : version;
+        int dash = withoutBuild.indexOf('-');
+        return dash >= 0 ? withoutBuild.substring(dash + 1) : null;
+    }
+
+    private static long parseNumber(String part) {
+        if (part.isEmpty() || part.length() > 18) {
+            return -1;
+        }
+        for (int i = 0; i < part.length(); i++) {
+            if (!Character.isDigit(part.charAt(i))) {
+                return -1;
+            }
+        }
+        return Long.parseLong(part);
+    }
+
+    private static long fingerprint(List<ModIndex.ModFile> files, String loader, String minecraftVersion) {
+        long hash = loader.hashCode() * 31L + minecraftVersion.hashCode();
+        for (ModIndex.ModFile file : files) {
+            hash = hash * 31 + file.fileName.hashCode();
+            hash = hash * 31 + file.size;
+            hash = hash * 31 + file.lastModified;
+        }
+        return hash;
+    }
+}
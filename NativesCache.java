@@ -0,0 +1,199 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Extracted native libraries, shared by every version and launch.
+//
+// Each natives jar is extracted once into root/<sha1>/ next to a manifest of the files
+// it produced and their sizes. A natives directory is then filled with hard links to
+// those files (copies where links are not possible) and stamped with the jar hashes it
+// was built from, so preparing an unchanged natives directory only reads metadata.
+// Jars without a published hash are hashed once; the result is kept in root/.hashes
+// under the jar's path, size and mtime.
+class NativesCache {
+    private static final String MANIFEST = ".manifest";
+    private static final String STAMP = ".natives";
+    private static final String HASHES = ".hashes";
+
+    private final File root;
+    private Map<String, String> hashes;
+
+    NativesCache(File root) {
+        this.root = root;
+    }
+
+    // Make target hold the natives of the given jars (sha1 -> jar). Later jars win when
+    // two contain a file with the same name.
+    synchronized void link(LinkedHashMap<String, File> jars, File target) throws IOException {
+        String stamp = String.join("\n", jars.keySet());
+        if (isCurrent(target, stamp)) {
+            return;
+        }
+        Map<String, File> files = new LinkedHashMap<>();
+        for (Map.Entry<String, File> jar : jars.entrySet()) {
+            File dir = extracted(jar.getKey(), jar.getValue());
+            for (String name : readManifest(dir).keySet()) {
+                files.put(name, new File(dir, name));
+            }
+        }
+        if (target.isDirectory()) {
+            File[] old = target.listFiles();
+            if (old != null) {
+                for (File file : old) {
+                    Files.deleteIfExists(file.toPath());
+                }
+            }
+        } else if (!target.mkdirs()) {
+            throw new IOException("Cannot create " + target);
+        }
+        StringBuilder listing = new StringBuilder(stamp).append("\n\n");
+        for (Map.Entry<String, File> file : files.entrySet()) {
+            Path link = new File(target, file.getKey()).toPath();
+            try {
+                Files.createLink(link, file.getValue().toPath());
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                Files.copy(file.getValue().toPath(), link, StandardCopyOption.REPLACE_EXISTING);
+            }
+            listing.append(file.getKey()).append(' ').append(file.getValue().length()).append('\n');
+        }
+        Files.write(new File(target, STAMP).toPath(), listing.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // SHA-1 of a jar that has no published hash, re-hashed only when its size or mtime
+    // changed since the last call.
+    synchronized String sha1(File jar) throws IOException {
+        File file = new File(root, HASHES);
+        if (hashes == null) {
+            // path -> "size mtime sha1"
+            hashes = new TreeMap<>();
+            if (file.isFile()) {
+                for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                    String[] parts = line.split(" ", 4);
+                    if (parts.length == 4) {
+                        hashes.put(parts[3], parts[0] + " " + parts[1] + " " + parts[2]);
+                    }
+                }
+            }
+        }
+        String path = jar.getAbsolutePath();
+        String stamp = jar.length() + " " + jar.lastModified() + " ";
+        String known = hashes.get(path);
+        if (known != null && known.startsWith(stamp)) {
+            return known.substring(stamp.length());
+        }
+        String sha1 = ArtifactDownloader.sha1(jar);
+        hashes.put(path, stamp + sha1);
+        StringBuilder listing = new StringBuilder();
+        for (Map.Entry<String, String> entry : hashes.entrySet()) {
+            listing.append(entry.getValue()).append(' ').append(entry.getKey()).append('\n');
+        }
+        if (!root.isDirectory() && !root.mkdirs()) {
+            throw new IOException("Cannot create " + root);
+        }
+        File tmp = new File(root, HASHES + ".tmp");
+        Files.write(tmp.toPath(), listing.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return sha1;
+    }
+
+    // The stamp matches and every listed file is still there with its size.
+    private static boolean isCurrent(File target, String stamp) {
+        File stampFile = new File(target, STAMP);
+        if (!stampFile.isFile()) {
+            return false;
+        }
+        try {
+            String content = new String(Files.readAllBytes(stampFile.toPath()), StandardCharsets.UTF_8);
+            int split = content.indexOf("\n\n");
+            if (split < 0 || !content.substring(0, split).equals(stamp)) {
+                return false;
+            }
+            return sizesMatch(target, content.substring(split + 2));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // root/<sha1>/, extracting the jar first if it is missing or incomplete.
+    private File extracted(String sha1, File jar) throws IOException {
+        File dir = new File(root, sha1);
+        File manifest = new File(dir, MANIFEST);
+        if (manifest.isFile() && sizesMatch(dir, new String(Files.readAllBytes(manifest.toPath()),
+                StandardCharsets.UTF_8))) {
+            return dir;
+        }
+        File tmp = new File(root, sha1 + ".tmp" + System.nanoTime());
+        if (!tmp.mkdirs()) {
+            throw new IOException("Cannot create " + tmp);
+        }
+        StringBuilder listing = new StringBuilder();
+        try (ZipFile zip = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory() || name.startsWith("META-INF/") || name.endsWith(".class")
+                        || name.endsWith(".git") || name.endsWith(".sha1")) {
+                    continue;
+                }
+                String fileName = new File(name).getName();
+                File out = new File(tmp, fileName);
+                try (InputStream in = zip.getInputStream(entry)) {
+                    Files.copy(in, out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                listing.append(fileName).append(' ').append(out.length()).append('\n');
+            }
+        }
+        // The manifest is written last, so a directory with a manifest is complete.
+        Files.write(new File(tmp, MANIFEST).toPath(), listing.toString().getBytes(StandardCharsets.UTF_8));
+        deleteTree(dir);
+        Files.move(tmp.toPath(), dir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        return dir;
+    }
+
+    private static Map<String, Long> readManifest(File dir) throws IOException {
+        Map<String, Long> files = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(new File(dir, MANIFEST).toPath(), StandardCharsets.UTF_8)) {
+            int space = line.lastIndexOf(' ');
+            if (space > 0) {
+                files.put(line.substring(0, space), Long.parseLong(line.substring(space + 1)));
+            }
+        }
+        return files;
+    }
+
+    // "name size" lines; true if each file exists in dir with that size.
+    private static boolean sizesMatch(File dir, String listing) {
+        for (String line : listing.split("\n")) {
+            int space = line.lastIndexOf(' ');
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (space <= 0) {
+                return false;
+            }
+            File file = new File(dir, line.substring(0, space));
+            try {
+                if (file.length() != Long.parseLong(line.substring(space + 1)) || !file.isFile()) {
+                    return false;
+                }
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void deleteTree(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteTree(file);
+            }
+        }
+        Files.deleteIfExists(dir.toPath());
+    }
+}
@@ -0,0 +1,386 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Content-addressed store for libraries, assets and game jars.
+//
+// Objects live under <root>/<first two hex digits>/<sha1>. Version and instance
+// directories are "layouts": a named set of (relative path -> hash) entries that are
+// materialized as hard links into the store (or copies where links are not possible).
+// Each layout is recorded in <root>/layouts/<name>.layout; an object's reference count
+// is the number of layout entries pointing at it, and gc() removes objects nobody
+// references any more.
+class ObjectStore {
+    // Unreferenced objects younger than this are kept, so downloads that have not been
+    // linked into a layout yet survive a concurrent gc().
+    private static final long GC_GRACE_MILLIS = 60L * 60 * 1000;
+
+    private final File root;
+    private final File layoutsDir;
+    private final File incomingDir;
+    private final AtomicLong incomingCounter = new AtomicLong();
+    // Downloads in progress by hash, so concurrent installs share them.
+    private final Map<String, Shared> inFlight = new HashMap<>();
+    private Map<String, Integer> refCounts;
+
+    ObjectStore(File root) {
+        this.root = root;
+        this.layoutsDir = new File(root, "layouts");
+        this.incomingDir = new File(root, "incoming");
+    }
+
+    File objectFile(String sha1) {
+        String hash = sha1.toLowerCase(Locale.ROOT);
+        return new File(new File(root, hash.substring(0, 2)), hash);
+    }
+
+    boolean contains(String sha1) {
+        return sha1 != null && objectFile(sha1).isFile();
+    }
+
+    // Move a file into the store. The hash must already be verified by the caller.
+    String addVerified(File source, String sha1) throws IOException {
+        File object = objectFile(sha1);
+        if (object.isFile()) {
+            Files.deleteIfExists(source.toPath());
+            return sha1.toLowerCase(Locale.ROOT);
+        }
+        mkdirs(object.getParentFile());
+        try {
+            Files.move(source.toPath(), object.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            Files.deleteIfExists(source.toPath());
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), object.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return sha1.toLowerCase(Locale.ROOT);
+    }
+
+    // Copy an arbitrary file into the store, hashing it first.
+    String add(File source) throws IOException {
+        String sha1 = ArtifactDownloader.sha1(source);
+        if (contains(sha1)) {
+            return sha1;
+        }
+        File incoming = newIncomingFile();
+        mkdirs(incomingDir);
+        Files.copy(source.toPath(), incoming.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return addVerified(incoming, sha1);
+    }
+
+    // Fetch an object, downloading it only if the store does not have it yet.
+    // Completes with the object's hash. Callers fetching the same hash at the same time
+    // share one download, which is cancelled once every one of them has cancelled.
+    CompletableFuture<String> fetch(ArtifactDownloader downloader, String url, String sha1, long size,
+                                    ArtifactDownloader.Listener listener) {
+        if (contains(sha1)) {
+            return CompletableFuture.completedFuture(sha1.toLowerCase(Locale.ROOT));
+        }
+        if (sha1 == null) {
+            return download(downloader, url, null, size, listener);
+        }
+        String key = sha1.toLowerCase(Locale.ROOT);
+        Shared shared;
+        synchronized (inFlight) {
+            shared = inFlight.get(key);
+            if (shared == null) {
+                shared = new Shared(download(downloader, url, key, size, listener));
+                inFlight.put(key, shared);
+                Shared started = shared;
+                shared.future.whenComplete((h, t) -> {
+                    synchronized (inFlight) {
+                        inFlight.remove(key, started);
+                    }
+                });
+            }
+            shared.waiters++;
+        }
+        Shared joined = shared;
+        CompletableFuture<String> result = new CompletableFuture<>();
+        joined.future.whenComplete((h, t) -> {
+            if (t != null) {
+                result.completeExceptionally(t);
+            } else {
+                result.complete(h);
+            }
+        });
+        result.whenComplete((h, t) -> {
+            if (result.isCancelled()) {
+                synchronized (inFlight) {
+                    if (--joined.waiters == 0) {
+                        joined.future.cancel(true);
+                    }
+                }
+            }
+        });
+        return result;
+    }
+
+    private CompletableFuture<String> download(ArtifactDownloader downloader, String url, String sha1, long size,
+                                               ArtifactDownloader.Listener listener) {
+        File incoming = sha1 != null ? new File(incomingDir, sha1.toLowerCase(Locale.ROOT)) : newIncomingFile();
+        ArtifactDownloader.Artifact artifact = new ArtifactDownloader.Artifact(url, incoming, sha1, size);
+        CompletableFuture<ArtifactDownloader.Result> download = downloader.download(artifact, listener);
+        CompletableFuture<String> result = download.thenApply(r -> {
+            try {
+                return addVerified(r.file, r.sha1);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        result.whenComplete((h, t) -> {
+            if (result.isCancelled()) {
+                download.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    // ----- layouts -----
+
+    // Link one object into a layout, adding it to the layout's entries.
+    synchronized File link(String layout, File layoutRoot, String path, String sha1) throws IOException {
+        linkAll(layout, layoutRoot, Collections.singletonMap(path, sha1));
+        return new File(layoutRoot, path);
+    }
+
+    // Link several objects into a layout, keeping its other entries.
+    synchronized void linkAll(String layout, File layoutRoot, Map<String, String> added) throws IOException {
+        Layout current = readLayout(layout);
+        Map<String, String> entries = new TreeMap<>();
+        if (current != null && current.root.equals(layoutRoot.getAbsoluteFile())) {
+            entries.putAll(current.entries);
+        }
+        for (Map.Entry<String, String> entry : added.entrySet()) {
+            entries.put(entry.getKey(), entry.getValue().toLowerCase(Locale.ROOT));
+        }
+        setLayout(layout, layoutRoot, entries);
+    }
+
+    // Replace a layout's entries. Files that are no longer part of the layout are removed
+    // from its directory and their objects lose a reference.
+    synchronized void setLayout(String layout, File layoutRoot, Map<String, String> entries) throws IOException {
+        checkName(layout);
+        Map<String, Integer> counts = refCounts();
+        Layout previous = readLayout(layout);
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            materialize(entry.getValue(), new File(layoutRoot, entry.getKey()));
+        }
+        if (previous != null) {
+            for (Map.Entry<String, String> entry : previous.entries.entrySet()) {
+                decrement(counts, entry.getValue());
+                if (!previous.root.equals(layoutRoot.getAbsoluteFile()) || !entries.containsKey(entry.getKey())) {
+                    Files.deleteIfExists(new File(previous.root, entry.getKey()).toPath());
+                }
+            }
+        }
+        for (String sha1 : entries.values()) {
+            counts.merge(sha1.toLowerCase(Locale.ROOT), 1, Integer::sum);
+        }
+        writeLayout(layout, new Layout(layoutRoot.getAbsoluteFile(), entries));
+    }
+
+    // Drop a layout and its files; its objects lose their references.
+    synchronized void removeLayout(String layout) throws IOException {
+        checkName(layout);
+        Layout previous = readLayout(layout);
+        if (previous == null) {
+            return;
+        }
+        Map<String, Integer> counts = refCounts();
+        for (Map.Entry<String, String> entry : previous.entries.entrySet()) {
+            decrement(counts, entry.getValue());
+            Files.deleteIfExists(new File(previous.root, entry.getKey()).toPath());
+        }
+        Files.deleteIfExists(layoutFile(layout).toPath());
+    }
+
+    // A layout's entries (path -> hash), or an empty map if there is no such layout.
+    synchronized Map<String, String> layout(String layout) throws IOException {
+        checkName(layout);
+        Layout current = readLayout(layout);
+        return current != null ? new TreeMap<>(current.entries) : new TreeMap<>();
+    }
+
+    // Delete an object whose data was found damaged. Layouts keep their entries, so the
+    // next fetch of the hash downloads it again and linking restores their files.
+    synchronized void discard(String sha1) throws IOException {
+        Files.deleteIfExists(objectFile(sha1).toPath());
+    }
+
+    // path -> hash of every stored object linked into a layout whose name starts with
+    // layoutPrefix. Used to find earlier versions of a file to patch from.
+    synchronized Map<String, String> entries(String layoutPrefix) throws IOException {
+        Map<String, String> found = new TreeMap<>();
+        File[] files = layoutsDir.listFiles((dir, name) -> name.startsWith(layoutPrefix) && name.endsWith(".layout"));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                Layout layout = readLayout(name.substring(0, name.length() - ".layout".length()));
+                for (Map.Entry<String, String> entry : layout.entries.entrySet()) {
+                    if (contains(entry.getValue())) {
+                        found.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    synchronized int refCount(String sha1) throws IOException {
+        return refCounts().getOrDefault(sha1.toLowerCase(Locale.ROOT), 0);
+    }
+
+    // Delete every object with no references. Returns the number of bytes freed.
+    synchronized long gc() throws IOException {
+        Map<String, Integer> counts = refCounts();
+        long cutoff = System.currentTimeMillis() - GC_GRACE_MILLIS;
+        long freed = 0;
+        File[] shards = root.listFiles(f -> f.isDirectory() && f.getName().length() == 2);
+        if (shards == null) {
+            return 0;
+        }
+        for (File shard : shards) {
+            File[] objects = shard.listFiles();
+            if (objects == null) {
+                continue;
+            }
+            for (File object : objects) {
+                if (counts.getOrDefault(object.getName(), 0) == 0 && object.lastModified() < cutoff) {
+                    long length = object.length();
+                    if (object.delete()) {
+                        freed += length;
+                    }
+                }
+            }
+            String[] left = shard.list();
+            if (left != null && left.length == 0) {
+                shard.delete();
+            }
+        }
+        File[] stale = incomingDir.listFiles(f -> f.lastModified() < cutoff);
+        if (stale != null) {
+            for (File file : stale) {
+                freed += file.length();
+                file.delete();
+            }
+        }
+        return freed;
+    }
+
+    private void materialize(String sha1, File target) throws IOException {
+        File object = objectFile(sha1);
+        if (!object.isFile()) {
+            throw new FileNotFoundException("Object " + sha1 + " is not in the store");
+        }
+        Path targetPath = target.toPath();
+        if (Files.exists(targetPath)) {
+            if (Files.isSameFile(targetPath, object.toPath())) {
+                return;
+            }
+            Files.delete(targetPath);
+        }
+        mkdirs(target.getParentFile());
+        try {
+            Files.createLink(targetPath, object.toPath());
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // Different volume or no hard link support: fall back to a private copy.
+            Files.copy(object.toPath(), targetPath);
+        }
+    }
+
+    private Map<String, Integer> refCounts() throws IOException {
+        if (refCounts == null) {
+            Map<String, Integer> counts = new HashMap<>();
+            File[] files = layoutsDir.listFiles((dir, name) -> name.endsWith(".layout"));
+            if (files != null) {
+                for (File file : files) {
+                    String name = file.getName();
+                    Layout layout = readLayout(name.substring(0, name.length() - ".layout".length()));
+                    for (String sha1 : layout.entries.values()) {
+                        counts.merge(sha1, 1, Integer::sum);
+                    }
+                }
+            }
+            refCounts = counts;
+        }
+        return refCounts;
+    }
+
+    private static void decrement(Map<String, Integer> counts, String sha1) {
+        counts.computeIfPresent(sha1, (k, v) -> v > 1 ? v - 1 : null);
+    }
+
+    // A layout file is the root directory on the first line, then "<sha1> <path>" lines.
+    private Layout readLayout(String name) throws IOException {
+        File file = layoutFile(name);
+        if (!file.isFile()) {
+            return null;
+        }
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        Map<String, String> entries = new TreeMap<>();
+        for (int i = 1; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int space = line.indexOf(' ');
+            if (space > 0) {
+                entries.put(line.substring(space + 1), line.substring(0, space));
+            }
+        }
+        return new Layout(new File(lines.isEmpty() ? "." : lines.get(0)), entries);
+    }
+
+    private void writeLayout(String name, Layout layout) throws IOException {
+        mkdirs(layoutsDir);
+        StringBuilder sb = new StringBuilder(layout.root.getPath()).append('\n');
+        for (Map.Entry<String, String> entry : layout.entries.entrySet()) {
+            sb.append(entry.getValue().toLowerCase(Locale.ROOT)).append(' ').append(entry.getKey()).append('\n');
+        }
+        File file = layoutFile(name);
+        File tmp = new File(layoutsDir, name + ".tmp");
+        Files.write(tmp.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private File layoutFile(String name) {
+        return new File(layoutsDir, name + ".layout");
+    }
+
+    // A fresh file name in the incoming directory, for writing an object before addVerified().
+    File newIncomingFile() {
+        return new File(incomingDir, "tmp-" + System.nanoTime() + "-" + incomingCounter.incrementAndGet());
+    }
+
+    private static void checkName(String layout) {
+        if (!layout.matches("[A-Za-z0-9._-]+")) {
+            throw new IllegalArgumentException("Invalid layout name: " + layout);
+        }
+    }
+
+    private static void mkdirs(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+    }
+
+    private static class Shared {
+        final CompletableFuture<String> future;
+        int waiters;
+
+        Shared(CompletableFuture<String> future) {
+            this.future = future;
+        }
+    }
+
+    private static class Layout {
+        final File root;
+        final Map<String, String> entries;
+
+        Layout(File root, Map<String, String> entries) {
+            this.root = root;
+            this.entries = entries;
+        }
+    }
+}
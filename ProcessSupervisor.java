@@ -0,0 +1,115 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+// Keeps a handle on every game process the launcher starts.
+//
+// stderr is merged into stdout and drained by one small daemon thread per process, so a
+// chatty game can never block on a full pipe. Lines go into a LogBuffer; when the stream
+// ends the exit code and run time are reported to the listener. Spawn time, time to the
+// first output line and run time go to Metrics.
+class ProcessSupervisor {
+    // Called on the reader thread once a process has exited and its output is drained.
+    interface ExitListener {
+        void exited(Handle handle, int exitCode, long runMillis);
+    }
+
+    // A supervised process.
+    static class Handle {
+        final String name;
+        final Process process;
+        final long startNanos = System.nanoTime();
+        private volatile int exitCode = -1;
+        private volatile long runMillis = -1;
+
+        Handle(String name, Process process) {
+            this.name = name;
+            this.process = process;
+        }
+
+        boolean isAlive() {
+            return process.isAlive();
+        }
+
+        int exitCode() {
+            return exitCode;
+        }
+
+        long runMillis() {
+            return runMillis >= 0 ? runMillis : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+    }
+
+    private final List<Handle> handles = new CopyOnWriteArrayList<>();
+
+    // Start a process and supervise it. Output lines are prefixed with "[name] ".
+    Handle launch(String name, ProcessBuilder pb, LogBuffer log, ExitListener listener) throws IOException {
+        pb.redirectErrorStream(true);
+        long spawnStart = System.nanoTime();
+        Process process;
+        try (Metrics.Span span = Metrics.span("launcher_process_spawn_seconds")) {
+            span.detail(name);
+            process = pb.start();
+        }
+        Handle handle = new Handle(name, process);
+        handles.add(handle);
+        Thread reader = new Thread(() -> drain(handle, log, listener, spawnStart), "output-" + name);
+        reader.setDaemon(true);
+        reader.start();
+        return handle;
+    }
+
+    // Processes that are still running.
+    List<Handle> running() {
+        List<Handle> alive = new ArrayList<>();
+        for (Handle handle : handles) {
+            if (handle.isAlive()) {
+                alive.add(handle);
+            }
+        }
+        return alive;
+    }
+
+    // Ask every running process to terminate.
+    void destroyAll() {
+        for (Handle handle : handles) {
+            handle.process.destroy();
+        }
+    }
+
+    private void drain(Handle handle, LogBuffer log, ExitListener listener, long spawnStart) {
+        String prefix = "[" + handle.name + "] ";
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(handle.process.getInputStream(), Charset.defaultCharset()), 16 * 1024)) {
+            String line = in.readLine();
+            if (line != null) {
+                Metrics.record("launcher_process_first_output_seconds", System.nanoTime() - spawnStart);
+            }
+            for (; line != null; line = in.readLine()) {
+                log.add(prefix + line);
+            }
+        } catch (IOException e) {
+            log.add(prefix + "output closed: " + e.getMessage());
+        }
+        int code;
+        try {
+            code = handle.process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        handle.exitCode = code;
+        handle.runMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - handle.startNanos);
+        handles.remove(handle);
+        Metrics.timer("launcher_process_run_seconds").recordNanos(System.nanoTime() - handle.startNanos);
+        Metrics.counter("launcher_process_exits_total", "result", code == 0 ? "ok" : "error").increment();
+        if (listener != null) {
+            listener.exited(handle, code, handle.runMillis);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.security.Permission;
+import java.util.*;
+
+// Runs Forge installer processors inside the launcher JVM instead of forking one JVM
+// per processor.
+//
+// Each processor gets a throwaway URLClassLoader holding its own jar. Libraries that
+// several processors use (with no conflicting versions) live in one shared parent loader,
+// so their classes are loaded and JIT-compiled once per install. While a processor runs,
+// System.out/err written from its threads go to its log, and System.exit() throws instead
+// of stopping the launcher.
+//
+// Blocking System.exit needs a SecurityManager. guard() installs it and the routing
+// streams for as long as a runner is open, and close() puts the previous ones back.
+// Runtimes that refuse one (Java 18+ without -Djava.security.manager=allow) make guard()
+// return false and callers fork instead.
+class ProcessorRunner implements Closeable {
+    private static final InheritableThreadLocal<LogBuffer> CURRENT = new InheritableThreadLocal<>();
+    // Guarded by ProcessorRunner.class: open runners that installed the guard, and what
+    // it replaced.
+    private static int guards;
+    private static SecurityManager previousManager;
+    private static PrintStream previousOut;
+    private static PrintStream previousErr;
+
+    private final URLClassLoader shared;
+    private final Set<File> sharedFiles;
+    private boolean guarded;
+
+    // classpaths: every processor's classpath, its own jar first.
+    ProcessorRunner(List<List<File>> classpaths) {
+        Map<File, Integer> uses = new HashMap<>();
+        Map<String, Set<File>> versions = new HashMap<>();
+        for (List<File> classpath : classpaths) {
+            for (File file : new LinkedHashSet<>(classpath.subList(1, classpath.size()))) {
+                uses.merge(file, 1, Integer::sum);
+                versions.computeIfAbsent(artifactKey(file), k -> new HashSet<>()).add(file);
+            }
+        }
+        Set<File> chosen = new LinkedHashSet<>();
+        for (Map.Entry<File, Integer> use : uses.entrySet()) {
+            if (use.getValue() > 1 && versions.get(artifactKey(use.getKey())).size() == 1) {
+                chosen.add(use.getKey());
+            }
+        }
+        this.sharedFiles = chosen;
+        this.shared = new URLClassLoader("processor-shared", urls(chosen), ClassLoader.getPlatformClassLoader());
+    }
+
+    // Install the exit guard and output router until close(). Returns false if the
+    // runtime does not allow a SecurityManager; run() must not be used then.
+    @SuppressWarnings("removal")
+    boolean guard() {
+        synchronized (ProcessorRunner.class) {
+            if (guarded) {
+                return true;
+            }
+            if (guards == 0) {
+                SecurityManager manager = System.getSecurityManager();
+                try {
+                    System.setSecurityManager(new ExitGuard(manager));
+                } catch (UnsupportedOperationException | SecurityException e) {
+                    return false;
+                }
+                previousManager = manager;
+                previousOut = System.out;
+                previousErr = System.err;
+                System.setOut(new RoutingStream(previousOut));
+                System.setErr(new RoutingStream(previousErr));
+            }
+            guards++;
+            guarded = true;
+            return true;
+        }
+    }
+
+    // Run one processor's main class; its output lines go to log.
+    void run(String mainClass, List<File> classpath, List<String> args, LogBuffer log) throws Exception {
+        List<File> own = new ArrayList<>();
+        for (File file : classpath) {
+            if (!sharedFiles.contains(file)) {
+                own.add(file);
+            }
+        }
+        Thread thread = Thread.currentThread();
+        ClassLoader previousContext = thread.getContextClassLoader();
+        try (URLClassLoader loader = new URLClassLoader("processor", urls(own), shared)) {
+            Method main = loader.loadClass(mainClass).getMethod("main", String[].class);
+            CURRENT.set(log);
+            thread.setContextClassLoader(loader);
+            main.invoke(null, (Object) args.toArray(new String[0]));
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ExitException) {
+                int status = ((ExitException) cause).status;
+                if (status != 0) {
+                    throw new IOException(mainClass + " exited with code " + status);
+                }
+                return;
+            }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw new IOException(mainClass + " failed", cause);
+        } finally {
+            System.out.flush();
+            System.err.flush();
+            CURRENT.remove();
+            thread.setContextClassLoader(previousContext);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("removal")
+    public void close() throws IOException {
+        try {
+            shared.close();
+        } finally {
+            synchronized (ProcessorRunner.class) {
+                if (guarded && --guards == 0) {
+                    System.out.flush();
+                    System.err.flush();
+                    System.setOut(previousOut);
+                    System.setErr(previousErr);
+                    System.setSecurityManager(previousManager);
+                    previousManager = null;
+                    previousOut = null;
+                    previousErr = null;
+                }
+                guarded = false;
+            }
+        }
+    }
+
+    // libraries/<group>/<artifact>/<version>/<file> -> <group>/<artifact>
+    private static String artifactKey(File file) {
+        File versionDir = file.getParentFile();
+        File artifactDir = versionDir != null ? versionDir.getParentFile() : null;
+        return artifactDir != null ? artifactDir.getPath() : file.getPath();
+    }
+
+    private static URL[] urls(Collection<File> files) {
+        URL[] urls = new URL[files.size()];
+        int i = 0;
+        for (File file : files) {
+            try {
+                urls[i++] = file.toURI().toURL();
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+        return urls;
+    }
+
+    // Thrown in place of System.exit() on processor threads.
+    private static class ExitException extends SecurityException {
+        final int status;
+
+        ExitException(int status) {
+            super("System.exit(" + status + ") blocked");
+            this.status = status;
+        }
+    }
+
+    // Allows everything except exiting from a processor thread.
+    @SuppressWarnings("removal")
+    private static class ExitGuard extends SecurityManager {
+        private final SecurityManager delegate;
+
+        ExitGuard(SecurityManager delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void checkExit(int status) {
+            if (CURRENT.get() != null) {
+                throw new ExitException(status);
+            }
+            if (delegate != null) {
+                delegate.checkExit(status);
+            }
+        }
+
+        @Override
+        public void checkPermission(Permission perm) {
+            if (delegate != null) {
+                delegate.checkPermission(perm);
+            }
+        }
+
+        @Override
+        public void checkPermission(Permission perm, Object context) {
+            if (delegate != null) {
+                delegate.checkPermission(perm, context);
+            }
+        }
+    }
+
+    // Sends lines written on processor threads to that processor's log and everything
+    // else to the original stream.
+    private static class RoutingStream extends PrintStream {
+        private final ThreadLocal<ByteArrayOutputStream> pending = ThreadLocal.withInitial(ByteArrayOutputStream::new);
+
+        RoutingStream(PrintStream original) {
+            super(original, true);
+        }
+
+        @Override
+        public void write(int b) {
+            LogBuffer log = CURRENT.get();
+            if (log == null) {
+                super.write(b);
+            } else if (b == '\n') {
+                flushLine(log);
+            } else if (b != '\r') {
+                pending.get().write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) {
+            if (CURRENT.get() == null) {
+                super.write(buf, off, len);
+                return;
+            }
+            for (int i = off; i < off + len; i++) {
+                write(buf[i]);
+            }
+        }
+
+        @Override
+        public void flush() {
+            LogBuffer log = CURRENT.get();
+            if (log != null && pending.get().size() > 0) {
+                flushLine(log);
+            }
+            super.flush();
+        }
+
+        private void flushLine(LogBuffer log) {
+            ByteArrayOutputStream line = pending.get();
+            log.add("  " + new String(line.toByteArray(), Charset.defaultCharset()));
+            line.reset();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Progress reporting between worker threads and the UI.
+//
+// Workers update their Task with plain atomic writes and never touch Swing. While any
+// task is active a Swing timer ticks at a fixed rate, merges all tasks into one
+// aggregate (done/total, bytes per second, ETA) and pushes it into the progress bar.
+// Finished tasks are dropped on the next tick, so memory stays constant however long
+// the launcher runs; messages go to the bounded status LogBuffer.
+class ProgressBus {
+    static final int TICK_MILLIS = 33;
+    // Weight of the newest sample in the smoothed transfer rate.
+    private static final double RATE_SMOOTHING = 0.2;
+
+    // One unit of work. Units are bytes for downloads and steps for everything else.
+    static class Task {
+        final String name;
+        final boolean bytes;
+        private final AtomicLong done = new AtomicLong();
+        private final AtomicLong total;
+        private volatile boolean finished;
+        private final ProgressBus bus;
+
+        private Task(ProgressBus bus, String name, long total, boolean bytes) {
+            this.bus = bus;
+            this.name = name;
+            this.total = new AtomicLong(total);
+            this.bytes = bytes;
+        }
+
+        void add(long amount) {
+            done.addAndGet(amount);
+            if (bytes) {
+                bus.transferred.addAndGet(amount);
+            }
+        }
+
+        void set(long value) {
+            long previous = done.getAndSet(value);
+            if (bytes && value > previous) {
+                bus.transferred.addAndGet(value - previous);
+            }
+        }
+
+        long done() {
+            return done.get();
+        }
+
+        long total() {
+            return total.get();
+        }
+
+        // Raise the total as more work is discovered; an unknown total becomes known.
+        void grow(long amount) {
+            total.updateAndGet(t -> Math.max(t, 0) + amount);
+        }
+
+        void finish() {
+            finished = true;
+        }
+    }
+
+    private final Map<Task, Boolean> tasks = new ConcurrentHashMap<>();
+    private final AtomicLong transferred = new AtomicLong();
+    private final AtomicBoolean ticking = new AtomicBoolean();
+    private final LogBuffer log;
+    private JProgressBar progressBar;
+    private Timer timer;
+
+    // EDT-only state.
+    private long lastTransferred;
+    private long lastTickNanos;
+    private double bytesPerSecond;
+    private String lastText;
+    private int lastValue = -1;
+
+    ProgressBus(LogBuffer log) {
+        this.log = log;
+    }
+
+    // Drive the given progress bar. Call on the EDT.
+    void attach(JProgressBar bar) {
+        this.progressBar = bar;
+        this.timer = new Timer(TICK_MILLIS, e -> tick());
+    }
+
+    // Start a task counting steps.
+    Task start(String name, long total) {
+        return register(new Task(this, name, total, false));
+    }
+
+    // Start a task counting bytes; total may be -1 when unknown, and grow() later.
+    Task startTransfer(String name, long totalBytes) {
+        return register(new Task(this, name, totalBytes, true));
+    }
+
+    // Post a line to the status log. Safe from any thread.
+    void message(String line) {
+        log.add(line);
+    }
+
+    private Task register(Task task) {
+        tasks.put(task, Boolean.TRUE);
+        if (timer != null && ticking.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(() -> {
+                lastTickNanos = System.nanoTime();
+                lastTransferred = transferred.get();
+                bytesPerSecond = 0;
+                timer.start();
+            });
+        }
+        return task;
+    }
+
+    // Merge every task into the progress bar. Runs on the EDT at the tick rate.
+    private void tick() {
+        long now = System.nanoTime();
+        long moved = transferred.get();
+        double seconds = (now - lastTickNanos) / 1e9;
+        if (seconds > 0) {
+            double sample = (moved - lastTransferred) / seconds;
+            bytesPerSecond = bytesPerSecond == 0 ? sample
+                    : RATE_SMOOTHING * sample + (1 - RATE_SMOOTHING) * bytesPerSecond;
+        }
+        lastTickNanos = now;
+        lastTransferred = moved;
+
+        long done = 0;
+        long total = 0;
+        long remainingBytes = 0;
+        boolean unknown = false;
+        int active = 0;
+        Iterator<Task> it = tasks.keySet().iterator();
+        while (it.hasNext()) {
+            Task task = it.next();
+            long taskTotal = task.total();
+            long taskDone = Math.min(task.done(), taskTotal < 0 ? Long.MAX_VALUE : taskTotal);
+            if (task.finished) {
+                it.remove();
+                continue;
+            }
+            active++;
+            if (taskTotal <= 0) {
+                unknown = true;
+                continue;
+            }
+            // Weigh every task equally so byte counts do not swamp step counts.
+            done += taskDone * 1000 / taskTotal;
+            total += 1000;
+            if (task.bytes) {
+                remainingBytes += taskTotal - taskDone;
+            }
+        }
+
+        if (active == 0) {
+            update(100, null, false);
+            timer.stop();
+            ticking.set(false);
+            if (!tasks.isEmpty() && ticking.compareAndSet(false, true)) {
+                timer.start();
+            }
+            return;
+        }
+        int percent = total > 0 ? (int) (done * 100 / total) : 0;
+        StringBuilder text = new StringBuilder();
+        text.append(percent).append('%');
+        if (active > 1) {
+            text.append(", ").append(active).append(" tasks");
+        }
+        if (bytesPerSecond >= 1024) {
+            text.append(", ").append(formatBytes((long) bytesPerSecond)).append("/s");
+            if (remainingBytes > 0) {
+                text.append(", ETA ").append(formatSeconds((long) (remainingBytes / bytesPerSecond)));
+            }
+        }
+        update(percent, text.toString(), unknown && total == 0);
+    }
+
+    private void update(int value, String text, boolean indeterminate) {
+        if (value != lastValue) {
+            progressBar.setValue(value);
+            lastValue = value;
+        }
+        if (text == null ? lastText != null : !text.equals(lastText)) {
+            progressBar.setString(text);
+            lastText = text;
+        }
+        if (progressBar.isIndeterminate() != indeterminate) {
+            progressBar.setIndeterminate(indeterminate);
+        }
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        if (bytes < 1024L * 1024 * 1024) {
+            return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        }
+        return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+
+    private static String formatSeconds(long seconds) {
+        return seconds >= 60 ? (seconds / 60) + "m " + (seconds % 60) + "s" : seconds + "s";
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Per-phase timings of the launcher's own startup, measured from JVM start.
+//
+// mark() is cheap and thread-safe; finish() prints every phase once the window is
+// interactive. Set -Dlauncher.trace=false to silence it. Phases also go to Metrics as
+// launcher_startup_phase_seconds, and the total as launcher_startup_seconds.
+final class StartupTrace {
+    private static final boolean ENABLED = !"false".equals(System.getProperty("launcher.trace"));
+    private static final long JVM_START_MILLIS = ProcessHandle.current().info().startInstant()
+            .map(java.time.Instant::toEpochMilli).orElse(System.currentTimeMillis());
+    private static final List<String> phases = new ArrayList<>();
+    private static long lastMillis = JVM_START_MILLIS;
+    private static boolean finished;
+
+    private StartupTrace() {
+    }
+
+    // Record that a phase ended now, with the thread it ran on.
+    static synchronized void mark(String phase) {
+        if (finished) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long delta = now - lastMillis;
+        Metrics.record("launcher_startup_phase_seconds", TimeUnit.MILLISECONDS.toNanos(delta), "phase", phase);
+        if (ENABLED) {
+            phases.add(String.format("  %-28s +%5d ms  at %5d ms  [%s]", phase, delta, now - JVM_START_MILLIS,
+                    Thread.currentThread().getName()));
+        }
+        lastMillis = now;
+    }
+
+    // Record the last phase and print the trace.
+    static synchronized void finish(String phase) {
+        if (finished) {
+            return;
+        }
+        mark(phase);
+        finished = true;
+        Metrics.record("launcher_startup_seconds", TimeUnit.MILLISECONDS.toNanos(lastMillis - JVM_START_MILLIS));
+        if (!ENABLED) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder("Startup trace (time since JVM start):");
+        for (String line : phases) {
+            sb.append(System.lineSeparator()).append(line);
+        }
+        System.out.println(sb);
+        phases.clear();
+    }
+}
@@ -0,0 +1,296 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs a directed acyclic graph of tasks on a bounded pool.
+//
+// Ready tasks are dispatched critical-path first: a task's priority is its own estimated
+// cost plus the most expensive chain of tasks waiting on it, so long chains (for example
+// download -> processor -> processor) start before cheap leaves. Tasks may add new tasks
+// while they run, as long as nothing that depends on the new tasks has started yet. A
+// failed task is retried a few times; a task that keeps failing, or cancel(), stops the
+// whole graph and interrupts running tasks so their connections close right away.
+class TaskGraph {
+    private static final int DEFAULT_RETRIES = 2;
+
+    interface Action {
+        void run(Node node) throws Exception;
+    }
+
+    // Receives a call on the worker thread whenever a task finishes.
+    interface Listener {
+        void finished(Node node, int completed, int total);
+    }
+
+    final class Node {
+        final String name;
+        final long cost;
+        private final Action action;
+        private final Set<Node> dependencies = new HashSet<>();
+        private final Set<Node> dependents = new HashSet<>();
+        private int pending;
+        private int attempts;
+        private int maxRetries = DEFAULT_RETRIES;
+        private long priority;
+        private boolean started;
+        private boolean done;
+
+        private Node(String name, long cost, Action action) {
+            this.name = name;
+            this.cost = cost;
+            this.action = action;
+        }
+
+        // Add a dependency. Only allowed before this node has started.
+        Node after(Node... nodes) {
+            synchronized (TaskGraph.this) {
+                if (started) {
+                    throw new IllegalStateException(name + " has already started");
+                }
+                for (Node dep : nodes) {
+                    if (dep != null && dependencies.add(dep)) {
+                        dep.dependents.add(this);
+                        if (!dep.done) {
+                            pending++;
+                        }
+                    }
+                }
+                ready.remove(this);
+                if (pending == 0 && !done) {
+                    ready.add(this);
+                }
+                prioritiesDirty = true;
+            }
+            return this;
+        }
+
+        Node retries(int retries) {
+            maxRetries = retries;
+            return this;
+        }
+
+        TaskGraph graph() {
+            return TaskGraph.this;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final List<Node> nodes = new ArrayList<>();
+    private final PriorityQueue<Node> ready = new PriorityQueue<>(
+            (a, b) -> Long.compare(b.priority, a.priority));
+    private final Map<Node, Future<?>> running = new HashMap<>();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private final ExecutorService pool;
+    private final String name;
+    private final int parallelism;
+    private Listener listener;
+    private boolean prioritiesDirty;
+    private boolean startedRunning;
+    private int completed;
+
+    TaskGraph(String name, int parallelism) {
+        this.name = name;
+        this.parallelism = parallelism;
+        AtomicInteger count = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Add a task. cost is a rough estimate in milliseconds used for scheduling only.
+    synchronized Node add(String name, long cost, Action action, Node... dependencies) {
+        Node node = new Node(name, cost, action);
+        nodes.add(node);
+        ready.add(node);
+        node.after(dependencies);
+        prioritiesDirty = true;
+        if (startedRunning) {
+            dispatch();
+        }
+        return node;
+    }
+
+    // Start running; the returned future completes when every task has finished.
+    synchronized CompletableFuture<Void> start() {
+        startedRunning = true;
+        long started = System.nanoTime();
+        completion.whenComplete((v, t) -> {
+            pool.shutdownNow();
+            String result = t == null ? "ok" : t instanceof CancellationException ? "cancelled" : "failed";
+            Metrics.timer("launcher_task_graph_seconds", "graph", name, "result", result)
+                    .recordNanos(System.nanoTime() - started);
+        });
+        if (nodes.isEmpty()) {
+            completion.complete(null);
+        }
+        dispatch();
+        return completion;
+    }
+
+    // Run and wait, rethrowing the first task failure.
+    void run() throws Exception {
+        try {
+            start().get();
+        } catch (InterruptedException e) {
+            cancel();
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    // Stop the graph: nothing new starts and running tasks are interrupted.
+    synchronized void cancel() {
+        fail(new CancellationException("Cancelled"));
+    }
+
+    // True if the graph was stopped by cancel(), not by a failed task.
+    boolean isCancelled() {
+        if (!completion.isCompletedExceptionally()) {
+            return false;
+        }
+        try {
+            completion.getNow(null);
+            return false;
+        } catch (CancellationException e) {
+            return true;
+        } catch (CompletionException e) {
+            return e.getCause() instanceof CancellationException;
+        }
+    }
+
+    synchronized int size() {
+        return nodes.size();
+    }
+
+    private void dispatch() {
+        if (completion.isDone()) {
+            return;
+        }
+        if (prioritiesDirty) {
+            computePriorities();
+        }
+        while (running.size() < parallelism && !ready.isEmpty()) {
+            Node node = ready.poll();
+            node.started = true;
+            node.attempts++;
+            running.put(node, pool.submit(() -> execute(node)));
+        }
+        if (running.isEmpty() && ready.isEmpty() && completed < nodes.size()) {
+            fail(new IllegalStateException("Task graph has a cycle or an unreachable task"));
+        }
+    }
+
+    // Task times go to launcher_task_seconds by graph; the task name is in the JFR event.
+    private void execute(Node node) {
+        try (Metrics.Span span = Metrics.span("launcher_task_seconds", "graph", name)) {
+            span.detail(node.name);
+            node.action.run(node);
+        } catch (Throwable t) {
+            failed(node, t);
+            return;
+        }
+        succeeded(node);
+    }
+
+    private synchronized void succeeded(Node node) {
+        running.remove(node);
+        node.done = true;
+        completed++;
+        for (Node dependent : node.dependents) {
+            if (--dependent.pending == 0 && !dependent.started) {
+                ready.add(dependent);
+            }
+        }
+        if (listener != null) {
+            listener.finished(node, completed, nodes.size());
+        }
+        if (completed == nodes.size()) {
+            completion.complete(null);
+            return;
+        }
+        dispatch();
+    }
+
+    private synchronized void failed(Node node, Throwable t) {
+        running.remove(node);
+        if (completion.isDone()) {
+            return;
+        }
+        if (node.attempts <= node.maxRetries && !(t instanceof InterruptedException)
+                && !(t instanceof CancellationException) && !permanent(t) && !Thread.currentThread().isInterrupted()) {
+            System.err.println("Task " + node.name + " failed (attempt " + node.attempts + "), retrying: " + t);
+            node.started = false;
+            ready.add(node);
+            dispatch();
+            return;
+        }
+        Exception error = new Exception(node.name + " failed: " + t.getMessage(), t);
+        fail(error);
+    }
+
+    // Failures another attempt cannot fix: a missing file, a 4xx or a checksum mismatch.
+    // The downloader has already retried whatever was worth retrying.
+    private static boolean permanent(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException
+                || t instanceof UncheckedIOException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t instanceof FileNotFoundException
+                || t instanceof IOException && !ArtifactDownloader.retryable((IOException) t);
+    }
+
+    private void fail(Throwable t) {
+        if (completion.completeExceptionally(t)) {
+            for (Future<?> future : running.values()) {
+                future.cancel(true);
+            }
+            running.clear();
+            ready.clear();
+        }
+    }
+
+    // Longest path (by cost) from each node to the end of the graph.
+    private void computePriorities() {
+        Map<Node, Integer> remaining = new HashMap<>();
+        Deque<Node> sinks = new ArrayDeque<>();
+        for (Node node : nodes) {
+            node.priority = node.cost;
+            remaining.put(node, node.dependents.size());
+            if (node.dependents.isEmpty()) {
+                sinks.add(node);
+            }
+        }
+        // Reverse topological order: a node is final once all its dependents are.
+        while (!sinks.isEmpty()) {
+            Node node = sinks.poll();
+            for (Node dep : node.dependencies) {
+                dep.priority = Math.max(dep.priority, dep.cost + node.priority);
+                if (remaining.merge(dep, -1, Integer::sum) == 0) {
+                    sinks.add(dep);
+                }
+            }
+        }
+        List<Node> queued = new ArrayList<>(ready);
+        ready.clear();
+        ready.addAll(queued);
+        prioritiesDirty = false;
+    }
+}
@@ -0,0 +1,348 @@
+import javax.swing.AbstractListModel;
+import javax.swing.ComboBoxModel;
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+// Catalog of Minecraft versions backed by the upstream version manifest.
+//
+// The parsed manifest is kept in a compact binary index next to the versions, so the
+// launcher can show the list at startup without touching the network. refresh() then
+// re-validates it with a conditional request (ETag / If-Modified-Since) and only parses
+// the manifest again when it actually changed.
+class VersionCatalog {
+    static final String MANIFEST_URL = "https://piston-meta.mojang.com/mc/game/version_manifest_v2.json";
+
+    private static final int INDEX_MAGIC = 0x4D435649; // "MCVI"
+    private static final int INDEX_FORMAT = 1;
+
+    // Shown until the first manifest has been downloaded.
+    private static final String[] FALLBACK_VERSIONS = {"1.16.5", "1.17.1", "1.18.2", "1.19.4", "1.20.1", "1.21.4"};
+
+    // First snapshot Fabric supports and first release Forge publishes builds for.
+    private static final long FABRIC_SINCE = Instant.parse("2018-10-24T00:00:00Z").toEpochMilli();
+    private static final long FORGE_SINCE = Instant.parse("2013-04-18T00:00:00Z").toEpochMilli();
+
+    static final byte RELEASE = 0;
+    static final byte SNAPSHOT = 1;
+    static final byte OLD = 2;
+
+    // One version from the manifest. url/sha1 point at the version's own JSON.
+    static class Entry {
+        final String id;
+        final byte type;
+        final long releaseTime;
+        final String url;
+        final String sha1;
+
+        Entry(String id, byte type, long releaseTime, String url, String sha1) {
+            this.id = id;
+            this.type = type;
+            this.releaseTime = releaseTime;
+            this.url = url;
+            this.sha1 = sha1;
+        }
+
+        boolean supports(String modLoader) {
+            if ("Fabric".equals(modLoader)) {
+                return type != OLD && releaseTime >= FABRIC_SINCE;
+            }
+            if ("Forge".equals(modLoader)) {
+                return type == RELEASE && releaseTime >= FORGE_SINCE;
+            }
+            return true;
+        }
+    }
+
+    private final String manifestUrl;
+    private final File indexFile;
+    private final File versionsDir;
+    private volatile List<Entry> entries = Collections.emptyList();
+    private volatile String latestRelease;
+    private String etag;
+    private String lastModified;
+
+    VersionCatalog(String manifestUrl, File versionsDir) {
+        this.manifestUrl = manifestUrl;
+        this.versionsDir = versionsDir;
+        this.indexFile = new File(versionsDir, "manifest.idx");
+    }
+
+    List<Entry> entries() {
+        return entries;
+    }
+
+    String latestRelease() {
+        return latestRelease;
+    }
+
+    Entry find(String id) {
+        for (Entry entry : entries) {
+            if (entry.id.equals(id)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    // Load the on-disk index; falls back to a small built-in list when there is none.
+    synchronized List<Entry> loadCached() {
+        try {
+            readIndex();
+        } catch (IOException e) {
+            if (indexFile.exists()) {
+                System.err.println("Ignoring unreadable version index: " + e.getMessage());
+            }
+            List<Entry> fallback = new ArrayList<>();
+            for (int i = FALLBACK_VERSIONS.length - 1; i >= 0; i--) {
+                fallback.add(new Entry(FALLBACK_VERSIONS[i], RELEASE, FABRIC_SINCE, null, null));
+            }
+            entries = fallback;
+            latestRelease = FALLBACK_VERSIONS[FALLBACK_VERSIONS.length - 1];
+        }
+        return entries;
+    }
+
+    // Re-validate the manifest. Returns true if the entries changed.
+    synchronized boolean refresh() throws IOException {
+        try (Metrics.Span span = Metrics.span("launcher_manifest_refresh_seconds")) {
+            span.detail(manifestUrl);
+            boolean changed = fetchManifest();
+            Metrics.counter("launcher_manifest_refresh_total", "result", changed ? "updated" : "unchanged").increment();
+            return changed;
+        }
+    }
+
+    private boolean fetchManifest() throws IOException {
+        URLConnection conn = new URL(manifestUrl).openConnection();
+        conn.setConnectTimeout(10000);
+        conn.setReadTimeout(20000);
+        if (conn instanceof HttpURLConnection) {
+            HttpURLConnection http = (HttpURLConnection) conn;
+            if (etag != null) {
+                http.setRequestProperty("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                http.setRequestProperty("If-Modified-Since", lastModified);
+            }
+            int code = http.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                http.disconnect();
+                return false;
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                http.disconnect();
+                throw new IOException("HTTP " + code + " for " + manifestUrl);
+            }
+        }
+        Object manifest;
+        try (InputStream in = conn.getInputStream()) {
+            manifest = Json.parse(in);
+        }
+        List<Entry> parsed = new ArrayList<>();
+        for (Object version : Json.array(manifest, "versions")) {
+            parsed.add(new Entry(Json.string(version, "id"), type(Json.string(version, "type")),
+                    parseTime(Json.string(version, "releaseTime")),
+                    Json.string(version, "url"), Json.string(version, "sha1")));
+        }
+        String newEtag = conn.getHeaderField("ETag");
+        String newLastModified = conn.getHeaderField("Last-Modified");
+        boolean changed = !sameIds(entries, parsed);
+        etag = newEtag;
+        lastModified = newLastModified;
+        entries = Collections.unmodifiableList(parsed);
+        latestRelease = Json.string(Json.object(manifest, "latest"), "release");
+        writeIndex();
+        return changed;
+    }
+
+    // Load the JSON of one version, caching it next to the version's files.
+    Object versionJson(Entry entry, ArtifactDownloader downloader) throws IOException {
+        File file = new File(new File(versionsDir, entry.id), entry.id + ".json");
+        if (file.isFile() && (entry.sha1 == null || entry.sha1.equalsIgnoreCase(ArtifactDownloader.sha1(file)))) {
+            return Json.parse(file);
+        }
+        if (entry.url == null) {
+            throw new IOException("Version list has not been downloaded yet; cannot resolve " + entry.id);
+        }
+        ArtifactDownloader.Artifact artifact = new ArtifactDownloader.Artifact(entry.url, file, entry.sha1, -1);
+        ArtifactDownloader.await(downloader.download(artifact, null));
+        return Json.parse(file);
+    }
+
+    // ----- index -----
+
+    private void readIndex() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_FORMAT) {
+                throw new IOException("Unknown index format");
+            }
+            String newEtag = emptyToNull(in.readUTF());
+            String newLastModified = emptyToNull(in.readUTF());
+            String latest = emptyToNull(in.readUTF());
+            int count = in.readInt();
+            List<Entry> loaded = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                loaded.add(new Entry(in.readUTF(), in.readByte(), in.readLong(),
+                        emptyToNull(in.readUTF()), emptyToNull(in.readUTF())));
+            }
+            etag = newEtag;
+            lastModified = newLastModified;
+            latestRelease = latest;
+            entries = Collections.unmodifiableList(loaded);
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        if (!versionsDir.isDirectory() && !versionsDir.mkdirs()) {
+            throw new IOException("Cannot create " + versionsDir);
+        }
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_FORMAT);
+            out.writeUTF(nullToEmpty(etag));
+            out.writeUTF(nullToEmpty(lastModified));
+            out.writeUTF(nullToEmpty(latestRelease));
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.id);
+                out.writeByte(entry.type);
+                out.writeLong(entry.releaseTime);
+                out.writeUTF(nullToEmpty(entry.url));
+                out.writeUTF(nullToEmpty(entry.sha1));
+            }
+        }
+        java.nio.file.Files.move(tmp.toPath(), indexFile.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static boolean sameIds(List<Entry> a, List<Entry> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (!a.get(i).id.equals(b.get(i).id) || !Objects.equals(a.get(i).sha1, b.get(i).sha1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte type(String type) {
+        if ("release".equals(type)) {
+            return RELEASE;
+        }
+        if ("snapshot".equals(type)) {
+            return SNAPSHOT;
+        }
+        return OLD;
+    }
+
+    private static long parseTime(String time) {
+        if (time == null) {
+            return 0;
+        }
+        try {
+            return java.time.OffsetDateTime.parse(time).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    private static String emptyToNull(String s) {
+        return s.isEmpty() ? null : s;
+    }
+
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
+    }
+
+    // ----- combo box model -----
+
+    // Filterable combo box model over the catalog. Filtering keeps an index array into the
+    // full entry list, so large lists never copy or box their strings.
+    static class VersionListModel extends AbstractListModel<String> implements ComboBoxModel<String> {
+        private List<Entry> all = Collections.emptyList();
+        private int[] visible = new int[0];
+        private int size;
+        private Object selected;
+        private boolean showSnapshots;
+        private String modLoader;
+
+        void setEntries(List<Entry> entries) {
+            all = entries;
+            visible = new int[entries.size()];
+            applyFilter();
+        }
+
+        void setShowSnapshots(boolean show) {
+            showSnapshots = show;
+            applyFilter();
+        }
+
+        // Only show versions the given loader supports; null shows everything.
+        void setModLoader(String loader) {
+            modLoader = loader;
+            applyFilter();
+        }
+
+        Entry getSelectedEntry() {
+            for (int i = 0; i < size; i++) {
+                Entry entry = all.get(visible[i]);
+                if (entry.id.equals(selected)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        private void applyFilter() {
+            int oldSize = size;
+            size = 0;
+            for (int i = 0; i < all.size(); i++) {
+                Entry entry = all.get(i);
+                boolean wanted = entry.type == RELEASE || (showSnapshots && entry.type == SNAPSHOT);
+                if (wanted && entry.supports(modLoader)) {
+                    visible[size++] = i;
+                }
+            }
+            if (getSelectedEntry() == null) {
+                selected = size > 0 ? all.get(visible[0]).id : null;
+            }
+            if (oldSize > 0) {
+                fireIntervalRemoved(this, 0, oldSize - 1);
+            }
+            if (size > 0) {
+                fireIntervalAdded(this, 0, size - 1);
+            }
+            fireContentsChanged(this, -1, -1);
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public String getElementAt(int index) {
+            return all.get(visible[index]).id;
+        }
+
+        @Override
+        public void setSelectedItem(Object item) {
+            if (!Objects.equals(selected, item)) {
+                selected = item;
+                fireContentsChanged(this, -1, -1);
+            }
+        }
+
+        @Override
+        public Object getSelectedItem() {
+            return selected;
+        }
+    }
+}